@@ -0,0 +1,68 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.client;
+
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * Reports I/O threads and direct memory held by the tarantool clients of the PXF JVM.
+ * <p>
+ * Every client runs its own netty event loop group, while buffers of all clients come from the shared
+ * {@link PooledByteBufAllocator#DEFAULT}.
+ */
+public final class ClientResources {
+    private static final String EVENT_LOOP_THREAD_PREFIX = "nioEventLoopGroup";
+
+    private ClientResources() {
+    }
+
+    /**
+     * @return live netty event loop threads
+     */
+    public static int eventLoopThreads() {
+        ThreadGroup root = Thread.currentThread().getThreadGroup();
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        Thread[] threads = new Thread[root.activeCount() * 2 + 16];
+        int count = root.enumerate(threads, true);
+        int eventLoopThreads = 0;
+        for (int i = 0; i < count; i++) {
+            if (threads[i].getName().startsWith(EVENT_LOOP_THREAD_PREFIX)) {
+                eventLoopThreads++;
+            }
+        }
+        return eventLoopThreads;
+    }
+
+    /**
+     * @return direct memory used by the shared pooled allocator, in bytes
+     */
+    public static long usedDirectMemory() {
+        return PooledByteBufAllocator.DEFAULT.metric().usedDirectMemory();
+    }
+
+    /**
+     * @param pool         pool holding the clients of the caller
+     * @param countThreads whether to count event loop threads, which walks every thread of the JVM
+     * @return description of the resources for the log
+     */
+    public static String describe(TarantoolConnectionPool pool, boolean countThreads) {
+        String resources = String.format("pooled direct memory: %d bytes, pooled clients: %d",
+                usedDirectMemory(), pool.size());
+        return countThreads ? "event loop threads: " + eventLoopThreads() + ", " + resources : resources;
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.client;
+
+/**
+ * Chooses how many connections a client opens to every router.
+ * <p>
+ * One connection funnels all requests of a segment through a single netty pipeline, which caps throughput on
+ * fast links. In auto mode every router is given a budget of connections that is split between the segments
+ * using it, so a few large segments get several pipelines each while a wide cluster stays at one.
+ */
+public final class ConnectionFanOut {
+    public static final String AUTO = "auto";
+    static final int ROUTER_CONNECTIONS_BUDGET = 64;
+    static final int MAX_CONNECTIONS_PER_ROUTER = 8;
+
+    private ConnectionFanOut() {
+    }
+
+    /**
+     * @param value configured value, a positive number or {@value #AUTO}
+     * @return connections per router, 0 for auto mode
+     */
+    public static int parse(String value) {
+        if (AUTO.equalsIgnoreCase(value.trim())) {
+            return 0;
+        }
+        int connections;
+        try {
+            connections = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            connections = -1;
+        }
+        if (connections < 1) {
+            throw new IllegalArgumentException("CONNECTIONS_PER_ROUTER must be a positive number or auto, got: " + value);
+        }
+        return connections;
+    }
+
+    /**
+     * @param totalSegments segments writing to the cluster
+     * @param routersUsed   routers a single segment connects to
+     * @param routersTotal  routers of the cluster
+     * @return connections every segment should open per router
+     */
+    public static int auto(int totalSegments, int routersUsed, int routersTotal) {
+        if (routersTotal < 1 || routersUsed < 1) {
+            return 1;
+        }
+        // segments are spread evenly over routers when each of them uses only a subset
+        long segmentsPerRouter = ((long) Math.max(totalSegments, 1) * Math.min(routersUsed, routersTotal)
+                + routersTotal - 1) / routersTotal;
+        long connections = ROUTER_CONNECTIONS_BUDGET / segmentsPerRouter;
+        return (int) Math.max(1, Math.min(MAX_CONNECTIONS_PER_ROUTER, connections));
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.client;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Identifies clients which can be shared: same cluster, credentials and client settings.
+ */
+public final class ConnectionKey {
+    private final String server;
+    private final String user;
+    private final String password;
+    private final List<?> settings;
+
+    public ConnectionKey(String server, String user, String password, List<?> settings) {
+        this.server = server;
+        this.user = user;
+        this.password = password;
+        this.settings = settings;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ConnectionKey that = (ConnectionKey) o;
+        return server.equals(that.server) && user.equals(that.user) && password.equals(that.password)
+                && settings.equals(that.settings);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(server, user, password, settings);
+    }
+
+    @Override
+    public String toString() {
+        return user + "@" + server + settings;
+    }
+}
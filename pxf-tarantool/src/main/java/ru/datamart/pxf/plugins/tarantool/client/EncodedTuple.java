@@ -0,0 +1,150 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.client;
+
+import io.tarantool.driver.mappers.DefaultMessagePackMapper;
+import io.tarantool.driver.mappers.DefaultMessagePackMapperFactory;
+import io.tarantool.driver.mappers.MessagePackMapper;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.value.Value;
+import org.msgpack.value.impl.ImmutableBinaryValueImpl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tuple already packed into a MessagePack array. The driver copies its bytes into the request as is,
+ * without building a {@link io.tarantool.driver.api.tuple.TarantoolTuple} or MessagePack values for its fields.
+ */
+public final class EncodedTuple {
+    private static final MessagePackMapper MAPPER = createMapper();
+
+    private final byte[] bytes;
+
+    /**
+     * @param bytes MessagePack array of the tuple fields
+     */
+    public EncodedTuple(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * @return mapper of the default driver mappings that also writes encoded tuples found in call arguments,
+     * shared by all clients
+     */
+    public static MessagePackMapper mapper() {
+        return MAPPER;
+    }
+
+    private static MessagePackMapper createMapper() {
+        DefaultMessagePackMapper mapper = DefaultMessagePackMapperFactory.getInstance().defaultComplexTypesMapper();
+        mapper.registerObjectConverter(EncodedTuple.class, tuple -> new PayloadValue(tuple.bytes));
+        return mapper;
+    }
+
+    public long size() {
+        return bytes.length;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Reads the fields at given positions, integers as {@link Long} and floating point numbers as {@link Double}.
+     */
+    public List<Object> fields(int[] positions) {
+        int last = -1;
+        for (int position : positions) {
+            last = Math.max(last, position);
+        }
+        Value[] values;
+        try (MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(bytes)) {
+            values = new Value[Math.min(unpacker.unpackArrayHeader(), last + 1)];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = unpacker.unpackValue();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        List<Object> fields = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            fields.add(position < values.length ? field(values[position]) : null);
+        }
+        return fields;
+    }
+
+    private static Object field(Value field) {
+        switch (field.getValueType()) {
+            case NIL:
+                return null;
+            case BOOLEAN:
+                return field.asBooleanValue().getBoolean();
+            case INTEGER:
+                return field.asIntegerValue().toLong();
+            case FLOAT:
+                return field.asFloatValue().toDouble();
+            case STRING:
+                return field.asStringValue().asString();
+            default:
+                return field;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return Arrays.equals(bytes, ((EncodedTuple) o).bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(bytes);
+    }
+
+    @Override
+    public String toString() {
+        return "EncodedTuple{size=" + bytes.length + "}";
+    }
+
+    /**
+     * Writes packed bytes without a header of its own. It looks like a binary value to code inspecting values,
+     * the driver only writes it.
+     */
+    private static final class PayloadValue extends ImmutableBinaryValueImpl {
+        private final byte[] payload;
+
+        private PayloadValue(byte[] payload) {
+            super(payload);
+            this.payload = payload;
+        }
+
+        @Override
+        public void writeTo(MessagePacker packer) throws IOException {
+            packer.writePayload(payload);
+        }
+    }
+}
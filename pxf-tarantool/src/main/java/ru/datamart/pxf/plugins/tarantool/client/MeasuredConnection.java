@@ -0,0 +1,97 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.client;
+
+import io.netty.channel.Channel;
+import io.tarantool.driver.TarantoolVersion;
+import io.tarantool.driver.api.connection.TarantoolConnection;
+import io.tarantool.driver.api.connection.TarantoolConnectionCloseListener;
+import io.tarantool.driver.api.connection.TarantoolConnectionFailureListener;
+import io.tarantool.driver.exceptions.TarantoolClientException;
+import io.tarantool.driver.mappers.MessagePackValueMapper;
+import io.tarantool.driver.protocol.TarantoolRequest;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Connection handed out by {@link WeightedRouterStrategyFactory}: records latency and failures of every request
+ * sent through it in {@link RouterStatistics}, whichever thread sends it.
+ */
+class MeasuredConnection implements TarantoolConnection {
+    private final TarantoolConnection connection;
+    private final String router;
+    private final RouterStatistics statistics;
+    private final long ejectTimeoutMillis;
+
+    MeasuredConnection(TarantoolConnection connection, String router, RouterStatistics statistics,
+                       long ejectTimeoutMillis) {
+        this.connection = connection;
+        this.router = router;
+        this.statistics = statistics;
+        this.ejectTimeoutMillis = ejectTimeoutMillis;
+    }
+
+    @Override
+    public <T> CompletableFuture<T> sendRequest(TarantoolRequest request, MessagePackValueMapper resultMapper) {
+        long startNanos = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = connection.sendRequest(request, resultMapper);
+        } catch (RuntimeException e) {
+            statistics.onComplete(router, System.nanoTime() - startNanos, e, ejectTimeoutMillis);
+            throw e;
+        }
+        future.whenComplete((result, throwable) ->
+                statistics.onComplete(router, System.nanoTime() - startNanos, throwable, ejectTimeoutMillis));
+        return future;
+    }
+
+    @Override
+    public TarantoolVersion getVersion() throws TarantoolClientException {
+        return connection.getVersion();
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() throws TarantoolClientException {
+        return connection.getRemoteAddress();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connection.isConnected();
+    }
+
+    @Override
+    public Channel getChannel() {
+        return connection.getChannel();
+    }
+
+    @Override
+    public void addConnectionFailureListener(TarantoolConnectionFailureListener listener) {
+        connection.addConnectionFailureListener(listener);
+    }
+
+    @Override
+    public void addConnectionCloseListener(TarantoolConnectionCloseListener listener) {
+        connection.addConnectionCloseListener(listener);
+    }
+
+    @Override
+    public void close() throws Exception {
+        connection.close();
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.client;
+
+import io.tarantool.driver.exceptions.NoAvailableConnectionsException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
+
+/**
+ * Health, priority and latency of routers shared by all clients of the PXF JVM.
+ * <p>
+ * Status and priority come from discovery. Latency is an exponentially weighted moving average of the
+ * requests sent through the router; a router failing {@link #FAILURES_TO_EJECT} requests in a row is
+ * ejected for the eject timeout.
+ */
+public class RouterStatistics {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RouterStatistics.class);
+    private static final RouterStatistics INSTANCE = new RouterStatistics(System::nanoTime);
+    private static final String HEALTHY = "healthy";
+    static final int FAILURES_TO_EJECT = 5;
+    static final double LATENCY_WEIGHT = 0.1;
+
+    private final Map<String, Router> routers = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+
+    RouterStatistics(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    public static RouterStatistics getInstance() {
+        return INSTANCE;
+    }
+
+    public static String key(InetSocketAddress address) {
+        return key(address.getHostString(), address.getPort());
+    }
+
+    public static String key(String host, int port) {
+        return host + ":" + port;
+    }
+
+    /**
+     * Records status and priority reported by discovery, {@code null} when unknown.
+     */
+    public void update(String router, String status, Integer priority) {
+        Router stats = stats(router);
+        stats.status = status;
+        stats.priority = priority != null && priority > 0 ? priority : 1;
+    }
+
+    /**
+     * @return {@code false} if discovery reported the router unhealthy or it is ejected
+     */
+    public boolean isAvailable(String router) {
+        Router stats = routers.get(router);
+        if (stats == null) {
+            return true;
+        }
+        if (stats.status != null && !HEALTHY.equals(stats.status)) {
+            return false;
+        }
+        return clock.getAsLong() - stats.ejectedUntil >= 0;
+    }
+
+    /**
+     * @return relative share of requests for the router: lower priority number and latency get more
+     */
+    public double weight(String router, double fastestLatencyNanos) {
+        Router stats = routers.get(router);
+        if (stats == null) {
+            return 1.0;
+        }
+        double latencyFactor = stats.latencyNanos > 0 && fastestLatencyNanos > 0
+                ? fastestLatencyNanos / stats.latencyNanos
+                : 1.0;
+        return latencyFactor / stats.priority;
+    }
+
+    /**
+     * @return average latency in nanoseconds, 0 if no request completed yet
+     */
+    public double latencyNanos(String router) {
+        Router stats = routers.get(router);
+        return stats != null ? stats.latencyNanos : 0;
+    }
+
+    /**
+     * @param ejectTimeoutMillis how long the router is skipped once it failed too many requests in a row
+     */
+    public void onComplete(String router, long latencyNanos, Throwable error, long ejectTimeoutMillis) {
+        Router stats = stats(router);
+        synchronized (stats) {
+            if (error != null && isRouterFailure(error)) {
+                stats.failures++;
+                if (stats.failures >= FAILURES_TO_EJECT && clock.getAsLong() - stats.ejectedUntil >= 0) {
+                    stats.ejectedUntil = clock.getAsLong() + ejectTimeoutMillis * 1_000_000L;
+                    stats.failures = 0;
+                    LOGGER.warn("Router {} failed {} requests in a row, ejected for {} ms",
+                            router, FAILURES_TO_EJECT, ejectTimeoutMillis);
+                }
+                return;
+            }
+            stats.failures = 0;
+            stats.latencyNanos = stats.latencyNanos == 0
+                    ? latencyNanos
+                    : stats.latencyNanos + LATENCY_WEIGHT * (latencyNanos - stats.latencyNanos);
+        }
+    }
+
+    private Router stats(String router) {
+        return routers.computeIfAbsent(router, k -> new Router(clock.getAsLong()));
+    }
+
+    private static boolean isRouterFailure(Throwable error) {
+        Throwable current = error;
+        while (current != null) {
+            if (current instanceof TimeoutException
+                    || current instanceof NoAvailableConnectionsException
+                    || current instanceof IOException) {
+                return true;
+            }
+            current = current.getCause();
+        }
+        return false;
+    }
+
+    private static class Router {
+        private volatile String status;
+        private volatile int priority = 1;
+        private volatile double latencyNanos;
+        private volatile long ejectedUntil;
+        private int failures;
+
+        private Router(long now) {
+            this.ejectedUntil = now;
+        }
+    }
+}
@@ -23,17 +23,48 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 
 public final class TarantoolConnection implements Closeable {
     private static final Logger LOGGER = LoggerFactory.getLogger(TarantoolConnection.class);
 
     private final TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>> client;
     private final TarantoolTupleFactory tupleFactory;
+    private final Runnable closeAction;
+    // schema version the driver metadata was last loaded at, shared by all leases of a pooled client
+    private final AtomicReference<Long> metadataVersion;
 
     public TarantoolConnection(TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>> client,
                                TarantoolTupleFactory tupleFactory) {
+        this(client, tupleFactory, null);
+    }
+
+    /**
+     * @param closeAction called on {@link #close()} instead of closing the client, e.g. to return it to a pool
+     */
+    public TarantoolConnection(TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>> client,
+                               TarantoolTupleFactory tupleFactory,
+                               Runnable closeAction) {
+        this(client, tupleFactory, closeAction, new AtomicReference<>());
+    }
+
+    private TarantoolConnection(TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>> client,
+                                TarantoolTupleFactory tupleFactory,
+                                Runnable closeAction,
+                                AtomicReference<Long> metadataVersion) {
         this.client = client;
         this.tupleFactory = tupleFactory;
+        this.closeAction = closeAction;
+        this.metadataVersion = metadataVersion;
+    }
+
+    /**
+     * @return connection to the same client sharing its metadata state, calling {@code closeAction} on close
+     */
+    TarantoolConnection lease(Runnable closeAction) {
+        return new TarantoolConnection(client, tupleFactory, closeAction, metadataVersion);
     }
 
     public TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>> getClient() {
@@ -44,8 +75,33 @@ public final class TarantoolConnection implements Closeable {
         return tupleFactory;
     }
 
+    /**
+     * Calls the function, {@link EncodedTuple}s in arguments are written as is by the client configured with
+     * {@link EncodedTuple#mapper()}.
+     */
+    public CompletableFuture<List<?>> callEncoded(String function, List<?> arguments) {
+        return client.call(function, arguments);
+    }
+
+    /**
+     * Reloads the driver metadata of the client unless it was already loaded at the schema version.
+     *
+     * @param schemaVersion version of the cluster schema, {@code null} if unknown to always reload
+     */
+    public CompletableFuture<Void> refreshMetadata(Long schemaVersion) {
+        if (schemaVersion != null && schemaVersion.equals(metadataVersion.get())) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return client.metadata().refresh().thenRun(() -> metadataVersion.set(schemaVersion));
+    }
+
     @Override
     public void close() {
+        if (closeAction != null) {
+            closeAction.run();
+            return;
+        }
+
         try {
             client.close();
         } catch (InterruptedException e) {
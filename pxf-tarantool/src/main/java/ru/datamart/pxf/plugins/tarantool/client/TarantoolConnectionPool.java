@@ -0,0 +1,203 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Shares warm clients between segments and queries of the PXF JVM.
+ * <p>
+ * Connections handed out are leases: closing one returns the client to the pool. A client nobody holds is
+ * checked periodically with a ping and closed when it fails or stays idle longer than its idle timeout.
+ * An invalid client is retired: new leases get a fresh client, and the retired one is closed on its last release.
+ */
+public class TarantoolConnectionPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TarantoolConnectionPool.class);
+    private static final TarantoolConnectionPool INSTANCE = new TarantoolConnectionPool(10_000L);
+    private static final String PING_COMMAND = "return true";
+
+    private final Map<ConnectionKey, Entry> entries = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "tarantool-connection-pool");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    TarantoolConnectionPool(long maintenanceIntervalMillis) {
+        maintenance.scheduleWithFixedDelay(this::maintain, maintenanceIntervalMillis, maintenanceIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static TarantoolConnectionPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Leases a client for the key, creating it with {@code factory} if the pool has no live one.
+     *
+     * @param idleTimeoutMillis how long the client is kept when nobody holds it
+     */
+    public TarantoolConnection acquire(ConnectionKey key, long idleTimeoutMillis, Supplier<TarantoolConnection> factory) {
+        while (true) {
+            Entry entry = entries.computeIfAbsent(key, k -> new Entry(k, idleTimeoutMillis));
+            synchronized (entry) {
+                if (entry.closed) {
+                    // evicted between lookup and lock
+                    continue;
+                }
+                if (entry.invalid) {
+                    retire(entry);
+                    continue;
+                }
+                if (entry.connection == null) {
+                    try {
+                        entry.connection = factory.get();
+                    } catch (RuntimeException e) {
+                        close(entry);
+                        throw e;
+                    }
+                    LOGGER.info("Created pooled tarantool client for {}", entry.key);
+                }
+                entry.references++;
+                TarantoolConnection connection = entry.connection;
+                AtomicBoolean released = new AtomicBoolean();
+                return connection.lease(() -> {
+                    if (released.compareAndSet(false, true)) {
+                        release(entry);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Retires the client of the lease, e.g. after it failed with a connection error or requests were abandoned
+     * in flight: it is closed once nobody holds it. Nothing happens if the pool already has another client.
+     */
+    public void invalidate(ConnectionKey key, TarantoolConnection lease) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            synchronized (entry) {
+                if (entry.connection != null && entry.connection.getClient() == lease.getClient()) {
+                    entry.invalid = true;
+                    retire(entry);
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void closeAll() {
+        entries.values().forEach(entry -> {
+            synchronized (entry) {
+                close(entry);
+            }
+        });
+    }
+
+    void maintain() {
+        long now = System.currentTimeMillis();
+        entries.values().forEach(entry -> {
+            TarantoolConnection connection;
+            synchronized (entry) {
+                if (entry.closed || entry.references > 0 || entry.connection == null) {
+                    return;
+                }
+                if (now - entry.idleSince >= entry.idleTimeoutMillis) {
+                    LOGGER.info("Closing idle pooled tarantool client for {}", entry.key);
+                    close(entry);
+                    return;
+                }
+                connection = entry.connection;
+            }
+
+            if (!ping(connection)) {
+                synchronized (entry) {
+                    LOGGER.warn("Retiring unhealthy pooled tarantool client for {}", entry.key);
+                    entry.invalid = true;
+                    retire(entry);
+                }
+            }
+        });
+    }
+
+    private void release(Entry entry) {
+        synchronized (entry) {
+            entry.references--;
+            if (entry.references == 0) {
+                entry.idleSince = System.currentTimeMillis();
+                if (entry.invalid) {
+                    close(entry);
+                }
+            }
+        }
+    }
+
+    private void retire(Entry entry) {
+        entries.remove(entry.key, entry);
+        if (entry.references == 0) {
+            close(entry);
+        }
+    }
+
+    private void close(Entry entry) {
+        entry.closed = true;
+        entries.remove(entry.key, entry);
+        if (entry.connection != null) {
+            entry.connection.close();
+            entry.connection = null;
+        }
+    }
+
+    private static boolean ping(TarantoolConnection connection) {
+        try {
+            connection.getClient().eval(PING_COMMAND).get(5, TimeUnit.SECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            LOGGER.warn("Pooled tarantool client ping failed", e);
+            return false;
+        }
+    }
+
+    private static final class Entry {
+        private final ConnectionKey key;
+        private final long idleTimeoutMillis;
+        private TarantoolConnection connection;
+        private int references;
+        private long idleSince;
+        private boolean invalid;
+        private boolean closed;
+
+        private Entry(ConnectionKey key, long idleTimeoutMillis) {
+            this.key = key;
+            this.idleTimeoutMillis = idleTimeoutMillis;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.client;
+
+import io.tarantool.driver.api.TarantoolClientConfig;
+import io.tarantool.driver.api.connection.ConnectionSelectionStrategy;
+import io.tarantool.driver.api.connection.ConnectionSelectionStrategyFactory;
+import io.tarantool.driver.api.connection.TarantoolConnection;
+import io.tarantool.driver.exceptions.NoAvailableConnectionsException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks router connections at random, weighted by {@link RouterStatistics}: routers reported unhealthy by
+ * discovery or ejected after failures are skipped while any other router is connected, the rest get traffic
+ * in inverse proportion to their priority and average latency. Requests sent through the selected connection
+ * feed its latency and failures back into the statistics.
+ */
+public class WeightedRouterStrategyFactory implements ConnectionSelectionStrategyFactory {
+    private final RouterStatistics statistics;
+    private final long ejectTimeoutMillis;
+
+    /**
+     * @param ejectTimeoutMillis how long a router is skipped once it failed too many requests in a row
+     */
+    public WeightedRouterStrategyFactory(RouterStatistics statistics, long ejectTimeoutMillis) {
+        this.statistics = statistics;
+        this.ejectTimeoutMillis = ejectTimeoutMillis;
+    }
+
+    @Override
+    public ConnectionSelectionStrategy create(TarantoolClientConfig config, Collection<TarantoolConnection> connections) {
+        return new WeightedRouterStrategy(statistics, connections, ejectTimeoutMillis);
+    }
+
+    static class WeightedRouterStrategy implements ConnectionSelectionStrategy {
+        private final RouterStatistics statistics;
+        private final Collection<TarantoolConnection> connections;
+        private final long ejectTimeoutMillis;
+
+        WeightedRouterStrategy(RouterStatistics statistics, Collection<TarantoolConnection> connections,
+                               long ejectTimeoutMillis) {
+            this.statistics = statistics;
+            this.connections = connections;
+            this.ejectTimeoutMillis = ejectTimeoutMillis;
+        }
+
+        @Override
+        public TarantoolConnection next() throws NoAvailableConnectionsException {
+            List<TarantoolConnection> connected = new ArrayList<>(connections.size());
+            List<TarantoolConnection> available = new ArrayList<>(connections.size());
+            List<String> availableKeys = new ArrayList<>(connections.size());
+            for (TarantoolConnection connection : connections) {
+                if (!connection.isConnected()) {
+                    continue;
+                }
+                connected.add(connection);
+                String key = RouterStatistics.key(connection.getRemoteAddress());
+                if (statistics.isAvailable(key)) {
+                    available.add(connection);
+                    availableKeys.add(key);
+                }
+            }
+            if (connected.isEmpty()) {
+                throw new NoAvailableConnectionsException();
+            }
+            if (available.isEmpty()) {
+                // rather a degraded router than none
+                TarantoolConnection connection = connected.get(ThreadLocalRandom.current().nextInt(connected.size()));
+                return measured(connection, RouterStatistics.key(connection.getRemoteAddress()));
+            }
+
+            double fastest = 0;
+            for (String key : availableKeys) {
+                double latency = statistics.latencyNanos(key);
+                if (latency > 0 && (fastest == 0 || latency < fastest)) {
+                    fastest = latency;
+                }
+            }
+            double[] weights = new double[available.size()];
+            double total = 0;
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = statistics.weight(availableKeys.get(i), fastest);
+                total += weights[i];
+            }
+            double point = ThreadLocalRandom.current().nextDouble() * total;
+            int selected = weights.length - 1;
+            for (int i = 0; i < weights.length; i++) {
+                point -= weights[i];
+                if (point < 0) {
+                    selected = i;
+                    break;
+                }
+            }
+            return measured(available.get(selected), availableKeys.get(selected));
+        }
+
+        private TarantoolConnection measured(TarantoolConnection connection, String router) {
+            return new MeasuredConnection(connection, router, statistics, ejectTimeoutMillis);
+        }
+    }
+}
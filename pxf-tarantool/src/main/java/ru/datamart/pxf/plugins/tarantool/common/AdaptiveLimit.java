@@ -0,0 +1,149 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.common;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * AIMD limit of requests in flight driven by request latency.
+ * <p>
+ * Latencies are collected in windows of {@link #WINDOW} samples. A window whose p99 latency exceeds
+ * {@code tolerance} times the baseline p99, or half of the request timeout, or which contains a timeout,
+ * multiplies the limit by {@link #DECREASE_FACTOR}. Any other window grows the limit: doubling it until
+ * the first decrease (slow start) and by one afterwards. The limit always stays within [min, max].
+ * The baseline follows lower p99 immediately and drifts slowly towards higher one, so a cluster which
+ * became permanently slower does not pin the limit at the minimum.
+ */
+public class AdaptiveLimit {
+    static final int WINDOW = 128;
+    static final double DECREASE_FACTOR = 0.75;
+    private static final double DEFAULT_TOLERANCE = 2.0;
+    private static final int BASELINE_DRIFT = 100;
+
+    private final FlowController flowController;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long timeoutNanos;
+    private final double tolerance;
+
+    private final AtomicLongArray samples = new AtomicLongArray(WINDOW);
+    private final AtomicInteger sampleIndex = new AtomicInteger();
+    private final AtomicInteger storedSamples = new AtomicInteger();
+    private final AtomicBoolean timedOut = new AtomicBoolean();
+
+    // updated only by the thread completing a window
+    private volatile long baselineNanos = Long.MAX_VALUE;
+    private volatile boolean slowStart = true;
+    private volatile int decreases;
+    private volatile int peakLimit;
+
+    public AdaptiveLimit(FlowController flowController, int minLimit, int maxLimit, long timeoutMillis) {
+        this(flowController, minLimit, maxLimit, timeoutMillis, DEFAULT_TOLERANCE);
+    }
+
+    AdaptiveLimit(FlowController flowController, int minLimit, int maxLimit, long timeoutMillis, double tolerance) {
+        if (minLimit < 1 || minLimit > maxLimit) {
+            throw new IllegalArgumentException(String.format("Adaptive buffer bounds must satisfy 0 < min <= max, got: [%d, %d]",
+                    minLimit, maxLimit));
+        }
+        this.flowController = flowController;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.timeoutNanos = timeoutMillis * 1_000_000L;
+        this.tolerance = tolerance;
+        this.peakLimit = minLimit;
+        flowController.setLimit(minLimit);
+    }
+
+    /**
+     * Records completion of a request, may be called from any thread.
+     */
+    public void onComplete(long latencyNanos, Throwable error) {
+        if (isTimeout(error)) {
+            timedOut.set(true);
+        }
+
+        int index = sampleIndex.getAndIncrement();
+        if (index >= WINDOW) {
+            // window is being evaluated by another thread
+            return;
+        }
+        samples.set(index, latencyNanos);
+        // the thread storing the last sample evaluates, slots are claimed out of order with their stores
+        if (storedSamples.incrementAndGet() == WINDOW) {
+            evaluateWindow();
+        }
+    }
+
+    public int getLimit() {
+        return flowController.getLimit();
+    }
+
+    public int getPeakLimit() {
+        return peakLimit;
+    }
+
+    public int getDecreases() {
+        return decreases;
+    }
+
+    public long getBaselineNanos() {
+        return baselineNanos;
+    }
+
+    private void evaluateWindow() {
+        long[] window = new long[WINDOW];
+        for (int i = 0; i < WINDOW; i++) {
+            window[i] = samples.get(i);
+        }
+        Arrays.sort(window);
+        long p99 = window[(int) Math.ceil(WINDOW * 0.99) - 1];
+        boolean windowTimedOut = timedOut.getAndSet(false);
+
+        int limit = flowController.getLimit();
+        int newLimit;
+        if (windowTimedOut || p99 > baselineNanos * tolerance || (timeoutNanos > 0 && p99 > timeoutNanos / 2)) {
+            newLimit = Math.max(minLimit, (int) (limit * DECREASE_FACTOR));
+            slowStart = false;
+            decreases++;
+        } else {
+            newLimit = (int) Math.min(maxLimit, slowStart ? 2L * limit : limit + 1L);
+        }
+        baselineNanos = p99 < baselineNanos ? p99 : baselineNanos + (p99 - baselineNanos) / BASELINE_DRIFT;
+
+        if (newLimit != limit) {
+            flowController.setLimit(newLimit);
+        }
+        peakLimit = Math.max(peakLimit, newLimit);
+        storedSamples.set(0);
+        sampleIndex.set(0);
+    }
+
+    private static boolean isTimeout(Throwable error) {
+        Throwable current = error;
+        while (current != null) {
+            if (current instanceof TimeoutException) {
+                return true;
+            }
+            current = current.getCause();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.common;
+
+import io.tarantool.driver.api.TarantoolClientConfig;
+import io.tarantool.driver.api.TarantoolServerAddress;
+import io.tarantool.driver.auth.SimpleTarantoolCredentials;
+import io.tarantool.driver.auth.TarantoolCredentials;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.hadoop.conf.Configuration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Connection settings of the cluster shared by accessors and the fragmenter: router addresses, credentials and
+ * timeouts.
+ */
+public final class ClusterSettings {
+    private static final String TARANTOOL_SERVER = "tarantool.cartridge.server";
+    private static final String USER = "tarantool.cartridge.user";
+    private static final String PASSWORD = "tarantool.cartridge.password";
+    private static final String TIMEOUT_CONNECT = "tarantool.cartridge.timeout.connect";
+    private static final String TIMEOUT_READ = "tarantool.cartridge.timeout.read";
+    private static final String TIMEOUT_REQUEST = "tarantool.cartridge.timeout.request";
+    private static final int DEFAULT_TIMEOUT_CONNECT = 5000;
+    private static final int DEFAULT_TIMEOUT_READ = 5000;
+    private static final int DEFAULT_TIMEOUT_REQUEST = 5000;
+
+    private final String cluster;
+    private final List<TarantoolServerAddress> routerAddresses;
+    private final String user;
+    private final String password;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final int requestTimeout;
+
+    private ClusterSettings(String cluster, List<TarantoolServerAddress> routerAddresses, String user, String password,
+                            int connectTimeout, int readTimeout, int requestTimeout) {
+        this.cluster = cluster;
+        this.routerAddresses = routerAddresses;
+        this.user = user;
+        this.password = password;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * @throws IllegalArgumentException if no router address is set
+     */
+    public static ClusterSettings from(Configuration configuration) {
+        String serverHostPort = configuration.get(TARANTOOL_SERVER);
+        if (StringUtils.isBlank(serverHostPort)) {
+            throw new IllegalArgumentException("TARANTOOL_SERVER property must be set");
+        }
+        List<TarantoolServerAddress> routerAddresses = new ArrayList<>();
+        for (String seed : serverHostPort.split(",")) {
+            if (StringUtils.isNotBlank(seed)) {
+                routerAddresses.add(new TarantoolServerAddress(seed.trim()));
+            }
+        }
+        if (routerAddresses.isEmpty()) {
+            throw new IllegalArgumentException("TARANTOOL_SERVER property must be set");
+        }
+        return new ClusterSettings(serverHostPort, Collections.unmodifiableList(routerAddresses),
+                configuration.get(USER, ""), configuration.get(PASSWORD, ""),
+                configuration.getInt(TIMEOUT_CONNECT, DEFAULT_TIMEOUT_CONNECT),
+                configuration.getInt(TIMEOUT_READ, DEFAULT_TIMEOUT_READ),
+                configuration.getInt(TIMEOUT_REQUEST, DEFAULT_TIMEOUT_REQUEST));
+    }
+
+    /**
+     * @return builder of a client configuration with the credentials and timeouts set
+     */
+    public TarantoolClientConfig.Builder clientConfig() {
+        return new TarantoolClientConfig.Builder()
+                .withCredentials(getCredentials())
+                .withConnectTimeout(connectTimeout)
+                .withReadTimeout(readTimeout)
+                .withRequestTimeout(requestTimeout);
+    }
+
+    /**
+     * @return router addresses as set in the options, identifies the cluster in caches
+     */
+    public String getCluster() {
+        return cluster;
+    }
+
+    public List<TarantoolServerAddress> getRouterAddresses() {
+        return routerAddresses;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public TarantoolCredentials getCredentials() {
+        return user.isEmpty() ? new SimpleTarantoolCredentials() : new SimpleTarantoolCredentials(user, password);
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public int getRequestTimeout() {
+        return requestTimeout;
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.common;
+
+import io.tarantool.driver.exceptions.TarantoolClientException;
+import ru.datamart.pxf.plugins.tarantool.client.EncodedTuple;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CrudUtils {
+    public static final String REPLACE = "crud.replace";
+    public static final String DELETE = "crud.delete";
+    public static final String REPLACE_MANY = "crud.replace_many";
+    public static final String SELECT = "crud.select";
+    /**
+     * Storage side of {@code crud.replace_many}, called through {@code vshard.storage.call} with the rows of one
+     * replicaset.
+     */
+    public static final String REPLACE_MANY_ON_STORAGE = "_crud.replace_many_on_storage";
+    /**
+     * Options asking crud not to send affected tuples back, supported since crud 1.1.0.
+     */
+    public static final Map<String, Object> NO_RETURN_OPTIONS = Collections.singletonMap("noreturn", true);
+
+    private CrudUtils() {
+    }
+
+    /**
+     * Options of the storage side crud functions: bucket ids are calculated by the caller, so the sharding hash
+     * routers send along is not checked. Supported since crud 1.0.0, {@code noreturn} since crud 1.1.0.
+     */
+    public static Map<String, Object> storageOptions(boolean noReturn) {
+        Map<String, Object> options = new HashMap<>();
+        options.put("skip_sharding_hash_check", true);
+        if (noReturn) {
+            options.put("noreturn", true);
+        }
+        return options;
+    }
+
+    /**
+     * Joins responses of storage side batch functions into one {@code result, errors} response, so errors of all
+     * replicasets are checked as those of a single batch call.
+     */
+    public static List<?> joinResponses(List<List<?>> responses) {
+        List<Object> errors = new ArrayList<>();
+        for (List<?> response : responses) {
+            Object error = response.size() > 1 ? response.get(1) : null;
+            if (error instanceof Collection) {
+                errors.addAll((Collection<?>) error);
+            } else if (error != null) {
+                errors.add(error);
+            }
+        }
+        return Arrays.asList(null, errors.isEmpty() ? null : errors);
+    }
+
+    /**
+     * Checks the multi-return value of a crud function call ({@code result, err}) and throws if the call failed.
+     * Batch functions return a list of errors instead of a single one.
+     */
+    public static List<?> checkErrors(List<?> response) {
+        if (response.size() > 1 && response.get(1) != null) {
+            Object error = response.get(1);
+            if (error instanceof Collection) {
+                Collection<?> errors = (Collection<?>) error;
+                if (errors.isEmpty()) {
+                    return response;
+                }
+                throw new TarantoolClientException(String.format("Crud call failed with %d errors, first: %s",
+                        errors.size(), errorMessage(errors.iterator().next())));
+            }
+            throw new TarantoolClientException("Crud call failed: " + errorMessage(error));
+        }
+        return response;
+    }
+
+    /**
+     * Maps errors of a batch crud function call to the rows they belong to by the key in their
+     * {@code operation_data}.
+     *
+     * @param rows         rows sent in the call, plain lists or {@link EncodedTuple}s
+     * @param keyPositions positions of the key fields in the rows and in the operation data
+     * @return errors of the rejected rows keyed by the offset of the row in the batch
+     * @throws TarantoolClientException if the call failed as a whole or an error matches none of the rows
+     */
+    public static Map<Integer, Throwable> rowErrors(List<?> response, List<?> rows, int[] keyPositions) {
+        if (response.size() < 2 || response.get(1) == null) {
+            return Collections.emptyMap();
+        }
+        Object error = response.get(1);
+        if (!(error instanceof Collection)) {
+            throw new TarantoolClientException("Crud call failed: " + errorMessage(error));
+        }
+        Collection<?> errors = (Collection<?>) error;
+        if (errors.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<List<Object>, Integer> offsets = new HashMap<>(rows.size() * 2);
+        for (int i = 0; i < rows.size(); i++) {
+            offsets.putIfAbsent(rowKey(rows.get(i), keyPositions), i);
+        }
+        Map<Integer, Throwable> rowErrors = new HashMap<>();
+        for (Object rowError : errors) {
+            Object data = rowError instanceof Map ? ((Map<?, ?>) rowError).get("operation_data") : null;
+            Integer offset = data instanceof List ? offsets.get(rowKey(data, keyPositions)) : null;
+            if (offset == null) {
+                throw new TarantoolClientException(String.format("Crud call failed with %d errors, first: %s",
+                        errors.size(), errorMessage(rowError)));
+            }
+            rowErrors.put(offset, new TarantoolClientException("Crud call failed: " + errorMessage(rowError)));
+        }
+        return rowErrors;
+    }
+
+    private static List<Object> rowKey(Object row, int[] keyPositions) {
+        List<Object> key = new ArrayList<>(keyPositions.length);
+        if (row instanceof EncodedTuple) {
+            key.addAll(((EncodedTuple) row).fields(keyPositions));
+            return key;
+        }
+        List<?> values = (List<?>) row;
+        for (int position : keyPositions) {
+            key.add(position < values.size() ? normalize(values.get(position)) : null);
+        }
+        return key;
+    }
+
+    /**
+     * Brings numbers to the types of decoded MessagePack, so keys built from rows and from responses are equal.
+     */
+    private static Object normalize(Object value) {
+        if (value instanceof Float || value instanceof Double) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof Byte || value instanceof Short || value instanceof Integer
+                || value instanceof BigInteger && ((BigInteger) value).bitLength() < Long.SIZE) {
+            return ((Number) value).longValue();
+        }
+        return value;
+    }
+
+    private static String errorMessage(Object error) {
+        if (error instanceof Map) {
+            Object message = ((Map<?, ?>) error).get("str");
+            if (message == null) {
+                message = ((Map<?, ?>) error).get("err");
+            }
+            if (message != null) {
+                return message.toString();
+            }
+        }
+        return String.valueOf(error);
+    }
+}
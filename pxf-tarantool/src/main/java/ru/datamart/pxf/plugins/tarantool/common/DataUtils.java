@@ -16,24 +16,162 @@
 package ru.datamart.pxf.plugins.tarantool.common;
 
 import org.greenplum.pxf.api.io.DataType;
+import ru.datamart.pxf.plugins.tarantool.client.EncodedTuple;
+
+import java.math.BigInteger;
+import java.util.List;
 
 public class DataUtils {
     private DataUtils() {
     }
 
     public static Object mapAndValidate(int type, Object value) {
-        DataType dataType = DataType.get(type);
+        return converter(DataType.get(type)).convert(value);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the type is not supported
+     */
+    public static ColumnConverter converter(DataType dataType) {
+        switch (dataType) {
+            case BOOLEAN:
+            case BIGINT:
+            case INTEGER:
+            case REAL:
+            case FLOAT8:
+            case TEXT:
+            case VARCHAR:
+                return ColumnConverter.IDENTITY;
+            default:
+                throw new IllegalArgumentException("DataType not supported: " + dataType.name());
+        }
+    }
+
+    /**
+     * Returns the decoder of values read from Tarantool into the java type PXF expects for the column type,
+     * decoders fail with {@link IllegalArgumentException} if a value does not fit the type.
+     *
+     * @throws IllegalArgumentException if the type is not supported
+     */
+    public static ColumnDecoder decoder(DataType dataType) {
         switch (dataType) {
             case BOOLEAN:
+                return checked(dataType, value -> (Boolean) value);
             case BIGINT:
+                return checked(dataType, DataUtils::longValueExact);
             case INTEGER:
+                return checked(dataType, value -> Math.toIntExact(longValueExact(value)));
             case REAL:
+                return checked(dataType, value -> ((Number) value).floatValue());
             case FLOAT8:
+                return checked(dataType, value -> ((Number) value).doubleValue());
             case TEXT:
             case VARCHAR:
-                return value;
+                return checked(dataType, Object::toString);
             default:
                 throw new IllegalArgumentException("DataType not supported: " + dataType.name());
         }
     }
+
+    /**
+     * Unsigned values above {@link Long#MAX_VALUE} are decoded as {@link BigInteger}, they must not wrap around.
+     *
+     * @throws ArithmeticException if the value does not fit in a long
+     */
+    private static long longValueExact(Object value) {
+        return value instanceof BigInteger ? ((BigInteger) value).longValueExact() : ((Number) value).longValue();
+    }
+
+    private static ColumnDecoder checked(DataType dataType, ColumnDecoder decoder) {
+        return value -> {
+            if (value == null) {
+                return null;
+            }
+            try {
+                return decoder.decode(value);
+            } catch (ClassCastException | ArithmeticException e) {
+                throw new IllegalArgumentException(String.format("Value %s of type %s can not be read as %s",
+                        value, value.getClass().getSimpleName(), dataType.name()), e);
+            }
+        };
+    }
+
+    /**
+     * Returns the number of bytes the row takes when packed as a MessagePack array.
+     */
+    public static long messagePackSize(List<?> row) {
+        long size = arrayHeaderSize(row.size());
+        for (Object value : row) {
+            size += messagePackSize(value);
+        }
+        return size;
+    }
+
+    public static long messagePackSize(Object value) {
+        if (value == null || value instanceof Boolean) {
+            return 1;
+        }
+        if (value instanceof Integer || value instanceof Long) {
+            long number = ((Number) value).longValue();
+            if (number >= -32 && number < 128) {
+                return 1;
+            }
+            if (number >= -128 && number < 256) {
+                return 2;
+            }
+            if (number >= -32768 && number < 65536) {
+                return 3;
+            }
+            if (number >= Integer.MIN_VALUE && number <= 0xffffffffL) {
+                return 5;
+            }
+            return 9;
+        }
+        if (value instanceof Float) {
+            return 5;
+        }
+        if (value instanceof Double) {
+            return 9;
+        }
+        if (value instanceof String) {
+            int length = utf8Length((String) value);
+            if (length < 32) {
+                return length + 1;
+            }
+            return length + (length < 256 ? 2 : headerSize(length));
+        }
+        if (value instanceof List) {
+            return messagePackSize((List<?>) value);
+        }
+        if (value instanceof EncodedTuple) {
+            return ((EncodedTuple) value).size();
+        }
+        throw new IllegalArgumentException("Unexpected value type: " + value.getClass().getName());
+    }
+
+    public static long arrayHeaderSize(int length) {
+        return length < 16 ? 1 : headerSize(length);
+    }
+
+    private static long headerSize(int length) {
+        return length <= 0xffff ? 3 : 5;
+    }
+
+    private static int utf8Length(String value) {
+        int length = value.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x800) {
+                // three bytes for BMP chars, four for a surrogate pair of two chars
+                bytes += 2;
+                if (Character.isHighSurrogate(c)) {
+                    i++;
+                }
+            } else if (c >= 0x80) {
+                bytes++;
+            }
+        }
+        return bytes;
+    }
 }
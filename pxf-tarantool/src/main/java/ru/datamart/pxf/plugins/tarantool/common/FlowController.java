@@ -0,0 +1,183 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Limits number of requests and encoded bytes in flight for a single writer thread.
+ * <p>
+ * Completions run on the driver event loop threads and only decrement a counter and unpark the writer
+ * if it is parked, so they never contend on a lock. Every released permit wakes the writer, which keeps
+ * the window full instead of waiting for it to drain. A request larger than the whole byte limit is still
+ * let through when nothing else is in flight.
+ */
+public class FlowController {
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong inFlightBytes = new AtomicLong();
+    private final AtomicLong acquired = new AtomicLong();
+    private final long byteLimit;
+    private volatile int limit;
+    private volatile long peakBytes;
+    private volatile boolean closed;
+
+    private volatile Thread waiter;
+
+    public FlowController(int limit) {
+        this(limit, 0L);
+    }
+
+    /**
+     * @param byteLimit maximum encoded bytes in flight, not limited if not positive
+     */
+    public FlowController(int limit, long byteLimit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Flow control limit must be positive, got: " + limit);
+        }
+        this.limit = limit;
+        this.byteLimit = byteLimit;
+    }
+
+    public void acquire() throws InterruptedException {
+        acquire(0L);
+    }
+
+    /**
+     * Takes a permit for a request of given encoded size, parking the calling thread while the limits are reached.
+     */
+    public void acquire(long bytes) throws InterruptedException {
+        await(() -> hasCapacity(bytes));
+
+        inFlight.incrementAndGet();
+        long currentBytes = inFlightBytes.addAndGet(bytes);
+        if (currentBytes > peakBytes) {
+            peakBytes = currentBytes;
+        }
+        acquired.incrementAndGet();
+    }
+
+    public void release() {
+        release(0L);
+    }
+
+    /**
+     * Returns a permit taken for given encoded size, may be called from any thread. Ignored after {@link #close()}.
+     */
+    public void release(long bytes) {
+        if (closed) {
+            return;
+        }
+        inFlightBytes.addAndGet(-bytes);
+        long current = inFlight.decrementAndGet();
+        if (current < 0) {
+            inFlight.incrementAndGet();
+            throw new IllegalStateException("Released more permits than acquired");
+        }
+        wakeUp();
+    }
+
+    /**
+     * Wakes the writer without releasing a permit, e.g. to let it notice a failure.
+     */
+    public void wakeUp() {
+        Thread thread = waiter;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Parks the calling thread until all permits are released or {@code stopCondition} becomes true.
+     *
+     * @return true if all permits were released
+     */
+    public boolean awaitDrained(BooleanSupplier stopCondition) throws InterruptedException {
+        await(() -> inFlight.get() == 0 || stopCondition.getAsBoolean());
+        return inFlight.get() == 0;
+    }
+
+    public long getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getInFlightBytes() {
+        return inFlightBytes.get();
+    }
+
+    public long getPeakBytes() {
+        return peakBytes;
+    }
+
+    public long getByteLimit() {
+        return byteLimit;
+    }
+
+    public long getAcquired() {
+        return acquired.get();
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Changes the limit, requests already in flight above the new limit are not affected.
+     */
+    public void setLimit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Flow control limit must be positive, got: " + limit);
+        }
+        this.limit = limit;
+        wakeUp();
+    }
+
+    /**
+     * Stops counting, requests still in flight when the writer gave up may complete later and release nothing.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    private boolean hasCapacity(long bytes) {
+        if (inFlight.get() >= limit) {
+            return false;
+        }
+        long currentBytes = inFlightBytes.get();
+        return byteLimit <= 0 || currentBytes == 0 || currentBytes + bytes <= byteLimit;
+    }
+
+    private void await(BooleanSupplier condition) throws InterruptedException {
+        if (condition.getAsBoolean()) {
+            return;
+        }
+
+        Thread current = Thread.currentThread();
+        waiter = current;
+        try {
+            // condition is rechecked after publishing the waiter, so a release between the check and park is not lost
+            while (!condition.getAsBoolean()) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            waiter = null;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.common;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Caps requests and encoded bytes in flight of all accessors in the JVM.
+ * <p>
+ * The limits are settings of the PXF server, the JVM system properties {@value #REQUESTS_PROPERTY} and
+ * {@value #BYTES_PROPERTY}, so loads can not change them for each other. Every writing accessor registers a
+ * {@link Load}. A load may always have one request in flight. Above that it may use spare global capacity while
+ * no other load is waiting; once another load waits, it is limited to its fair share (global limit divided by
+ * number of loads), so one large load cannot starve small ones.
+ * <p>
+ * Capacity is taken with CAS on the global counters. Loads that can not proceed wait in a FIFO queue, and
+ * releases hand the freed capacity to waiters in queue order, waking only those it was granted to.
+ */
+public class InFlightGovernor {
+    public static final String REQUESTS_PROPERTY = "tarantool.cartridge.governor.requests";
+    public static final String BYTES_PROPERTY = "tarantool.cartridge.governor.bytes";
+    private static final long DEFAULT_REQUESTS = 100_000L;
+    private static final long DEFAULT_BYTES = Runtime.getRuntime().maxMemory() / 4;
+    private static final InFlightGovernor INSTANCE = new InFlightGovernor(
+            Long.getLong(REQUESTS_PROPERTY, DEFAULT_REQUESTS), Long.getLong(BYTES_PROPERTY, DEFAULT_BYTES));
+
+    private final long maxRequests;
+    private final long maxBytes;
+    private final AtomicLong totalRequests = new AtomicLong();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+    // requests to grant waiters, only the caller that raises it from 0 grants until it drops back
+    private final AtomicInteger grantRequests = new AtomicInteger();
+
+    /**
+     * @param maxRequests maximum requests in flight, not limited if not positive
+     * @param maxBytes    maximum encoded bytes in flight, not limited if not positive
+     */
+    InFlightGovernor(long maxRequests, long maxBytes) {
+        this.maxRequests = maxRequests > 0 ? maxRequests : Long.MAX_VALUE;
+        this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+    }
+
+    public static InFlightGovernor getInstance() {
+        return INSTANCE;
+    }
+
+    public Load register() {
+        loads.incrementAndGet();
+        return new Load();
+    }
+
+    public long getTotalRequests() {
+        return totalRequests.get();
+    }
+
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    public int getLoads() {
+        return loads.get();
+    }
+
+    private boolean reserve(long size) {
+        while (true) {
+            long requests = totalRequests.get();
+            if (requests >= maxRequests) {
+                return false;
+            }
+            if (totalRequests.compareAndSet(requests, requests + 1)) {
+                break;
+            }
+        }
+        while (true) {
+            long bytes = totalBytes.get();
+            if (bytes > 0 && bytes + size > maxBytes) {
+                // loads refused the slot held meanwhile are queued and ask for a grant pass after it
+                totalRequests.decrementAndGet();
+                return false;
+            }
+            if (totalBytes.compareAndSet(bytes, bytes + size)) {
+                return true;
+            }
+        }
+    }
+
+    private void grantWaiters() {
+        if (grantRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            while (grantPass()) {
+                // a grant changes who else is waiting, so skipped loads get another chance
+            }
+            missed = grantRequests.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * @return whether capacity was granted to a waiter
+     */
+    private boolean grantPass() {
+        if (waiters.isEmpty()) {
+            return false;
+        }
+        Set<Load> skipped = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Waiter waiter : waiters) {
+            if (skipped.contains(waiter.load)) {
+                // requests of one load are granted in order
+                continue;
+            }
+            Grant grant = waiter.load.tryReserve(waiter.size, othersWaiting(waiter.load));
+            if (grant == Grant.NO_CAPACITY) {
+                // later waiters do not overtake the head of the queue
+                return false;
+            }
+            if (grant == Grant.OVER_SHARE) {
+                skipped.add(waiter.load);
+            } else {
+                waiters.remove(waiter);
+                if (waiter.grant()) {
+                    return true;
+                }
+                // cancelled meanwhile
+                waiter.load.unreserve(waiter.size);
+            }
+        }
+        return false;
+    }
+
+    private boolean othersWaiting(Load load) {
+        for (Waiter waiter : waiters) {
+            if (waiter.load != load) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private enum Grant {
+        GRANTED,
+        // the load is above its fair share while others wait, later waiters may go first
+        OVER_SHARE,
+        NO_CAPACITY
+    }
+
+    private static final class Waiter {
+        private final Load load;
+        private final long size;
+        private final Thread thread;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile boolean granted;
+
+        private Waiter(Load load, long size, Thread thread) {
+            this.load = load;
+            this.size = size;
+            this.thread = thread;
+        }
+
+        private boolean grant() {
+            if (!done.compareAndSet(false, true)) {
+                return false;
+            }
+            granted = true;
+            LockSupport.unpark(thread);
+            return true;
+        }
+
+        private boolean cancel() {
+            return done.compareAndSet(false, true);
+        }
+    }
+
+    /**
+     * Share of the global capacity of a single accessor, acquired by its writer thread and released from any thread.
+     */
+    public class Load implements AutoCloseable {
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private volatile boolean closed;
+        private volatile long waitNanos;
+
+        private Load() {
+        }
+
+        public void acquire(long size) throws InterruptedException {
+            // loads never overtake the queue, except for their first request
+            if ((requests.get() == 0 || waiters.isEmpty()) && tryReserve(size, false) == Grant.GRANTED) {
+                return;
+            }
+
+            long started = System.nanoTime();
+            Waiter waiter = new Waiter(this, size, Thread.currentThread());
+            waiters.add(waiter);
+            // capacity released before the waiter was queued is granted now
+            grantWaiters();
+            boolean interrupted = false;
+            try {
+                while (!waiter.granted) {
+                    LockSupport.park(this);
+                    if (Thread.interrupted()) {
+                        if (waiter.cancel()) {
+                            waiters.remove(waiter);
+                            // waiters skipped behind this one may proceed now
+                            grantWaiters();
+                            throw new InterruptedException();
+                        }
+                        // granted meanwhile, the capacity is kept and the interrupt is left to the caller
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                waitNanos += System.nanoTime() - started;
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        public void release(long size) {
+            unreserve(size);
+        }
+
+        /**
+         * Total time the writer was parked waiting for global capacity.
+         */
+        public long getWaitNanos() {
+            return waitNanos;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                loads.decrementAndGet();
+                // shares of the remaining loads grow
+                grantWaiters();
+            }
+        }
+
+        private Grant tryReserve(long size, boolean othersWaiting) {
+            if (requests.get() == 0) {
+                totalRequests.incrementAndGet();
+                totalBytes.addAndGet(size);
+            } else if (othersWaiting && !withinShare(size)) {
+                return Grant.OVER_SHARE;
+            } else if (!reserve(size)) {
+                return Grant.NO_CAPACITY;
+            }
+            requests.incrementAndGet();
+            bytes.addAndGet(size);
+            return Grant.GRANTED;
+        }
+
+        private void unreserve(long size) {
+            requests.decrementAndGet();
+            bytes.addAndGet(-size);
+            totalRequests.decrementAndGet();
+            totalBytes.addAndGet(-size);
+            grantWaiters();
+        }
+
+        private boolean withinShare(long size) {
+            int currentLoads = Math.max(1, loads.get());
+            long requestShare = Math.max(1L, maxRequests / currentLoads);
+            long byteShare = maxBytes / currentLoads;
+            long currentBytes = bytes.get();
+            return requests.get() < requestShare && (currentBytes == 0 || currentBytes + size <= byteShare);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.common;
+
+import org.greenplum.pxf.api.OneField;
+import org.greenplum.pxf.api.utilities.ColumnDescriptor;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Conversion plan of written rows resolved once from the external table columns.
+ */
+public class RowConverter {
+    private final int[] types;
+    private final ColumnConverter[] converters;
+
+    private RowConverter(int[] types, ColumnConverter[] converters) {
+        this.types = types;
+        this.converters = converters;
+    }
+
+    /**
+     * @throws IllegalArgumentException if type of any column is not supported
+     */
+    public static RowConverter forColumns(List<ColumnDescriptor> columns) {
+        int[] types = new int[columns.size()];
+        ColumnConverter[] converters = new ColumnConverter[columns.size()];
+        for (int i = 0; i < columns.size(); i++) {
+            ColumnDescriptor column = columns.get(i);
+            types[i] = column.columnTypeCode();
+            try {
+                converters[i] = DataUtils.converter(column.getDataType());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(String.format("Column %d (%s) has unsupported type: %s",
+                        i, column.columnName(), column.columnTypeName()), e);
+            }
+        }
+        return new RowConverter(types, converters);
+    }
+
+    public List<Object> convert(List<OneField> fields) {
+        if (fields.size() != converters.length) {
+            throw new IllegalArgumentException(String.format("Expected %d fields, got: %d", converters.length, fields.size()));
+        }
+
+        Object[] values = new Object[converters.length];
+        for (int i = 0; i < values.length; i++) {
+            OneField field = fields.get(i);
+            values[i] = field.type == types[i]
+                    ? converters[i].convert(field.val)
+                    : DataUtils.mapAndValidate(field.type, field.val);
+        }
+        return Arrays.asList(values);
+    }
+}
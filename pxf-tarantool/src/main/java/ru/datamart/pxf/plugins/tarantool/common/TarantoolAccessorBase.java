@@ -18,62 +18,97 @@ package ru.datamart.pxf.plugins.tarantool.common;
 import io.tarantool.driver.api.TarantoolClientConfig;
 import io.tarantool.driver.api.TarantoolClusterAddressProvider;
 import io.tarantool.driver.api.TarantoolResult;
-import io.tarantool.driver.api.TarantoolServerAddress;
 import io.tarantool.driver.api.connection.TarantoolConnectionSelectionStrategies;
+import io.tarantool.driver.api.metadata.TarantoolFieldMetadata;
+import io.tarantool.driver.api.metadata.TarantoolIndexMetadata;
 import io.tarantool.driver.api.space.TarantoolSpaceOperations;
 import io.tarantool.driver.api.tuple.TarantoolTuple;
-import io.tarantool.driver.auth.SimpleTarantoolCredentials;
-import io.tarantool.driver.auth.TarantoolCredentials;
 import io.tarantool.driver.core.ClusterTarantoolTupleClient;
 import org.apache.commons.lang3.StringUtils;
 import org.greenplum.pxf.api.OneRow;
 import org.greenplum.pxf.api.model.Accessor;
 import org.greenplum.pxf.api.model.BasePlugin;
 import org.greenplum.pxf.api.model.RequestContext;
+import ru.datamart.pxf.plugins.tarantool.client.ConnectionFanOut;
+import ru.datamart.pxf.plugins.tarantool.client.ConnectionKey;
+import ru.datamart.pxf.plugins.tarantool.client.EncodedTuple;
+import ru.datamart.pxf.plugins.tarantool.client.RouterStatistics;
 import ru.datamart.pxf.plugins.tarantool.client.TarantoolConnection;
+import ru.datamart.pxf.plugins.tarantool.client.TarantoolConnectionPool;
 import ru.datamart.pxf.plugins.tarantool.client.TarantoolConnectionProvider;
 import ru.datamart.pxf.plugins.tarantool.client.TarantoolConnectionProviderImpl;
+import ru.datamart.pxf.plugins.tarantool.client.WeightedRouterStrategyFactory;
 import ru.datamart.pxf.plugins.tarantool.discovery.DiscoveryClientProvider;
 import ru.datamart.pxf.plugins.tarantool.discovery.DiscoveryClusterAddressProvider;
+import ru.datamart.pxf.plugins.tarantool.discovery.SegmentAddressProvider;
+import ru.datamart.pxf.plugins.tarantool.discovery.TopologyCache;
+import ru.datamart.pxf.plugins.tarantool.metadata.SpaceSchema;
+import ru.datamart.pxf.plugins.tarantool.metadata.SpaceSchemaCache;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+/**
+ * Connection to the cluster and the space metadata shared by the read and write accessors. Operations of the other
+ * direction are not supported by an accessor.
+ */
 public abstract class TarantoolAccessorBase extends BasePlugin implements Accessor {
-    private static final int DEFAULT_TIMEOUT_CONNECT = 5000;
-    private static final int DEFAULT_TIMEOUT_READ = 5000;
-    private static final int DEFAULT_TIMEOUT_REQUEST = 5000;
-    private static final int DEFAULT_BUFFER_SIZE = 5000;
+    private static final int TARANTOOL_PRIMARY_INDEX = 0; // default in tarantool
+    private static final long DEFAULT_POOL_IDLE_TIMEOUT = 60_000L;
+    private static final long DEFAULT_ROUTER_EJECT_TIMEOUT = 30_000L;
 
-    private static final String TARANTOOL_SERVER = "tarantool.cartridge.server";
-    private static final String USER = "tarantool.cartridge.user";
-    private static final String PASSWORD = "tarantool.cartridge.password";
-    private static final String TIMEOUT_CONNECT = "tarantool.cartridge.timeout.connect";
-    private static final String TIMEOUT_READ = "tarantool.cartridge.timeout.read";
-    private static final String TIMEOUT_REQUEST = "tarantool.cartridge.timeout.request";
-    private static final String BUFFER_SIZE = "tarantool.cartridge.buffer.size";
-
-    protected final Object monitor = new Object();
+    private static final String ROUTER_SELECTION = "tarantool.cartridge.router.selection";
+    private static final String ROUTER_SELECTION_ROUND_ROBIN = "round-robin";
+    private static final String ROUTER_SELECTION_WEIGHTED = "weighted";
+    private static final String ROUTER_EJECT_TIMEOUT = "tarantool.cartridge.router.eject.timeout";
+    private static final String ROUTERS_PER_SEGMENT = "tarantool.cartridge.routers.per.segment";
+    private static final String EVENT_LOOP_THREADS = "tarantool.cartridge.event.loop.threads";
+    private static final String CONNECTIONS_PER_ROUTER = "tarantool.cartridge.connections.per.router";
+    private static final String POOL_ENABLED = "tarantool.cartridge.pool.enabled";
+    private static final String POOL_IDLE_TIMEOUT = "tarantool.cartridge.pool.idle.timeout";
+    private static final String METADATA_CACHE = "tarantool.cartridge.metadata.cache";
+    private static final String DISCOVERY_TTL = "tarantool.cartridge.discovery.ttl";
+    private static final String DISCOVERY_FUNCTION = "tarantool.cartridge.discovery.function";
+    private static final String DISCOVERY_REFRESH = "tarantool.cartridge.discovery.refresh";
 
     protected String spaceName;
     protected TarantoolConnection connection;
-    protected TarantoolSpaceOperations<TarantoolTuple, TarantoolResult<TarantoolTuple>> spaceOperations;
+    protected ClusterSettings clusterSettings;
+    protected DiscoveryClientProvider discoveryClientProvider = (config, routerAddress) -> new ClusterTarantoolTupleClient(config, Collections.singletonList(routerAddress));
+    private TarantoolConnectionProvider tarantoolConnectionProvider = new TarantoolConnectionProviderImpl();
+    private TarantoolSpaceOperations<TarantoolTuple, TarantoolResult<TarantoolTuple>> spaceOperations;
 
-    protected AtomicLong activeTasks = new AtomicLong();
-    protected AtomicLong totalTasks = new AtomicLong();
-    protected AtomicLong errorCount = new AtomicLong();
-    protected AtomicReference<Throwable> firstException = new AtomicReference<>(null);
-    protected int bufferSize = DEFAULT_BUFFER_SIZE;
+    private SpaceSchemaCache spaceSchemaCache = SpaceSchemaCache.getInstance();
+    private boolean metadataCache;
+    private SpaceSchema spaceSchema;
+    private List<String> spaceFieldNames;
+    private List<String> spacePrimaryKey;
+    private CompletableFuture<Void> metadataFuture;
 
-    private DiscoveryClientProvider discoveryClientProvider = (config, routerAddress) -> new ClusterTarantoolTupleClient(config, Collections.singletonList(routerAddress));
-    private TarantoolConnectionProvider tarantoolConnectionProvider = new TarantoolConnectionProviderImpl();
+    private TopologyCache topologyCache = TopologyCache.getInstance();
+    private long discoveryTtl;
+    private String discoveryFunction;
+    private long discoveryRefresh;
+
+    private TarantoolConnectionPool connectionPool = TarantoolConnectionPool.getInstance();
+    private boolean poolEnabled;
+    private long poolIdleTimeout = DEFAULT_POOL_IDLE_TIMEOUT;
+    private ConnectionKey connectionKey;
 
-    private int connectTimeout;
-    private int readTimeout;
-    private int requestTimeout;
-    private TarantoolCredentials credentials;
-    private TarantoolServerAddress routerAddress;
+    private int eventLoopThreads;
+    private int routersPerSegment;
+    private int connectionsPerRouter;
+    private RouterStatistics routerStatistics = RouterStatistics.getInstance();
+    private boolean weightedSelection;
+    private long routerEjectTimeout = DEFAULT_ROUTER_EJECT_TIMEOUT;
 
     @Override
     public void initialize(RequestContext requestContext) {
@@ -84,29 +119,43 @@ public abstract class TarantoolAccessorBase extends BasePlugin implements Access
             throw new IllegalArgumentException("Tarantool space must be set");
         }
 
-        String serverHostPort = configuration.get(TARANTOOL_SERVER);
-        if (StringUtils.isBlank(serverHostPort)) {
-            throw new IllegalArgumentException("TARANTOOL_SERVER property must be set");
+        this.clusterSettings = ClusterSettings.from(configuration);
+
+        this.metadataCache = configuration.getBoolean(METADATA_CACHE, false);
+        this.discoveryTtl = configuration.getLong(DISCOVERY_TTL, 0);
+        if (discoveryTtl < 0) {
+            throw new IllegalArgumentException("DISCOVERY_TTL must not be negative, got: " + discoveryTtl);
         }
+        this.discoveryRefresh = configuration.getLong(DISCOVERY_REFRESH, 0);
+        this.discoveryFunction = StringUtils.trimToNull(configuration.get(DISCOVERY_FUNCTION));
 
-        String bufferSize = configuration.get(BUFFER_SIZE);
-        if (StringUtils.isNotBlank(bufferSize)) {
-            this.bufferSize = Integer.parseInt(bufferSize);
+        this.eventLoopThreads = configuration.getInt(EVENT_LOOP_THREADS, 0);
+        if (eventLoopThreads < 0) {
+            throw new IllegalArgumentException("EVENT_LOOP_THREADS must not be negative, got: " + eventLoopThreads);
         }
 
-        this.routerAddress = new TarantoolServerAddress(serverHostPort);
+        String routerSelection = configuration.get(ROUTER_SELECTION, ROUTER_SELECTION_ROUND_ROBIN);
+        if (ROUTER_SELECTION_WEIGHTED.equalsIgnoreCase(routerSelection)) {
+            this.weightedSelection = true;
+        } else if (!ROUTER_SELECTION_ROUND_ROBIN.equalsIgnoreCase(routerSelection)) {
+            throw new IllegalArgumentException("ROUTER_SELECTION must be one of [round-robin, weighted], got: " + routerSelection);
+        }
+        this.routerEjectTimeout = configuration.getLong(ROUTER_EJECT_TIMEOUT, DEFAULT_ROUTER_EJECT_TIMEOUT);
 
-        String user = configuration.get(USER, "");
-        String password = configuration.get(PASSWORD, "");
-        if (!user.isEmpty()) {
-            this.credentials = new SimpleTarantoolCredentials(user, password);
-        } else {
-            this.credentials = new SimpleTarantoolCredentials();
+        this.routersPerSegment = configuration.getInt(ROUTERS_PER_SEGMENT, 0);
+        if (routersPerSegment < 0) {
+            throw new IllegalArgumentException("ROUTERS_PER_SEGMENT must not be negative, got: " + routersPerSegment);
         }
+        // 0 is auto mode
+        this.connectionsPerRouter = ConnectionFanOut.parse(configuration.get(CONNECTIONS_PER_ROUTER, "1"));
 
-        this.connectTimeout = configuration.getInt(TIMEOUT_CONNECT, DEFAULT_TIMEOUT_CONNECT);
-        this.readTimeout = configuration.getInt(TIMEOUT_READ, DEFAULT_TIMEOUT_READ);
-        this.requestTimeout = configuration.getInt(TIMEOUT_REQUEST, DEFAULT_TIMEOUT_REQUEST);
+        this.poolEnabled = configuration.getBoolean(POOL_ENABLED, false);
+        this.poolIdleTimeout = configuration.getLong(POOL_IDLE_TIMEOUT, DEFAULT_POOL_IDLE_TIMEOUT);
+        this.connectionKey = new ConnectionKey(clusterSettings.getCluster(), clusterSettings.getUser(), clusterSettings.getPassword(),
+                Arrays.asList(clusterSettings.getConnectTimeout(), clusterSettings.getReadTimeout(),
+                        clusterSettings.getRequestTimeout(), eventLoopThreads, weightedSelection, connectionsPerRouter,
+                        // segments with their own routers must not share clients
+                        routersPerSegment > 0 ? requestContext.getSegmentId() : -1));
     }
 
     @Override
@@ -126,54 +175,195 @@ public abstract class TarantoolAccessorBase extends BasePlugin implements Access
 
     @Override
     public boolean openForWrite() throws Exception {
-        LOG.info("Opening \"{}\" for write in {}. Segment: {}, total: {}",
-                context.getProfile(), spaceName, context.getSegmentId(), context.getTotalSegments());
-        TarantoolClientConfig config = new TarantoolClientConfig.Builder()
-                .withCredentials(credentials)
-                .withConnectTimeout(connectTimeout)
-                .withReadTimeout(readTimeout)
-                .withRequestTimeout(requestTimeout)
-                .withConnectionSelectionStrategyFactory(TarantoolConnectionSelectionStrategies.ParallelRoundRobinStrategyFactory.INSTANCE)
-                .build();
-        TarantoolClusterAddressProvider discoveryClusterAddressProvider = new DiscoveryClusterAddressProvider(config, routerAddress, discoveryClientProvider);
-        connection = tarantoolConnectionProvider.provide(config, discoveryClusterAddressProvider);
-        spaceOperations = connection.getClient().space(spaceName);
-        totalTasks.set(0);
-        activeTasks.set(0);
-        errorCount.set(0);
-        firstException.set(null);
-        return true;
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean writeNextObject(OneRow oneRow) throws Exception {
+        throw new UnsupportedOperationException();
     }
 
     @Override
     public void closeForWrite() throws Exception {
-        LOG.info("Closing \"{}\" for write in \"{}\". Total futures: {}, active futures: {}, segment: {}, total: {}",
-                context.getProfile(), spaceName, totalTasks.get(), activeTasks.get(), context.getSegmentId(), context.getTotalSegments());
+        throw new UnsupportedOperationException();
+    }
 
+    /**
+     * Creates the client of the accessor or takes it from the pool.
+     *
+     * @return configuration of the client without the connections setting, also used for storage clients
+     */
+    protected TarantoolClientConfig openClient() {
+        TarantoolClientConfig.Builder configBuilder = clusterSettings.clientConfig()
+                .withMessagePackMapper(EncodedTuple.mapper())
+                .withConnectionSelectionStrategyFactory(weightedSelection
+                        ? new WeightedRouterStrategyFactory(routerStatistics, routerEjectTimeout)
+                        : TarantoolConnectionSelectionStrategies.ParallelRoundRobinStrategyFactory.INSTANCE);
+        if (eventLoopThreads > 0) {
+            configBuilder.withEventLoopThreadsNumber(eventLoopThreads);
+        }
+        TarantoolClientConfig config = configBuilder.build();
+        DiscoveryClusterAddressProvider clusterAddressProvider = new DiscoveryClusterAddressProvider(config, clusterSettings.getRouterAddresses(), discoveryClientProvider,
+                discoveryFunction, discoveryTtl > 0 ? topologyCache : null, discoveryTtl, discoveryRefresh,
+                routerStatistics);
+        TarantoolClusterAddressProvider discoveryClusterAddressProvider = routersPerSegment > 0
+                ? new SegmentAddressProvider(clusterAddressProvider, context.getSegmentId(), routersPerSegment, routerStatistics)
+                : clusterAddressProvider;
+        Supplier<TarantoolConnection> connectionFactory = () -> {
+            if (connectionsPerRouter == 1) {
+                return tarantoolConnectionProvider.provide(config, discoveryClusterAddressProvider);
+            }
+            int connections = connectionsPerRouter > 0
+                    ? connectionsPerRouter
+                    : autoConnectionsPerRouter(clusterAddressProvider);
+            return tarantoolConnectionProvider.provide(configBuilder.withConnections(connections).build(),
+                    discoveryClusterAddressProvider);
+        };
+        if (poolEnabled) {
+            connection = connectionPool.acquire(connectionKey, poolIdleTimeout, connectionFactory);
+        } else {
+            connection = connectionFactory.get();
+        }
+        spaceOperations = null;
+        return config;
+    }
+
+    private int autoConnectionsPerRouter(DiscoveryClusterAddressProvider clusterAddressProvider) {
+        // the client is created with the routers discovered here instead of discovering them again
+        int routersTotal = clusterAddressProvider.prefetch().size();
+        int routersUsed = routersPerSegment > 0 ? Math.min(routersPerSegment, routersTotal) : routersTotal;
+        int connections = ConnectionFanOut.auto(context.getTotalSegments(), routersUsed, routersTotal);
+        LOG.debug("Opening {} connections to each of {} routers, routers in cluster: {}, segments: {}",
+                connections, routersUsed, routersTotal, context.getTotalSegments());
+        return connections;
+    }
+
+    /**
+     * Starts loading the space schema from the cache when it is enabled and reloading the driver metadata otherwise.
+     *
+     * @return completes when the space schema is loaded
+     */
+    protected CompletableFuture<Void> openMetadata() {
+        spaceFieldNames = null;
+        spacePrimaryKey = null;
+        CompletableFuture<SpaceSchema> schemaFuture = metadataCache
+                ? spaceSchemaCache.getAsync(clusterSettings.getCluster(), spaceName, connection.getClient())
+                : CompletableFuture.completedFuture(null);
+        // pooled clients outlive schema changes: without the schema cache the driver metadata is reloaded on every
+        // open while setup runs, with it only on first use when the client loaded it at another schema version
+        metadataFuture = metadataCache ? null : connection.refreshMetadata(null);
+        return schemaFuture.thenAccept(schema -> spaceSchema = schema);
+    }
+
+    /**
+     * @return operations of the space, resolved on first use as the driver loads the cluster metadata for them
+     */
+    protected TarantoolSpaceOperations<TarantoolTuple, TarantoolResult<TarantoolTuple>> spaceOperations() {
+        if (spaceOperations == null) {
+            awaitMetadata();
+            spaceOperations = connection.getClient().space(spaceName);
+        }
+        return spaceOperations;
+    }
+
+    private void awaitMetadata() {
+        if (metadataFuture == null) {
+            metadataFuture = connection.refreshMetadata(spaceSchema != null ? spaceSchema.getVersion() : null);
+        }
         try {
-            while (activeTasks.get() > 0 && errorCount.get() == 0) {
-                Thread.sleep(100L);
+            metadataFuture.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
+            throw e;
+        }
+    }
 
-            if (errorCount.get() > 0) {
-                LOG.error("Failed \"{}\" for write in \"{}\". Errors: {}, segment: {}, total: {}",
-                        context.getProfile(), spaceName, errorCount.get(), context.getSegmentId(), context.getTotalSegments(), firstException.get());
-                throw new IllegalStateException("Some of the tasks completed exceptionally", firstException.get());
+    protected static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return field names of the space ordered by position
+     */
+    protected List<String> spaceFieldNames() {
+        if (spaceFieldNames == null) {
+            spaceFieldNames = spaceSchema != null
+                    ? spaceSchema.getFieldNames()
+                    : spaceOperations().getMetadata().getSpaceFormatMetadata().values().stream()
+                    .sorted(Comparator.comparingInt(TarantoolFieldMetadata::getFieldPosition))
+                    .map(TarantoolFieldMetadata::getFieldName)
+                    .collect(Collectors.toList());
+        }
+        return spaceFieldNames;
+    }
+
+    /**
+     * @return field names of the primary index parts
+     */
+    protected List<String> spacePrimaryKey() {
+        if (spacePrimaryKey == null) {
+            if (spaceSchema != null) {
+                if (spaceSchema.getPrimaryKey().isEmpty()) {
+                    throw new IllegalArgumentException(String.format("Space: %s has no primary index", spaceName));
+                }
+                spacePrimaryKey = spaceSchema.getPrimaryKey();
+            } else {
+                awaitMetadata();
+                TarantoolIndexMetadata primaryIndex = connection.getClient().metadata().getIndexById(spaceName, TARANTOOL_PRIMARY_INDEX)
+                        .orElseThrow(() -> new IllegalArgumentException(String.format("Space: %s has no primary index", spaceName)));
+                spacePrimaryKey = primaryIndex.getIndexParts().stream()
+                        .map(part -> part.getPath() != null ? part.getPath() : spaceFieldNames().get(part.getFieldIndex()))
+                        .collect(Collectors.toList());
             }
+        }
+        return spacePrimaryKey;
+    }
+
+    /**
+     * Runs the validation of the external table columns unless it already passed against the cached space schema.
+     *
+     * @param kind distinguishes validations of different accessors
+     */
+    protected void validateColumns(String kind, Runnable validation) {
+        List<String> columns = new ArrayList<>(context.getColumns() + 1);
+        columns.add(kind);
+        for (int i = 0; i < context.getColumns(); i++) {
+            columns.add(context.getColumn(i).columnName());
+        }
+        if (spaceSchema != null && spaceSchema.isValidated(columns)) {
+            return;
+        }
+        validation.run();
+        if (spaceSchema != null) {
+            spaceSchema.markValidated(columns);
+        }
+    }
 
-            LOG.info("Closing \"{}\" for write in \"{}\". All futures complete, segment: {}, total: {}",
-                    context.getProfile(), spaceName, context.getSegmentId(), context.getTotalSegments());
-        } finally {
-            totalTasks.set(0);
-            activeTasks.set(0);
-            errorCount.set(0);
-            firstException.set(null);
-            closeConnectionIfOpened();
-            LOG.info("Closed \"{}\" for write in \"{}\", segment: {}, total: {}",
-                    context.getProfile(), spaceName, context.getSegmentId(), context.getTotalSegments());
+    /**
+     * Drops the pooled client instead of giving it back, responses of abandoned requests must not reach its next holder.
+     */
+    protected void invalidateConnection() {
+        if (poolEnabled && connection != null) {
+            connectionPool.invalidate(connectionKey, connection);
         }
     }
 
+    /**
+     * @return pool the clients of the accessor are taken from when pooling is enabled
+     */
+    protected TarantoolConnectionPool connectionPool() {
+        return connectionPool;
+    }
+
     protected void closeConnectionIfOpened() {
         if (connection != null) {
             connection.close();
@@ -186,25 +376,23 @@ public abstract class TarantoolAccessorBase extends BasePlugin implements Access
         this.discoveryClientProvider = discoveryClientProvider;
     }
 
-    public void setTarantoolConnectionProvider(TarantoolConnectionProvider tarantoolConnectionProvider) {
-        this.tarantoolConnectionProvider = tarantoolConnectionProvider;
+    public void setSpaceSchemaCache(SpaceSchemaCache spaceSchemaCache) {
+        this.spaceSchemaCache = spaceSchemaCache;
     }
 
-    protected void waitUntilBufferFreed() throws InterruptedException {
-        while (activeTasks.get() >= bufferSize) {
-            synchronized (monitor) {
-                if (activeTasks.get() >= bufferSize) {
-                    monitor.wait();
-                }
-            }
-        }
+    public void setTopologyCache(TopologyCache topologyCache) {
+        this.topologyCache = topologyCache;
     }
 
-    protected void notifyIfBufferFreed() {
-        synchronized (monitor) {
-            if (activeTasks.get() <= bufferSize / 10) {
-                monitor.notify();
-            }
-        }
+    public void setRouterStatistics(RouterStatistics routerStatistics) {
+        this.routerStatistics = routerStatistics;
+    }
+
+    public void setConnectionPool(TarantoolConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
+    public void setTarantoolConnectionProvider(TarantoolConnectionProvider tarantoolConnectionProvider) {
+        this.tarantoolConnectionProvider = tarantoolConnectionProvider;
     }
 }
@@ -0,0 +1,440 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.common;
+
+import io.tarantool.driver.api.TarantoolClientConfig;
+import io.tarantool.driver.exceptions.NoAvailableConnectionsException;
+import org.apache.commons.lang3.StringUtils;
+import org.greenplum.pxf.api.model.RequestContext;
+import ru.datamart.pxf.plugins.tarantool.client.ClientResources;
+import ru.datamart.pxf.plugins.tarantool.client.EncodedTuple;
+import ru.datamart.pxf.plugins.tarantool.routing.StorageRouter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Writes rows in batches, keeping a bounded number of requests in flight.
+ */
+public abstract class TarantoolWriteAccessorBase extends TarantoolAccessorBase {
+    private static final int DEFAULT_BUFFER_SIZE = 5000;
+    private static final int DEFAULT_BUFFER_MIN = 16;
+    private static final long DEFAULT_BUFFER_BYTES = 64L * 1024L * 1024L;
+    private static final int DEFAULT_BATCH_SIZE = 1;
+    private static final long DEFAULT_BATCH_BYTES = 1024L * 1024L;
+    private static final long DEFAULT_AGGREGATE_LINGER = 5L;
+
+    private static final String BUFFER_SIZE = "tarantool.cartridge.buffer.size";
+    private static final String BUFFER_BYTES = "tarantool.cartridge.buffer.bytes";
+    private static final String BUFFER_ADAPTIVE = "tarantool.cartridge.buffer.adaptive";
+    private static final String BUFFER_MIN = "tarantool.cartridge.buffer.min";
+    private static final String BATCH_SIZE = "tarantool.cartridge.batch.size";
+    private static final String BATCH_BYTES = "tarantool.cartridge.batch.bytes";
+    private static final String AGGREGATE_SIZE = "tarantool.cartridge.aggregate.size";
+    private static final String AGGREGATE_LINGER = "tarantool.cartridge.aggregate.linger";
+    private static final String BATCH_DELETE_FUNCTION = "tarantool.cartridge.batch.delete.function";
+    private static final String DIRECT_ENCODING = "tarantool.cartridge.encoding.direct";
+    private static final String NO_RETURN = "tarantool.cartridge.write.noreturn";
+    private static final String ROUTING_MODE = "tarantool.cartridge.routing.mode";
+    private static final String ROUTING_MODE_ROUTER = "router";
+    private static final String ROUTING_MODE_STORAGE = "storage";
+
+    protected FlowController flowController = new FlowController(DEFAULT_BUFFER_SIZE);
+    protected AtomicLong totalTasks = new AtomicLong();
+    protected AtomicLong errorCount = new AtomicLong();
+    protected AtomicReference<Throwable> firstException = new AtomicReference<>(null);
+    protected int bufferSize = DEFAULT_BUFFER_SIZE;
+    protected long bufferBytes = DEFAULT_BUFFER_BYTES;
+    protected boolean bufferAdaptive;
+    protected int bufferMin = DEFAULT_BUFFER_MIN;
+    protected AdaptiveLimit adaptiveLimit;
+    protected int batchSize = DEFAULT_BATCH_SIZE;
+    protected long batchBytes = DEFAULT_BATCH_BYTES;
+    protected String batchDeleteFunction;
+    protected boolean noReturn;
+    protected boolean directEncoding;
+    protected TupleEncoder tupleEncoder;
+    protected StorageRouter storageRouter;
+    protected int[] shardingKeyPositions;
+
+    private InFlightGovernor governor = InFlightGovernor.getInstance();
+    private InFlightGovernor.Load governorLoad;
+
+    private CompletableFuture<List<String>> shardingKeyFuture;
+    private long openStartNanos;
+    private long clientNanos;
+    private long setupRequestsNanos;
+
+    private List<Object> batch = new ArrayList<>();
+    private long batchBytesUsed;
+
+    private WriteAggregator writeAggregator = WriteAggregator.getInstance();
+    private int aggregateSize;
+    private long aggregateLinger = DEFAULT_AGGREGATE_LINGER;
+    private WriteAggregator.Member pipeline;
+    /**
+     * Positions of the fields identifying a row in sent rows and in crud operation data, used to attribute
+     * errors of merged batches to the segments the rows came from.
+     */
+    protected int[] batchKeyPositions;
+
+    protected boolean storageRouting;
+
+    @Override
+    public void initialize(RequestContext requestContext) {
+        super.initialize(requestContext);
+
+        String bufferSize = configuration.get(BUFFER_SIZE);
+        if (StringUtils.isNotBlank(bufferSize)) {
+            this.bufferSize = Integer.parseInt(bufferSize);
+        }
+        this.bufferBytes = configuration.getLong(BUFFER_BYTES, DEFAULT_BUFFER_BYTES);
+        this.flowController = new FlowController(this.bufferSize, this.bufferBytes);
+        this.bufferAdaptive = configuration.getBoolean(BUFFER_ADAPTIVE, false);
+        this.bufferMin = configuration.getInt(BUFFER_MIN, Math.min(DEFAULT_BUFFER_MIN, this.bufferSize));
+        if (bufferAdaptive && (bufferMin < 1 || bufferMin > this.bufferSize)) {
+            throw new IllegalArgumentException(String.format("BUFFER_MIN must be in [1, BUFFER_SIZE=%d], got: %d",
+                    this.bufferSize, bufferMin));
+        }
+
+        this.batchSize = configuration.getInt(BATCH_SIZE, DEFAULT_BATCH_SIZE);
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("BATCH_SIZE must be positive, got: " + batchSize);
+        }
+        this.batchBytes = configuration.getLong(BATCH_BYTES, DEFAULT_BATCH_BYTES);
+        if (batchBytes < 1) {
+            throw new IllegalArgumentException("BATCH_BYTES must be positive, got: " + batchBytes);
+        }
+        this.batchDeleteFunction = StringUtils.trimToNull(configuration.get(BATCH_DELETE_FUNCTION));
+        this.noReturn = configuration.getBoolean(NO_RETURN, false);
+        this.directEncoding = configuration.getBoolean(DIRECT_ENCODING, false);
+
+        String routingMode = configuration.get(ROUTING_MODE, ROUTING_MODE_ROUTER);
+        if (ROUTING_MODE_STORAGE.equals(routingMode)) {
+            this.storageRouting = true;
+            if (noReturn && batchSize < 2) {
+                LOG.warn("NO_RETURN is ignored with ROUTING_MODE={} without batches, storages return affected tuples", ROUTING_MODE_STORAGE);
+            }
+        } else if (ROUTING_MODE_ROUTER.equals(routingMode)) {
+            this.storageRouting = false;
+        } else {
+            throw new IllegalArgumentException("ROUTING_MODE must be one of [router, storage], got: " + routingMode);
+        }
+
+        this.aggregateSize = configuration.getInt(AGGREGATE_SIZE, 0);
+        if (aggregateSize < 0) {
+            throw new IllegalArgumentException("AGGREGATE_SIZE must not be negative, got: " + aggregateSize);
+        }
+        this.aggregateLinger = configuration.getLong(AGGREGATE_LINGER, DEFAULT_AGGREGATE_LINGER);
+        if (aggregateSize > 0) {
+            if (storageRouting) {
+                LOG.warn("AGGREGATE_SIZE is ignored with ROUTING_MODE={}, each segment sends its own batches to storages", ROUTING_MODE_STORAGE);
+                this.aggregateSize = 0;
+            } else if (batchSize < 2) {
+                throw new IllegalArgumentException("AGGREGATE_SIZE requires BATCH_SIZE greater than 1, got: " + batchSize);
+            }
+        }
+    }
+
+    @Override
+    public boolean openForWrite() throws Exception {
+        LOG.info("Opening \"{}\" for write in {}. Segment: {}, total: {}",
+                context.getProfile(), spaceName, context.getSegmentId(), context.getTotalSegments());
+        openStartNanos = System.nanoTime();
+        TarantoolClientConfig config = openClient();
+        long clientReadyNanos = System.nanoTime();
+        clientNanos = clientReadyNanos - openStartNanos;
+
+        // setup requests are sent together and share round trips, local setup runs while they are in flight
+        CompletableFuture<Void> schemaFuture = openMetadata();
+        CompletableFuture<Void> routingFuture = CompletableFuture.completedFuture(null);
+        shardingKeyFuture = null;
+        if (storageRouting) {
+            storageRouter = new StorageRouter(connection.getClient(), config, discoveryClientProvider);
+            routingFuture = storageRouter.initAsync();
+            shardingKeyFuture = storageRouter.fetchShardingKey(spaceName);
+        }
+        tupleEncoder = directEncoding ? TupleEncoder.forColumns(context.getTupleDescription()) : null;
+        batch = new ArrayList<>(batchSize);
+        batchBytesUsed = 0;
+        totalTasks.set(0);
+        // requests abandoned by a previous write release into the closed controller they were counted in
+        flowController = new FlowController(bufferSize, bufferBytes);
+        if (bufferAdaptive) {
+            adaptiveLimit = new AdaptiveLimit(flowController, bufferMin, bufferSize, clusterSettings.getRequestTimeout());
+        }
+        errorCount.set(0);
+        firstException.set(null);
+        governorLoad = governor.register();
+        if (aggregateSize > 0 && StringUtils.isBlank(context.getTransactionId())) {
+            LOG.warn("Request has no transaction id, batches of space {} are not merged with other segments", spaceName);
+        } else if (aggregateSize > 0) {
+            // merged batches keep the bytes to rows ratio of segment batches
+            long aggregateBytes = batchBytes * Math.max(1, (aggregateSize + batchSize - 1) / batchSize);
+            // segments of one statement share its transaction id, rows of other statements are never merged in
+            pipeline = writeAggregator.register(Arrays.asList(context.getTransactionId(), getClass().getName(),
+                            clusterSettings.getCluster(), clusterSettings.getUser(), spaceName, batchDeleteFunction, noReturn, directEncoding),
+                    aggregateSize, aggregateBytes, aggregateLinger, this::sendMerged);
+        }
+
+        await(schemaFuture);
+        await(routingFuture);
+        setupRequestsNanos = System.nanoTime() - clientReadyNanos;
+        return true;
+    }
+
+    /**
+     * Logs how long the accessor took to open, split into client creation, setup requests and the checks of the
+     * subclass.
+     */
+    protected void logSetup() {
+        long totalNanos = System.nanoTime() - openStartNanos;
+        LOG.debug("Opened \"{}\" for write in \"{}\" in {} ms: client {} ms, setup requests {} ms, checks {} ms, segment: {}, total: {}",
+                context.getProfile(), spaceName, totalNanos / 1_000_000L, clientNanos / 1_000_000L, setupRequestsNanos / 1_000_000L,
+                (totalNanos - clientNanos - setupRequestsNanos) / 1_000_000L, context.getSegmentId(), context.getTotalSegments());
+    }
+
+    @Override
+    public void closeForWrite() throws Exception {
+        LOG.info("Closing \"{}\" for write in \"{}\". Total futures: {}, active futures: {}, segment: {}, total: {}",
+                context.getProfile(), spaceName, totalTasks.get(), flowController.getInFlight(), context.getSegmentId(), context.getTotalSegments());
+
+        try {
+            if (errorCount.get() == 0) {
+                flush(true);
+            }
+
+            flowController.awaitDrained(() -> errorCount.get() > 0);
+
+            if (errorCount.get() > 0) {
+                LOG.error("Failed \"{}\" for write in \"{}\". Errors: {}, segment: {}, total: {}",
+                        context.getProfile(), spaceName, errorCount.get(), context.getSegmentId(), context.getTotalSegments(), firstException.get());
+                throw new IllegalStateException("Some of the tasks completed exceptionally", firstException.get());
+            }
+
+            LOG.info("Closing \"{}\" for write in \"{}\". All futures complete, peak bytes in flight: {}, waited for other loads: {} ms, segment: {}, total: {}",
+                    context.getProfile(), spaceName, flowController.getPeakBytes(), governorLoad != null ? governorLoad.getWaitNanos() / 1_000_000L : 0L,
+                    context.getSegmentId(), context.getTotalSegments());
+        } finally {
+            if (adaptiveLimit != null) {
+                LOG.info("Adaptive buffer of \"{}\" in \"{}\" converged at {}, peak: {}, decreases: {}, baseline p99: {} ms, segment: {}, total: {}",
+                        context.getProfile(), spaceName, adaptiveLimit.getLimit(), adaptiveLimit.getPeakLimit(), adaptiveLimit.getDecreases(),
+                        adaptiveLimit.getBaselineNanos() / 1_000_000L, context.getSegmentId(), context.getTotalSegments());
+                adaptiveLimit = null;
+            }
+            if (flowController.getInFlight() > 0 || isConnectionFailure(firstException.get())) {
+                invalidateConnection();
+            }
+            totalTasks.set(0);
+            flowController.close();
+            errorCount.set(0);
+            firstException.set(null);
+            closeConnectionIfOpened();
+            LOG.info("Closed \"{}\" for write in \"{}\", {}, segment: {}, total: {}",
+                    context.getProfile(), spaceName, ClientResources.describe(connectionPool(), LOG.isDebugEnabled()), context.getSegmentId(), context.getTotalSegments());
+        }
+    }
+
+    /**
+     * Buffers the row and sends the batch once it reaches {@code batchSize} rows or {@code batchBytes} encoded bytes.
+     */
+    protected void addToBatch(Object row) throws Exception {
+        batch.add(row);
+        batchBytesUsed += DataUtils.messagePackSize(row);
+        if (batch.size() >= batchSize || batchBytesUsed >= batchBytes) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends buffered rows as one task.
+     */
+    protected void flush() throws Exception {
+        flush(false);
+    }
+
+    /**
+     * @param last the accessor is closing and waits for its tasks, batches merged with other segments are sent at once
+     */
+    private void flush(boolean last) throws Exception {
+        if (batch.isEmpty()) {
+            if (last && pipeline != null) {
+                pipeline.flush();
+            }
+            return;
+        }
+
+        List<Object> rows = batch;
+        long bytes = batchBytesUsed;
+        batch = new ArrayList<>(batchSize);
+        batchBytesUsed = 0;
+        submitTask(bytes, () -> pipeline != null
+                ? pipeline.submit(rows, bytes, last)
+                : sendBatch(rows).thenApply(CrudUtils::checkErrors));
+    }
+
+    /**
+     * Sends buffered rows in one request.
+     *
+     * @return completes with the crud response, errors in it are checked by the caller
+     */
+    protected abstract CompletableFuture<List<?>> sendBatch(List<?> rows);
+
+    private CompletableFuture<Map<Integer, Throwable>> sendMerged(List<?> rows) {
+        return sendBatch(rows).thenApply(response -> CrudUtils.rowErrors(response, rows, batchKeyPositions));
+    }
+
+    /**
+     * Resolves positions of the sharding key fields in written rows, falling back to the primary key when
+     * the space has no explicit sharding key in ddl schema.
+     *
+     * @param rowFields field names of written rows in order
+     */
+    protected void resolveShardingKey(List<String> rowFields, List<String> primaryKey) throws Exception {
+        List<String> shardingKey = await(shardingKeyFuture);
+        if (shardingKey.isEmpty()) {
+            shardingKey = primaryKey;
+        }
+
+        shardingKeyPositions = new int[shardingKey.size()];
+        for (int i = 0; i < shardingKey.size(); i++) {
+            shardingKeyPositions[i] = rowFields.indexOf(shardingKey.get(i));
+            if (shardingKeyPositions[i] < 0) {
+                throw new IllegalArgumentException(String.format("Sharding key field %s of space %s is not written, got: %s",
+                        shardingKey.get(i), spaceName, rowFields));
+            }
+        }
+        LOG.info("Writing \"{}\" directly to storages, sharding key: {}", spaceName, shardingKey);
+    }
+
+    protected int bucketId(List<?> row) {
+        List<Object> shardingKey = new ArrayList<>(shardingKeyPositions.length);
+        for (int position : shardingKeyPositions) {
+            shardingKey.add(row.get(position));
+        }
+        return storageRouter.bucketId(shardingKey);
+    }
+
+    @Override
+    protected void closeConnectionIfOpened() {
+        if (pipeline != null) {
+            pipeline.close();
+            pipeline = null;
+        }
+        if (governorLoad != null) {
+            governorLoad.close();
+            governorLoad = null;
+        }
+        if (storageRouter != null) {
+            storageRouter.close();
+            storageRouter = null;
+        }
+        super.closeConnectionIfOpened();
+    }
+
+    public void setWriteAggregator(WriteAggregator writeAggregator) {
+        this.writeAggregator = writeAggregator;
+    }
+
+    public void setGovernor(InFlightGovernor governor) {
+        this.governor = governor;
+    }
+
+    /**
+     * Packs the row with {@link TupleEncoder} when direct encoding is enabled, returns the row itself otherwise.
+     */
+    protected Object encode(List<?> row) {
+        return tupleEncoder != null ? tupleEncoder.encode(row) : row;
+    }
+
+    /**
+     * Encoded size of the row for the byte budget, not computed for plain rows when the budget is disabled.
+     */
+    protected long encodedSize(Object row) {
+        return bufferBytes > 0 || row instanceof EncodedTuple ? DataUtils.messagePackSize(row) : 0L;
+    }
+
+    /**
+     * Waits for a free slot and {@code bytes} of budget in the buffer and starts the task in it. The budget is
+     * given back when the task ends, or at once if starting it throws.
+     */
+    protected void submitTask(long bytes, Supplier<CompletableFuture<?>> task) throws InterruptedException {
+        acquireTask(bytes);
+        CompletableFuture<?> future;
+        try {
+            future = task.get();
+        } catch (RuntimeException e) {
+            totalTasks.decrementAndGet();
+            governorLoad.release(bytes);
+            flowController.release(bytes);
+            throw e;
+        }
+        registerTask(future, bytes);
+    }
+
+    private void acquireTask(long bytes) throws InterruptedException {
+        flowController.acquire(bytes);
+        try {
+            governorLoad.acquire(bytes);
+        } catch (InterruptedException e) {
+            flowController.release(bytes);
+            throw e;
+        }
+        totalTasks.incrementAndGet();
+    }
+
+    private void registerTask(CompletableFuture<?> future, long bytes) {
+        AdaptiveLimit limit = adaptiveLimit;
+        InFlightGovernor.Load load = governorLoad;
+        FlowController controller = flowController;
+        long startNanos = limit != null ? System.nanoTime() : 0L;
+        future.whenComplete((result, throwable) -> {
+            if (limit != null) {
+                limit.onComplete(System.nanoTime() - startNanos, throwable);
+            }
+            if (throwable != null) {
+                LOG.error("Task ended up with exception", throwable);
+                firstException.compareAndSet(null, throwable);
+                errorCount.incrementAndGet();
+            }
+            load.release(bytes);
+            controller.release(bytes);
+        });
+    }
+
+    protected void checkTasksFailed() {
+        if (errorCount.get() > 0) {
+            throw new IllegalStateException("Some of the tasks completed exceptionally", firstException.get());
+        }
+    }
+
+    private static boolean isConnectionFailure(Throwable error) {
+        Throwable current = error;
+        while (current != null) {
+            if (current instanceof NoAvailableConnectionsException) {
+                return true;
+            }
+            current = current.getCause();
+        }
+        return false;
+    }
+}
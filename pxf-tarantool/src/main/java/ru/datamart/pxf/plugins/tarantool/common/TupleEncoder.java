@@ -0,0 +1,108 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.common;
+
+import org.greenplum.pxf.api.io.DataType;
+import org.greenplum.pxf.api.utilities.ColumnDescriptor;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePacker;
+import ru.datamart.pxf.plugins.tarantool.client.EncodedTuple;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Packs rows straight into MessagePack bytes with writers resolved once from the external table columns,
+ * instead of the driver building a value for every field with a converter looked up by its class.
+ * <p>
+ * Rows are packed into one buffer reused by the encoder, only the bytes of the packed row are copied out of it.
+ * Long strings are encoded to UTF-8 right into the buffer.
+ */
+public class TupleEncoder {
+    private final FieldWriter[] writers;
+    private final MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+
+    private TupleEncoder(FieldWriter[] writers) {
+        this.writers = writers;
+    }
+
+    /**
+     * @throws IllegalArgumentException if type of any column is not supported
+     */
+    public static TupleEncoder forColumns(List<ColumnDescriptor> columns) {
+        FieldWriter[] writers = new FieldWriter[columns.size()];
+        for (int i = 0; i < columns.size(); i++) {
+            ColumnDescriptor column = columns.get(i);
+            writers[i] = writer(column.getDataType());
+            if (writers[i] == null) {
+                throw new IllegalArgumentException(String.format("Column %d (%s) has unsupported type: %s",
+                        i, column.columnName(), column.columnTypeName()));
+            }
+        }
+        return new TupleEncoder(writers);
+    }
+
+    public EncodedTuple encode(List<?> row) {
+        if (row.size() != writers.length) {
+            throw new IllegalArgumentException(String.format("Expected %d fields, got: %d", writers.length, row.size()));
+        }
+
+        packer.clear();
+        try {
+            packer.packArrayHeader(writers.length);
+            for (int i = 0; i < writers.length; i++) {
+                Object value = row.get(i);
+                if (value == null) {
+                    packer.packNil();
+                } else {
+                    writers[i].write(packer, value);
+                }
+            }
+        } catch (IOException e) {
+            // the buffer packer writes to memory only
+            throw new UncheckedIOException(e);
+        }
+        return new EncodedTuple(packer.toByteArray());
+    }
+
+    /**
+     * @return writer of the column values as the column type, null if not supported
+     */
+    private static FieldWriter writer(DataType dataType) {
+        switch (dataType) {
+            case BOOLEAN:
+                return (packer, value) -> packer.packBoolean((Boolean) value);
+            case BIGINT:
+            case INTEGER:
+                return (packer, value) -> packer.packLong(((Number) value).longValue());
+            case REAL:
+            case FLOAT8:
+                // float values are written as doubles, which represent them exactly
+                return (packer, value) -> packer.packDouble(((Number) value).doubleValue());
+            case TEXT:
+            case VARCHAR:
+                return (packer, value) -> packer.packString(value.toString());
+            default:
+                return null;
+        }
+    }
+
+    private interface FieldWriter {
+        void write(MessagePacker packer, Object value) throws IOException;
+    }
+}
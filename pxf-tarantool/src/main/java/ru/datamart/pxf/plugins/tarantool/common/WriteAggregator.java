@@ -0,0 +1,292 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges batches of accessors of the PXF JVM writing to the same destination into larger requests.
+ * <p>
+ * Segments co-located on a host register a {@link Member} of the pipeline of their destination (statement,
+ * cluster, space and write function) and submit their own batches to it. The pipeline sends the merged batch
+ * once it reaches its size, when a submitter flushes or closes, or after a short linger. Every submission gets
+ * its own future that fails only if the whole request failed or the destination rejected one of its rows,
+ * so each accessor still tracks its own requests and errors. A merged batch is always sent by an open member
+ * that contributed to it, so it never outlives their connections.
+ */
+public class WriteAggregator {
+    private static final WriteAggregator INSTANCE = new WriteAggregator(Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "tarantool-write-aggregator");
+        thread.setDaemon(true);
+        return thread;
+    }));
+
+    private final Map<Object, Pipeline> pipelines = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    WriteAggregator(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public static WriteAggregator getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Sends merged batches over the connection of a member.
+     */
+    @FunctionalInterface
+    public interface BatchSender {
+        /**
+         * @return completes with errors of the rows rejected by the destination keyed by their offset in the batch,
+         * fails if the whole request failed
+         */
+        CompletableFuture<Map<Integer, Throwable>> send(List<?> rows);
+    }
+
+    /**
+     * Joins the pipeline of the destination, creating it with given limits if no other accessor uses it.
+     *
+     * @param destination  key of requests that may be merged
+     * @param maxRows      rows of a merged batch
+     * @param maxBytes     encoded bytes of a merged batch
+     * @param lingerMillis time a partial batch waits for other submitters
+     * @param sender       sends merged batches over the connection of the new member
+     */
+    public Member register(Object destination, int maxRows, long maxBytes, long lingerMillis, BatchSender sender) {
+        Pipeline joined = pipelines.compute(destination, (key, pipeline) -> {
+            Pipeline result = pipeline != null ? pipeline : new Pipeline(key, maxRows, maxBytes, lingerMillis);
+            result.users++;
+            return result;
+        });
+        return new Member(joined, sender);
+    }
+
+    int getPipelines() {
+        return pipelines.size();
+    }
+
+    /**
+     * Registration of an accessor in the pipeline.
+     */
+    public class Member implements AutoCloseable {
+        private final Pipeline pipeline;
+        private final BatchSender sender;
+        // guarded by pipeline
+        private boolean closed;
+
+        private Member(Pipeline pipeline, BatchSender sender) {
+            this.pipeline = pipeline;
+            this.sender = sender;
+        }
+
+        /**
+         * Adds rows to the merged batch.
+         *
+         * @param last sends the merged batch right away, as the submitter is about to wait for its requests
+         * @return completes when the merged request containing the rows ends, fails if the request failed
+         * or any of the rows was rejected
+         */
+        public CompletableFuture<Void> submit(List<?> rows, long rowsBytes, boolean last) {
+            return pipeline.submit(this, rows, rowsBytes, last);
+        }
+
+        /**
+         * Sends the merged batch right away if it contains rows of the member.
+         */
+        public void flush() {
+            pipeline.flush(this);
+        }
+
+        /**
+         * Leaves the pipeline, the last user removes it. A pending batch the member would send is handed off
+         * to another open contributor, or sent and awaited if there is none.
+         */
+        @Override
+        public void close() {
+            pipeline.leave(this);
+        }
+    }
+
+    /**
+     * Rows of the merged batch submitted at once by a member.
+     */
+    private static final class Contribution {
+        private final Member member;
+        private final int offset;
+        private final int count;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Contribution(Member member, int offset, int count) {
+            this.member = member;
+            this.offset = offset;
+            this.count = count;
+        }
+
+        private void complete(Map<Integer, Throwable> errors, Throwable throwable) {
+            if (throwable != null) {
+                future.completeExceptionally(throwable);
+                return;
+            }
+            for (Map.Entry<Integer, Throwable> error : errors.entrySet()) {
+                if (error.getKey() >= offset && error.getKey() < offset + count) {
+                    future.completeExceptionally(error.getValue());
+                    return;
+                }
+            }
+            future.complete(null);
+        }
+    }
+
+    private static final class Batch {
+        private final List<Object> rows = new ArrayList<>();
+        private final List<Contribution> contributions = new ArrayList<>();
+        private long bytes;
+        // open contributor sending the batch
+        private Member sender;
+
+        private Member openContributor() {
+            for (int i = contributions.size() - 1; i >= 0; i--) {
+                Member member = contributions.get(i).member;
+                if (!member.closed) {
+                    return member;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Merged batch of a destination shared by registered members.
+     */
+    private class Pipeline {
+        private final Object destination;
+        private final int maxRows;
+        private final long maxBytes;
+        private final long lingerMillis;
+        // guarded by pipelines map
+        private int users;
+
+        private Batch pending = new Batch();
+
+        private Pipeline(Object destination, int maxRows, long maxBytes, long lingerMillis) {
+            this.destination = destination;
+            this.maxRows = maxRows;
+            this.maxBytes = maxBytes;
+            this.lingerMillis = lingerMillis;
+        }
+
+        private CompletableFuture<Void> submit(Member member, List<?> rows, long rowsBytes, boolean last) {
+            Contribution contribution;
+            Batch ready = null;
+            synchronized (this) {
+                Batch batch = pending;
+                boolean first = batch.rows.isEmpty();
+                contribution = new Contribution(member, batch.rows.size(), rows.size());
+                batch.contributions.add(contribution);
+                batch.rows.addAll(rows);
+                batch.bytes += rowsBytes;
+                batch.sender = member;
+                if (last || batch.rows.size() >= maxRows || batch.bytes >= maxBytes) {
+                    ready = batch;
+                    pending = new Batch();
+                } else if (first) {
+                    scheduler.schedule(() -> sendLingering(batch), lingerMillis, TimeUnit.MILLISECONDS);
+                }
+            }
+            if (ready != null) {
+                send(ready);
+            }
+            return contribution.future;
+        }
+
+        private void flush(Member member) {
+            Batch ready;
+            synchronized (this) {
+                ready = pending;
+                if (ready.contributions.stream().noneMatch(contribution -> contribution.member == member)) {
+                    return;
+                }
+                ready.sender = member;
+                pending = new Batch();
+            }
+            send(ready);
+        }
+
+        private void sendLingering(Batch batch) {
+            synchronized (this) {
+                if (pending != batch) {
+                    // already sent
+                    return;
+                }
+                pending = new Batch();
+            }
+            send(batch);
+        }
+
+        /**
+         * @return completes once every contributor of the batch got its outcome
+         */
+        private CompletableFuture<?> send(Batch batch) {
+            CompletableFuture<Map<Integer, Throwable>> response;
+            try {
+                response = batch.sender.sender.send(Collections.unmodifiableList(batch.rows));
+            } catch (RuntimeException e) {
+                response = new CompletableFuture<>();
+                response.completeExceptionally(e);
+            }
+            return response.whenComplete((errors, throwable) -> {
+                for (Contribution contribution : batch.contributions) {
+                    contribution.complete(errors, throwable);
+                }
+            });
+        }
+
+        private void leave(Member member) {
+            Batch ready = null;
+            synchronized (this) {
+                member.closed = true;
+                if (pending.sender == member) {
+                    Member heir = pending.openContributor();
+                    if (heir != null) {
+                        pending.sender = heir;
+                    } else {
+                        ready = pending;
+                        pending = new Batch();
+                    }
+                }
+            }
+            pipelines.computeIfPresent(destination, (key, pipeline) -> {
+                if (pipeline != this) {
+                    return pipeline;
+                }
+                return --users > 0 ? this : null;
+            });
+            if (ready != null) {
+                // the connection of the member is closed right after, the request must not outlive it
+                send(ready).handle((result, throwable) -> null).join();
+            }
+        }
+    }
+}
@@ -16,55 +16,67 @@
 package ru.datamart.pxf.plugins.tarantool.delete;
 
 import io.tarantool.driver.api.conditions.Conditions;
-import io.tarantool.driver.api.metadata.TarantoolIndexMetadata;
-import io.tarantool.driver.api.metadata.TarantoolIndexPartMetadata;
 import org.greenplum.pxf.api.OneRow;
 import org.greenplum.pxf.api.model.Accessor;
+import org.greenplum.pxf.api.model.RequestContext;
 import org.greenplum.pxf.api.utilities.ColumnDescriptor;
-import ru.datamart.pxf.plugins.tarantool.common.TarantoolAccessorBase;
+import ru.datamart.pxf.plugins.tarantool.common.CrudUtils;
+import ru.datamart.pxf.plugins.tarantool.common.TarantoolWriteAccessorBase;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
-public class TarantoolAccessor extends TarantoolAccessorBase implements Accessor {
+public class TarantoolAccessor extends TarantoolWriteAccessorBase implements Accessor {
     private static final int TARANTOOL_PRIMARY_INDEX = 0; // default in tarantool
 
+    @Override
+    public void initialize(RequestContext requestContext) {
+        super.initialize(requestContext);
+        // released crud versions have no batch delete, so the function is provided by the cluster
+        if (batchSize > 1 && !storageRouting && batchDeleteFunction == null) {
+            throw new IllegalArgumentException("BATCH_DELETE_FUNCTION must be set with BATCH_SIZE greater than 1");
+        }
+    }
+
     @Override
     public boolean openForWrite() throws Exception {
         try {
             super.openForWrite();
 
-            Optional<TarantoolIndexMetadata> primaryIndexOptional = connection.getClient().metadata().getIndexById(spaceName, TARANTOOL_PRIMARY_INDEX);
-            if (!primaryIndexOptional.isPresent()) {
-                throw new IllegalArgumentException(String.format("Space: %s has no primary index", spaceName));
-            }
+            List<String> primaryKey = spacePrimaryKey();
+            validateColumns("delete", () -> {
+                if (primaryKey.size() != context.getColumns()) {
+                    String externalTableColumns = IntStream.range(0, context.getColumns())
+                            .mapToObj(i -> context.getColumn(i).columnName())
+                            .collect(Collectors.joining(",", "[", "]"));
+                    String tarantoolIndex = primaryKey.stream()
+                            .collect(Collectors.joining(",", "[", "]"));
 
-            TarantoolIndexMetadata primaryIndex = primaryIndexOptional.get();
-            List<TarantoolIndexPartMetadata> indexParts = primaryIndex.getIndexParts();
-
-            if (indexParts.size() != context.getColumns()) {
-                String externalTableColumns = IntStream.range(0, context.getColumns())
-                        .mapToObj(i -> context.getColumn(i).columnName())
-                        .collect(Collectors.joining(",", "[", "]"));
-                String tarantoolIndex = indexParts.stream()
-                        .map(TarantoolIndexPartMetadata::getPath)
-                        .collect(Collectors.joining(",", "[", "]"));
-
-                throw new IllegalArgumentException(String.format("Columns don't match tarantool primary key columns: %s, got: %s",
-                        tarantoolIndex, externalTableColumns));
-            }
+                    throw new IllegalArgumentException(String.format("Columns don't match tarantool primary key columns: %s, got: %s",
+                            tarantoolIndex, externalTableColumns));
+                }
 
-            for (int i = 0; i < context.getColumns(); i++) {
-                ColumnDescriptor externalTableColumn = context.getColumn(i);
-                TarantoolIndexPartMetadata indexColumn = indexParts.get(i);
-                if (!externalTableColumn.columnName().equals(indexColumn.getPath())) {
-                    throw new IllegalArgumentException(String.format("Column %d (%s) not equal to tarantool primary index column with order, expected: %s",
-                            i, externalTableColumn.columnName(), indexColumn.getPath()));
+                for (int i = 0; i < context.getColumns(); i++) {
+                    ColumnDescriptor externalTableColumn = context.getColumn(i);
+                    String indexColumn = primaryKey.get(i);
+                    if (!externalTableColumn.columnName().equals(indexColumn)) {
+                        throw new IllegalArgumentException(String.format("Column %d (%s) not equal to tarantool primary index column with order, expected: %s",
+                                i, externalTableColumn.columnName(), indexColumn));
+                    }
                 }
+            });
+            // crud reports the keys of rejected rows
+            batchKeyPositions = IntStream.range(0, primaryKey.size()).toArray();
+
+            if (storageRouter != null) {
+                resolveShardingKey(primaryKey, primaryKey);
             }
 
+            logSetup();
             return true;
         } catch (Throwable e) {
             //pxf will not call closeForWrite if openForWrite not succeeded
@@ -77,27 +89,38 @@ public class TarantoolAccessor extends TarantoolAccessorBase implements Accessor
 
     @Override
     public boolean writeNextObject(OneRow oneRow) throws Exception {
-        waitUntilBufferFreed();
-        totalTasks.incrementAndGet();
-        activeTasks.incrementAndGet();
-
         List<?> fields = (List<?>) oneRow.getData();
-        Conditions condition = Conditions.indexEquals(TARANTOOL_PRIMARY_INDEX, fields);
-        spaceOperations.delete(condition)
-                .whenComplete((tarantoolTuples, throwable) -> {
-                    if (throwable != null) {
-                        LOG.error("Task ended up with exception", throwable);
-                        firstException.compareAndSet(null, throwable);
-                        errorCount.incrementAndGet();
-                    }
-                    activeTasks.decrementAndGet();
-                    notifyIfBufferFreed();
-                });
-
-        if (errorCount.get() > 0) {
-            throw new IllegalStateException("Some of the tasks completed exceptionally", firstException.get());
+        if (storageRouter != null) {
+            int bucketId = bucketId(fields);
+            Object encoded = encode(fields);
+            long bytes = encodedSize(encoded);
+            submitTask(bytes, () -> storageRouter.call(bucketId, "box.space." + spaceName + ":delete",
+                    Collections.singletonList(encoded)));
+        } else if (batchSize > 1) {
+            addToBatch(encode(fields));
+        } else if (noReturn || tupleEncoder != null) {
+            Object encoded = encode(fields);
+            long bytes = encodedSize(encoded);
+            List<?> args = noReturn
+                    ? Arrays.asList(spaceName, encoded, CrudUtils.NO_RETURN_OPTIONS)
+                    : Arrays.asList(spaceName, encoded);
+            submitTask(bytes, () -> connection.callEncoded(CrudUtils.DELETE, args)
+                    .thenApply(CrudUtils::checkErrors));
+        } else {
+            Conditions condition = Conditions.indexEquals(TARANTOOL_PRIMARY_INDEX, fields);
+            long bytes = encodedSize(fields);
+            submitTask(bytes, () -> spaceOperations().delete(condition));
         }
 
+        checkTasksFailed();
         return true;
     }
+
+    @Override
+    protected CompletableFuture<List<?>> sendBatch(List<?> keys) {
+        List<?> args = noReturn
+                ? Arrays.asList(spaceName, keys, CrudUtils.NO_RETURN_OPTIONS)
+                : Arrays.asList(spaceName, keys);
+        return connection.callEncoded(batchDeleteFunction, args);
+    }
 }
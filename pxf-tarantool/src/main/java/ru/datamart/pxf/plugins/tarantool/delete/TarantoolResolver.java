@@ -15,16 +15,24 @@
  */
 package ru.datamart.pxf.plugins.tarantool.delete;
 
-import ru.datamart.pxf.plugins.tarantool.common.DataUtils;
 import org.greenplum.pxf.api.OneField;
 import org.greenplum.pxf.api.OneRow;
 import org.greenplum.pxf.api.model.BasePlugin;
+import org.greenplum.pxf.api.model.RequestContext;
 import org.greenplum.pxf.api.model.Resolver;
+import ru.datamart.pxf.plugins.tarantool.common.RowConverter;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class TarantoolResolver extends BasePlugin implements Resolver {
+    private RowConverter rowConverter;
+
+    @Override
+    public void initialize(RequestContext requestContext) {
+        super.initialize(requestContext);
+        rowConverter = RowConverter.forColumns(requestContext.getTupleDescription());
+    }
+
     @Override
     public List<OneField> getFields(OneRow oneRow) throws Exception {
         throw new UnsupportedOperationException();
@@ -32,9 +40,6 @@ public class TarantoolResolver extends BasePlugin implements Resolver {
 
     @Override
     public OneRow setFields(List<OneField> list) throws Exception {
-        List<?> fields = list.stream()
-                .map(oneField -> DataUtils.mapAndValidate(oneField.type, oneField.val))
-                .collect(Collectors.toList());
-        return new OneRow(fields);
+        return new OneRow(rowConverter.convert(list));
     }
 }
@@ -20,12 +20,26 @@ import io.tarantool.driver.api.tuple.TarantoolTuple;
 import io.tarantool.driver.exceptions.TarantoolClientException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.datamart.pxf.plugins.tarantool.client.RouterStatistics;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 public class DiscoveryClusterAddressProvider implements TarantoolClusterAddressProvider {
     private static final Logger LOGGER = LoggerFactory.getLogger(DiscoveryClusterAddressProvider.class);
@@ -56,45 +70,198 @@ public class DiscoveryClusterAddressProvider implements TarantoolClusterAddressP
             "end\n" +
             "\n" +
             "return routers";
+    private static final String UNDEFINED_FUNCTION = "is not defined";
+    private static final ExecutorService SEED_EXECUTOR = Executors.newCachedThreadPool(daemonThreads("tarantool-discovery"));
+    private static final ScheduledExecutorService REFRESHER = Executors.newSingleThreadScheduledExecutor(daemonThreads("tarantool-discovery-refresh"));
     private final TarantoolClientConfig config;
-    private final TarantoolServerAddress routerAddress;
+    private final List<TarantoolServerAddress> seeds;
     private final DiscoveryClientProvider clientProvider;
+    private final String discoveryFunction;
+    private final TopologyCache topologyCache;
+    private final long ttlMillis;
+    private final long refreshIntervalMillis;
+    private final RouterStatistics routerStatistics;
+    private final AtomicReference<List<TarantoolServerAddress>> prefetched = new AtomicReference<>();
+    private volatile Set<String> lastAddresses = Collections.emptySet();
+    private volatile ScheduledFuture<?> refreshTask;
 
     public DiscoveryClusterAddressProvider(TarantoolClientConfig config, TarantoolServerAddress routerAddress, DiscoveryClientProvider clientProvider) {
+        this(config, Collections.singletonList(routerAddress), clientProvider, null, null, 0, 0, RouterStatistics.getInstance());
+    }
+
+    /**
+     * @param seeds                 routers asked in parallel, the first good answer wins
+     * @param discoveryFunction     function registered on the routers returning the same map as the discovery script,
+     *                              {@code null} to send the script with eval
+     * @param topologyCache         cache shared between providers, {@code null} to discover on every call
+     * @param refreshIntervalMillis how often a client using the provider checks the topology for added or removed
+     *                              routers, 0 to never check
+     * @param routerStatistics      receives the status and priority of discovered routers
+     */
+    public DiscoveryClusterAddressProvider(TarantoolClientConfig config, List<TarantoolServerAddress> seeds, DiscoveryClientProvider clientProvider,
+                                           String discoveryFunction, TopologyCache topologyCache, long ttlMillis,
+                                           long refreshIntervalMillis, RouterStatistics routerStatistics) {
+        if (seeds.isEmpty()) {
+            throw new IllegalArgumentException("At least one seed router must be set");
+        }
         this.config = config;
-        this.routerAddress = routerAddress;
+        this.seeds = seeds;
         this.clientProvider = clientProvider;
+        this.discoveryFunction = discoveryFunction;
+        this.topologyCache = topologyCache;
+        this.ttlMillis = ttlMillis;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.routerStatistics = routerStatistics;
+    }
+
+    @Override
+    public Collection<TarantoolServerAddress> getAddresses() {
+        List<TarantoolServerAddress> addresses = prefetched.getAndSet(null);
+        if (addresses != null) {
+            return addresses;
+        }
+        if (topologyCache == null) {
+            addresses = discover();
+        } else {
+            addresses = topologyCache.get(TopologyCache.key(config.getCredentials(), seeds), ttlMillis, this::discover);
+        }
+        lastAddresses = keys(addresses);
+        return addresses;
+    }
+
+    /**
+     * Discovers the routers before the client is created, the next call of {@link #getAddresses()} returns them
+     * without discovering again.
+     *
+     * @return routers of the cluster
+     */
+    public Collection<TarantoolServerAddress> prefetch() {
+        List<TarantoolServerAddress> addresses = new ArrayList<>(getAddresses());
+        prefetched.set(addresses);
+        return addresses;
     }
 
+    /**
+     * Called by the client with the action reconnecting it to the routers currently returned by {@link #getAddresses()}.
+     */
     @Override
-    public synchronized Collection<TarantoolServerAddress> getAddresses() {
+    public void setRefreshCallback(Runnable callback) {
+        if (refreshIntervalMillis <= 0) {
+            return;
+        }
+        ScheduledFuture<?> previous = refreshTask;
+        if (previous != null) {
+            previous.cancel(false);
+        }
+        refreshTask = REFRESHER.scheduleWithFixedDelay(() -> refresh(callback),
+                refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void refresh(Runnable callback) {
+        try {
+            Set<String> previous = lastAddresses;
+            Set<String> current = keys(getAddresses());
+            if (!current.equals(previous)) {
+                LOGGER.info("Tarantool routers changed from {} to {}, reconnecting", previous, current);
+                callback.run();
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Could not refresh tarantool routers, keeping {}", lastAddresses, e);
+        }
+    }
+
+    private List<TarantoolServerAddress> discover() {
+        if (seeds.size() == 1) {
+            return discover(seeds.get(0));
+        }
+
+        CompletableFuture<List<TarantoolServerAddress>> firstAnswer = new CompletableFuture<>();
+        AtomicInteger failed = new AtomicInteger();
+        for (TarantoolServerAddress seed : seeds) {
+            CompletableFuture.supplyAsync(() -> discover(seed), SEED_EXECUTOR).whenComplete((addresses, error) -> {
+                if (error == null) {
+                    firstAnswer.complete(addresses);
+                } else if (failed.incrementAndGet() == seeds.size()) {
+                    firstAnswer.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+                }
+            });
+        }
+        try {
+            return firstAnswer.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TarantoolClientException("Interrupted during discovery", e);
+        } catch (ExecutionException e) {
+            throw new TarantoolClientException("All seed routers " + seeds + " failed discovery", e.getCause());
+        }
+    }
+
+    private List<TarantoolServerAddress> discover(TarantoolServerAddress routerAddress) {
         List<TarantoolServerAddress> tarantoolServerAddresses = new ArrayList<>();
         try (TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>> client = clientProvider.provide(config, routerAddress)) {
-            List<?> result;
-            CompletableFuture<List<?>> resultFuture = client.eval(DISCOVERY_COMMAND);
-            result = resultFuture.get();
+            List<?> result = fetch(client, routerAddress);
             if (result.size() != 1) {
                 throw new TarantoolClientException("Incorrect result of discovery call, expected: 1, got: " + result.size());
             }
-            Map<String, Map<String, String>> foundServices = (Map<String, Map<String, String>>) result.get(0);
+            Map<String, Map<String, ?>> foundServices = (Map<String, Map<String, ?>>) result.get(0);
             if (foundServices.isEmpty()) {
                 throw new TarantoolClientException("Could not discover servers. Result is empty.");
             }
-            for (Map<String, String> value : foundServices.values()) {
-                String uri = value.get("uri");
-                tarantoolServerAddresses.add(new TarantoolServerAddress(uri));
+            for (Map<String, ?> value : foundServices.values()) {
+                String uri = (String) value.get("uri");
+                TarantoolServerAddress address = new TarantoolServerAddress(uri);
+                tarantoolServerAddresses.add(address);
+                Object status = value.get("status");
+                Object priority = value.get("priority");
+                routerStatistics.update(RouterStatistics.key(address.getHost(), address.getPort()),
+                        status != null ? status.toString() : null,
+                        priority instanceof Number ? ((Number) priority).intValue() : null);
             }
         } catch (Exception e) {
             LOGGER.error("Exception during discovery", e);
             throw new TarantoolClientException("Exception during discovery", e);
         }
 
-        LOGGER.info("Successfully retrieved tarantool servers: {}", tarantoolServerAddresses);
+        LOGGER.info("Successfully retrieved tarantool servers from {}: {}", routerAddress, tarantoolServerAddresses);
         return tarantoolServerAddresses;
     }
 
+    private List<?> fetch(TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>> client,
+                          TarantoolServerAddress routerAddress) throws Exception {
+        if (discoveryFunction == null) {
+            return client.eval(DISCOVERY_COMMAND).get();
+        }
+        try {
+            return client.call(discoveryFunction).get();
+        } catch (ExecutionException e) {
+            String message = String.valueOf(e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            if (!message.contains(UNDEFINED_FUNCTION)) {
+                throw e;
+            }
+            LOGGER.warn("Discovery function {} is not registered on {}, falling back to eval", discoveryFunction, routerAddress);
+            return client.eval(DISCOVERY_COMMAND).get();
+        }
+    }
+
     @Override
     public void close() {
-        // no op
+        ScheduledFuture<?> task = refreshTask;
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    private static Set<String> keys(Collection<TarantoolServerAddress> addresses) {
+        return addresses.stream()
+                .map(address -> address.getHost() + ":" + address.getPort())
+                .collect(Collectors.toSet());
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 }
@@ -0,0 +1,101 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.discovery;
+
+import io.tarantool.driver.api.TarantoolClusterAddressProvider;
+import io.tarantool.driver.api.TarantoolServerAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.datamart.pxf.plugins.tarantool.client.RouterStatistics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Narrows discovered routers to a stable subset per segment, so segments do not all connect to every router.
+ * <p>
+ * Routers are ordered by address and segment {@code i} takes {@code routersPerSegment} of them starting at
+ * {@code i mod routers}. An assigned router that discovery reports unhealthy or that is ejected after failed
+ * requests, as known to {@link RouterStatistics}, is replaced by the next available one in that order. No router
+ * is probed here: when none is available all routers are returned and the driver reconnects on its own.
+ */
+public class SegmentAddressProvider implements TarantoolClusterAddressProvider {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SegmentAddressProvider.class);
+    private static final Comparator<TarantoolServerAddress> ADDRESS_ORDER = Comparator
+            .comparing(TarantoolServerAddress::getHost)
+            .thenComparingInt(TarantoolServerAddress::getPort);
+
+    private final TarantoolClusterAddressProvider delegate;
+    private final int segmentId;
+    private final int routersPerSegment;
+    private final Predicate<TarantoolServerAddress> healthCheck;
+
+    public SegmentAddressProvider(TarantoolClusterAddressProvider delegate, int segmentId, int routersPerSegment,
+                                  RouterStatistics statistics) {
+        this(delegate, segmentId, routersPerSegment,
+                address -> statistics.isAvailable(RouterStatistics.key(address.getHost(), address.getPort())));
+    }
+
+    SegmentAddressProvider(TarantoolClusterAddressProvider delegate, int segmentId, int routersPerSegment,
+                           Predicate<TarantoolServerAddress> healthCheck) {
+        this.delegate = delegate;
+        this.segmentId = segmentId;
+        this.routersPerSegment = routersPerSegment;
+        this.healthCheck = healthCheck;
+    }
+
+    @Override
+    public Collection<TarantoolServerAddress> getAddresses() {
+        List<TarantoolServerAddress> routers = delegate.getAddresses().stream()
+                .sorted(ADDRESS_ORDER)
+                .collect(Collectors.toList());
+        if (routers.size() <= routersPerSegment) {
+            return routers;
+        }
+
+        int start = Math.floorMod(segmentId, routers.size());
+        List<TarantoolServerAddress> assigned = new ArrayList<>(routersPerSegment);
+        for (int i = 0; i < routers.size() && assigned.size() < routersPerSegment; i++) {
+            TarantoolServerAddress router = routers.get((start + i) % routers.size());
+            if (healthCheck.test(router)) {
+                assigned.add(router);
+            } else {
+                LOGGER.warn("Router {} of segment {} is not available, trying the next one", router, segmentId);
+            }
+        }
+        if (assigned.isEmpty()) {
+            LOGGER.warn("No router of segment {} is available, using all of them: {}", segmentId, routers);
+            return routers;
+        }
+
+        LOGGER.info("Segment {} uses routers {} of {}", segmentId, assigned, routers.size());
+        return assigned;
+    }
+
+    @Override
+    public void setRefreshCallback(Runnable callback) {
+        delegate.setRefreshCallback(callback);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
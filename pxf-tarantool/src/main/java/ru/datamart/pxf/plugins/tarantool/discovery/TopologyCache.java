@@ -0,0 +1,218 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.discovery;
+
+import io.tarantool.driver.api.TarantoolServerAddress;
+import io.tarantool.driver.auth.SimpleTarantoolCredentials;
+import io.tarantool.driver.auth.TarantoolCredentials;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps discovered router addresses JVM-wide so segments and queries do not repeat the discovery call.
+ * <p>
+ * A topology older than its TTL is still returned while a fresh one is loaded in the background. Only the
+ * very first lookup of a cluster waits for discovery, and even that is skipped when a topology persisted by
+ * a previous run is found in the store directory.
+ * <p>
+ * The store directory is a setting of the PXF server, the JVM system property {@value #STORE_PROPERTY}, so
+ * external table options can not make PXF write files to arbitrary paths.
+ */
+public class TopologyCache {
+    public static final String STORE_PROPERTY = "tarantool.cartridge.discovery.store";
+    private static final Logger LOGGER = LoggerFactory.getLogger(TopologyCache.class);
+    private static final TopologyCache INSTANCE = new TopologyCache(Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "tarantool-topology-refresh");
+        thread.setDaemon(true);
+        return thread;
+    }), System::currentTimeMillis, storeDirectory());
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Executor refresher;
+    private final LongSupplier clock;
+    private final Path store;
+
+    /**
+     * @param store directory the topologies are persisted to, {@code null} to keep them in memory only
+     */
+    TopologyCache(Executor refresher, LongSupplier clock, Path store) {
+        this.refresher = refresher;
+        this.clock = clock;
+        this.store = store;
+    }
+
+    public static TopologyCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return key of the topology seen by the user through given seed routers, holds a hash of the password only
+     */
+    public static String key(TarantoolCredentials credentials, List<TarantoolServerAddress> seeds) {
+        String password = credentials instanceof SimpleTarantoolCredentials
+                ? ((SimpleTarantoolCredentials) credentials).getPassword()
+                : null;
+        return credentials.getUsername() + ":" + sha256(String.valueOf(password)) + "@" + seeds.stream()
+                .map(seed -> seed.getHost() + ":" + seed.getPort())
+                .collect(Collectors.joining(","));
+    }
+
+    /**
+     * Returns the topology of the cluster, loading it with {@code loader} when it is unknown or expired.
+     */
+    public List<TarantoolServerAddress> get(String key, long ttlMillis, Supplier<List<TarantoolServerAddress>> loader) {
+        Entry entry = entries.computeIfAbsent(key, k -> new Entry(k, readStored(k)));
+        Topology topology = entry.topology;
+        if (topology == null) {
+            synchronized (entry) {
+                // concurrent first lookups share one discovery call
+                if (entry.topology == null) {
+                    update(entry, loader.get());
+                }
+                return entry.topology.addresses;
+            }
+        }
+        if (clock.getAsLong() - topology.loadedAt >= ttlMillis && entry.refreshing.compareAndSet(false, true)) {
+            refresher.execute(() -> refresh(entry, loader));
+        }
+        return topology.addresses;
+    }
+
+    public void invalidate(String key) {
+        entries.remove(key);
+    }
+
+    private void refresh(Entry entry, Supplier<List<TarantoolServerAddress>> loader) {
+        try {
+            update(entry, loader.get());
+        } catch (Exception e) {
+            LOGGER.warn("Could not refresh topology of {}, keeping the previous one", entry.key, e);
+        } finally {
+            entry.refreshing.set(false);
+        }
+    }
+
+    private void update(Entry entry, List<TarantoolServerAddress> addresses) {
+        entry.topology = new Topology(Collections.unmodifiableList(new ArrayList<>(addresses)), clock.getAsLong());
+        if (store != null) {
+            write(entry.key, addresses);
+        }
+    }
+
+    private Topology readStored(String key) {
+        if (store == null) {
+            return null;
+        }
+        Path file = store.resolve(fileName(key));
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try {
+            List<TarantoolServerAddress> addresses = Files.readAllLines(file, StandardCharsets.UTF_8).stream()
+                    .filter(line -> !line.trim().isEmpty())
+                    .map(line -> new TarantoolServerAddress(line.trim()))
+                    .collect(Collectors.toList());
+            if (addresses.isEmpty()) {
+                return null;
+            }
+            LOGGER.info("Loaded stored topology of {}: {}", key, addresses);
+            // expired right away, so the first lookup triggers a refresh
+            return new Topology(Collections.unmodifiableList(addresses), Long.MIN_VALUE / 2);
+        } catch (Exception e) {
+            LOGGER.warn("Could not read stored topology of {} from {}", key, file, e);
+            return null;
+        }
+    }
+
+    private void write(String key, List<TarantoolServerAddress> addresses) {
+        Path file = store.resolve(fileName(key));
+        try {
+            Files.createDirectories(store);
+            Path temp = Files.createTempFile(store, fileName(key), ".tmp");
+            List<String> lines = addresses.stream()
+                    .map(address -> address.getHost() + ":" + address.getPort())
+                    .collect(Collectors.toList());
+            Files.write(temp, lines, StandardCharsets.UTF_8);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn("Could not store topology of {} to {}", key, file, e);
+        }
+    }
+
+    static String fileName(String key) {
+        // keys hold user names and password hashes, they are not written to the file system
+        return "topology-" + sha256(key);
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Path storeDirectory() {
+        String store = System.getProperty(STORE_PROPERTY);
+        return store != null && !store.trim().isEmpty() ? Paths.get(store.trim()) : null;
+    }
+
+    private static class Topology {
+        private final List<TarantoolServerAddress> addresses;
+        private final long loadedAt;
+
+        private Topology(List<TarantoolServerAddress> addresses, long loadedAt) {
+            this.addresses = addresses;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private static class Entry {
+        private final String key;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile Topology topology;
+
+        private Entry(String key, Topology topology) {
+            this.key = key;
+            this.topology = topology;
+        }
+    }
+}
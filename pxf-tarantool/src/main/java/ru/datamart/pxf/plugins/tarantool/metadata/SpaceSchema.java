@@ -0,0 +1,66 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.metadata;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Format and primary key of one space as of a schema version.
+ */
+public final class SpaceSchema {
+    private final long version;
+    private final List<String> fieldNames;
+    private final List<String> primaryKey;
+    private final Set<List<String>> validatedColumns = ConcurrentHashMap.newKeySet();
+
+    public SpaceSchema(long version, List<String> fieldNames, List<String> primaryKey) {
+        this.version = version;
+        this.fieldNames = Collections.unmodifiableList(fieldNames);
+        this.primaryKey = Collections.unmodifiableList(primaryKey);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return field names ordered by position
+     */
+    public List<String> getFieldNames() {
+        return fieldNames;
+    }
+
+    /**
+     * @return names of the primary index parts, empty when the space has no primary index
+     */
+    public List<String> getPrimaryKey() {
+        return primaryKey;
+    }
+
+    /**
+     * @param columns validation kind followed by the external table column names
+     */
+    public boolean isValidated(List<String> columns) {
+        return validatedColumns.contains(columns);
+    }
+
+    public void markValidated(List<String> columns) {
+        validatedColumns.add(columns);
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.metadata;
+
+import io.tarantool.driver.api.TarantoolClient;
+import io.tarantool.driver.api.TarantoolResult;
+import io.tarantool.driver.api.tuple.TarantoolTuple;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the schema of written spaces JVM-wide.
+ * <p>
+ * Routers hold no data spaces, so the schema is read from the clusterwide DDL schema of cartridge, or from
+ * {@code ddl.get_schema()} outside of cartridge, and versioned by a hash of its text. Every lookup is one eval that
+ * sends the known version: the router answers with the version alone when it did not change, otherwise with the
+ * format and primary key of the requested space only.
+ */
+public class SpaceSchemaCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpaceSchemaCache.class);
+    private static final SpaceSchemaCache INSTANCE = new SpaceSchemaCache();
+    private static final String SCHEMA_COMMAND = "local name, known = ...\n" +
+            "local yaml = require('yaml')\n" +
+            "local text\n" +
+            "local ok, cartridge = pcall(require, 'cartridge')\n" +
+            "if ok and cartridge.get_schema ~= nil then\n" +
+            "    text = cartridge.get_schema() or ''\n" +
+            "else\n" +
+            "    text = yaml.encode(require('ddl').get_schema())\n" +
+            "end\n" +
+            "local version = require('digest').murmur(text)\n" +
+            "if version == known then\n" +
+            "    return version\n" +
+            "end\n" +
+            "local schema = yaml.decode(text) or {}\n" +
+            "local space = (schema.spaces or {})[name]\n" +
+            "if space == nil then\n" +
+            "    return version, box.NULL\n" +
+            "end\n" +
+            "local fields = {}\n" +
+            "for i, field in ipairs(space.format or {}) do\n" +
+            "    fields[i] = field.name\n" +
+            "end\n" +
+            "local key = {}\n" +
+            "local primary = (space.indexes or {})[1]\n" +
+            "if primary ~= nil then\n" +
+            "    for i, part in ipairs(primary.parts) do\n" +
+            "        key[i] = part.path\n" +
+            "    end\n" +
+            "end\n" +
+            "return version, fields, key";
+
+    private final Map<String, SpaceSchema> schemas = new ConcurrentHashMap<>();
+
+    SpaceSchemaCache() {
+    }
+
+    public static SpaceSchemaCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param cluster identifies the cluster the client is connected to
+     */
+    public SpaceSchema get(String cluster, String spaceName,
+                           TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>> client) throws Exception {
+        try {
+            return getAsync(cluster, spaceName, client).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public CompletableFuture<SpaceSchema> getAsync(String cluster, String spaceName,
+                                                   TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>> client) {
+        String key = cluster + "/" + spaceName;
+        SpaceSchema cached = schemas.get(key);
+        return client.eval(SCHEMA_COMMAND, Arrays.asList(spaceName, cached != null ? cached.getVersion() : null))
+                .thenApply(result -> {
+                    long version = ((Number) result.get(0)).longValue();
+                    if (cached != null && result.size() == 1) {
+                        return cached;
+                    }
+                    if (result.size() < 2 || result.get(1) == null) {
+                        schemas.remove(key);
+                        throw new IllegalArgumentException(String.format("Space: %s not found", spaceName));
+                    }
+                    SpaceSchema schema = new SpaceSchema(version, names(result.get(1)),
+                            result.size() > 2 ? names(result.get(2)) : Collections.emptyList());
+                    schemas.put(key, schema);
+                    LOGGER.info("Loaded schema of {} at version {}: fields {}, primary key {}",
+                            key, version, schema.getFieldNames(), schema.getPrimaryKey());
+                    return schema;
+                });
+    }
+
+    public void invalidate(String cluster, String spaceName) {
+        schemas.remove(cluster + "/" + spaceName);
+    }
+
+    private static List<String> names(Object value) {
+        // lua encodes an empty table as a map
+        if (!(value instanceof List)) {
+            return Collections.emptyList();
+        }
+        return ((List<?>) value).stream()
+                .map(String::valueOf)
+                .collect(Collectors.toList());
+    }
+}
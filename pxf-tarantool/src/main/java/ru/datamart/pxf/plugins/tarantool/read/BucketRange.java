@@ -0,0 +1,171 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.read;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntFunction;
+
+/**
+ * Contiguous range of vshard buckets owned by one replicaset, the slice of the space read by a fragment.
+ */
+final class BucketRange {
+    // buckets the router could not route are read as a replicaset of their own
+    private static final String UNKNOWN_REPLICASET = "";
+
+    private final int from;
+    private final int to;
+    private final String replicaset;
+
+    BucketRange(int from, int to, String replicaset) {
+        this.from = from;
+        this.to = to;
+        this.replicaset = replicaset;
+    }
+
+    int getFrom() {
+        return from;
+    }
+
+    int getTo() {
+        return to;
+    }
+
+    String getReplicaset() {
+        return replicaset;
+    }
+
+    /**
+     * @return whether all buckets of the range were owned by one known replicaset when it was split
+     */
+    boolean isOwned() {
+        return !UNKNOWN_REPLICASET.equals(replicaset);
+    }
+
+    byte[] toBytes() {
+        return (from + ":" + to + ":" + replicaset).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes are not a range written by {@link #toBytes()}
+     */
+    static BucketRange parse(byte[] bytes) {
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        String[] parts = value.split(":", 3);
+        try {
+            return new BucketRange(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), parts.length > 2 ? parts[2] : UNKNOWN_REPLICASET);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Incorrect bucket range of fragment: " + value, e);
+        }
+    }
+
+    /**
+     * Splits buckets into ranges owned by a single replicaset, each replicaset gets a share of about
+     * {@code fragments} ranges proportional to its buckets. Ranges are ordered so that every next one belongs to
+     * the replicaset with the smallest part of its ranges already taken, which spreads consecutive fragments,
+     * and so concurrently read ones, over all replicasets.
+     *
+     * @param owner replicaset uuid of a bucket, null if unknown
+     */
+    static List<BucketRange> split(int bucketCount, IntFunction<String> owner, int fragments) {
+        if (bucketCount < 1) {
+            return new ArrayList<>();
+        }
+        Map<String, List<int[]>> runs = new LinkedHashMap<>();
+        Map<String, Integer> buckets = new LinkedHashMap<>();
+        int start = 1;
+        String current = replicaset(owner, 1);
+        for (int bucketId = 2; bucketId <= bucketCount + 1; bucketId++) {
+            String next = bucketId <= bucketCount ? replicaset(owner, bucketId) : null;
+            if (bucketId > bucketCount || !next.equals(current)) {
+                runs.computeIfAbsent(current, key -> new ArrayList<>()).add(new int[]{start, bucketId - 1});
+                buckets.merge(current, bucketId - start, Integer::sum);
+                start = bucketId;
+                current = next;
+            }
+        }
+
+        Map<String, Deque<BucketRange>> queues = new LinkedHashMap<>();
+        for (Map.Entry<String, List<int[]>> entry : runs.entrySet()) {
+            int count = buckets.get(entry.getKey());
+            int share = (int) Math.max(1L, ((long) fragments * count + bucketCount - 1) / bucketCount);
+            int chunk = (count + share - 1) / share;
+            Deque<BucketRange> queue = new ArrayDeque<>();
+            for (int[] run : entry.getValue()) {
+                for (int from = run[0]; from <= run[1]; from += chunk) {
+                    queue.add(new BucketRange(from, Math.min(run[1], from + chunk - 1), entry.getKey()));
+                }
+            }
+            queues.put(entry.getKey(), queue);
+        }
+
+        Map<String, Integer> totals = new LinkedHashMap<>();
+        queues.forEach((replicaset, queue) -> totals.put(replicaset, queue.size()));
+        Map<String, Integer> taken = new LinkedHashMap<>();
+        List<BucketRange> ranges = new ArrayList<>();
+        int remaining = totals.values().stream().mapToInt(Integer::intValue).sum();
+        while (remaining-- > 0) {
+            String least = null;
+            double leastPart = Double.MAX_VALUE;
+            for (Map.Entry<String, Deque<BucketRange>> entry : queues.entrySet()) {
+                if (entry.getValue().isEmpty()) {
+                    continue;
+                }
+                double part = (double) taken.getOrDefault(entry.getKey(), 0) / totals.get(entry.getKey());
+                if (part < leastPart) {
+                    least = entry.getKey();
+                    leastPart = part;
+                }
+            }
+            ranges.add(queues.get(least).poll());
+            taken.merge(least, 1, Integer::sum);
+        }
+        return ranges;
+    }
+
+    private static String replicaset(IntFunction<String> owner, int bucketId) {
+        String replicaset = owner.apply(bucketId);
+        return replicaset != null ? replicaset : UNKNOWN_REPLICASET;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        BucketRange that = (BucketRange) o;
+        return from == that.from && to == that.to && replicaset.equals(that.replicaset);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(from, to, replicaset);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + from + ", " + to + "]@" + replicaset;
+    }
+}
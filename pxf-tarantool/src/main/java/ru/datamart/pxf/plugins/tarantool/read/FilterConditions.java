@@ -0,0 +1,292 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.read;
+
+import org.greenplum.pxf.api.filter.ColumnIndexOperandNode;
+import org.greenplum.pxf.api.filter.FilterParser;
+import org.greenplum.pxf.api.filter.Node;
+import org.greenplum.pxf.api.filter.Operator;
+import org.greenplum.pxf.api.filter.OperatorNode;
+import org.greenplum.pxf.api.filter.ScalarOperandNode;
+import org.greenplum.pxf.api.filter.SupportedOperatorPruner;
+import org.greenplum.pxf.api.filter.TreeTraverser;
+import org.greenplum.pxf.api.io.DataType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Translates the Greenplum filter of a scan into {@code crud.select} conditions. Only conjunctions of comparisons
+ * and IS NULL checks are pushed down, the other parts of the filter are pruned: Greenplum re-checks every returned
+ * row, so conditions may select more rows than the filter but never less.
+ */
+final class FilterConditions {
+    private static final EnumSet<Operator> SUPPORTED_OPERATORS = EnumSet.of(
+            Operator.EQUALS,
+            Operator.LESS_THAN,
+            Operator.GREATER_THAN,
+            Operator.LESS_THAN_OR_EQUAL,
+            Operator.GREATER_THAN_OR_EQUAL,
+            Operator.IS_NULL,
+            Operator.AND);
+    private static final String EQUALS = "==";
+    private static final String UNSIGNED = "unsigned";
+
+    private FilterConditions() {
+    }
+
+    /**
+     * @param columnNames names of the external table columns by index
+     * @return conditions every row matching the filter satisfies, empty if nothing can be pushed down
+     */
+    static List<Condition> parse(String filter, IntFunction<String> columnNames) throws Exception {
+        List<Condition> conditions = new ArrayList<>();
+        Node root = new TreeTraverser().traverse(new FilterParser().parse(filter), new SupportedOperatorPruner(SUPPORTED_OPERATORS));
+        collect(root, columnNames, conditions);
+        return conditions;
+    }
+
+    /**
+     * Orders conditions so that the first one is the scan condition of the index matching them best: a unique
+     * index with all parts compared for equality, then an index with the longest prefix of equalities, then an index
+     * with a range over its first part. Equalities on the index prefix are merged into a single condition over
+     * the index, {@code crud.select} uses the first indexed condition as the iterator and the rest as filters.
+     * Negative constants compared with unsigned index parts are dropped, Tarantool rejects them as keys.
+     *
+     * @param indexes indexes of the space ordered by id
+     */
+    static List<List<Object>> plan(List<Condition> conditions, List<Index> indexes) {
+        Set<String> unsignedParts = new HashSet<>();
+        indexes.forEach(index -> unsignedParts.addAll(index.unsignedParts));
+        conditions = conditions.stream()
+                .filter(condition -> !(unsignedParts.contains(condition.field) && isNegative(condition.value)))
+                .collect(Collectors.toList());
+
+        Map<String, Condition> equalities = new HashMap<>();
+        Set<String> ranges = new HashSet<>();
+        for (Condition condition : conditions) {
+            if (condition.value == null) {
+                continue;
+            }
+            if (condition.operator.equals(EQUALS)) {
+                equalities.putIfAbsent(condition.field, condition);
+            } else {
+                ranges.add(condition.field);
+            }
+        }
+
+        Index best = null;
+        int bestScore = 0;
+        int bestPrefix = 0;
+        for (Index index : indexes) {
+            int prefix = 0;
+            while (prefix < index.parts.size() && equalities.containsKey(index.parts.get(prefix))) {
+                prefix++;
+            }
+            int score;
+            if (index.unique && prefix == index.parts.size()) {
+                score = Integer.MAX_VALUE;
+            } else if (prefix > 0) {
+                score = prefix + 1;
+            } else {
+                score = ranges.contains(index.parts.get(0)) ? 1 : 0;
+            }
+            if (score > bestScore) {
+                best = index;
+                bestScore = score;
+                bestPrefix = prefix;
+            }
+        }
+
+        List<List<Object>> planned = new ArrayList<>(conditions.size());
+        Set<Condition> scanned = new HashSet<>();
+        if (best != null && bestPrefix > 0) {
+            List<Object> key = new ArrayList<>(bestPrefix);
+            for (String part : best.parts.subList(0, bestPrefix)) {
+                Condition equality = equalities.get(part);
+                key.add(equality.value);
+                scanned.add(equality);
+            }
+            planned.add(Arrays.asList(EQUALS, best.name, key));
+        } else if (best != null) {
+            String part = best.parts.get(0);
+            for (Condition condition : conditions) {
+                if (condition.value != null && condition.field.equals(part)) {
+                    planned.add(Arrays.asList(condition.operator, best.name, Arrays.asList(condition.value)));
+                    scanned.add(condition);
+                    break;
+                }
+            }
+        }
+
+        Set<String> leadingParts = new HashSet<>();
+        indexes.forEach(index -> leadingParts.add(index.parts.get(0)));
+        for (Condition condition : conditions) {
+            // a null key would become the iterator of the index and fail on non-nullable parts
+            if (scanned.contains(condition) || best == null && condition.value == null && leadingParts.contains(condition.field)) {
+                continue;
+            }
+            planned.add(condition.toCrud());
+        }
+        return planned;
+    }
+
+    private static void collect(Node node, IntFunction<String> columnNames, List<Condition> conditions) {
+        if (!(node instanceof OperatorNode)) {
+            return;
+        }
+        OperatorNode operatorNode = (OperatorNode) node;
+        Operator operator = operatorNode.getOperator();
+        if (operator == Operator.AND) {
+            collect(node.getLeft(), columnNames, conditions);
+            collect(node.getRight(), columnNames, conditions);
+            return;
+        }
+        ColumnIndexOperandNode column = operatorNode.getColumnIndexOperand();
+        if (column == null) {
+            return;
+        }
+        String field = columnNames.apply(column.index());
+        if (operator == Operator.IS_NULL) {
+            conditions.add(new Condition(EQUALS, field, null));
+            return;
+        }
+        if (!(operatorNode.getValueOperand() instanceof ScalarOperandNode)) {
+            return;
+        }
+        ScalarOperandNode scalar = (ScalarOperandNode) operatorNode.getValueOperand();
+        if (!(node.getLeft() instanceof ColumnIndexOperandNode)) {
+            operator = operator.transpose();
+        }
+        // strings are ordered by collation in Greenplum and by bytes in Tarantool, so only their equality is pushed
+        boolean text = scalar.getDataType() == DataType.TEXT || scalar.getDataType() == DataType.VARCHAR;
+        if (text && operator != Operator.EQUALS) {
+            return;
+        }
+        Object value = value(scalar.getDataType(), scalar.getValue());
+        if (value != null) {
+            conditions.add(new Condition(crudOperator(operator), field, value));
+        }
+    }
+
+    /**
+     * @return the constant as it is stored by the plugin, null if it can't be compared in Tarantool
+     */
+    private static Object value(DataType dataType, String value) {
+        try {
+            switch (dataType) {
+                case BOOLEAN:
+                    return "t".equals(value) || "true".equals(value);
+                case SMALLINT:
+                case INTEGER:
+                case BIGINT:
+                    return Long.parseLong(value);
+                case REAL:
+                    // reals are written as floats, the same float is needed for equality
+                    return Float.parseFloat(value);
+                case FLOAT8:
+                    return Double.parseDouble(value);
+                case TEXT:
+                case VARCHAR:
+                    return value;
+                default:
+                    return null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean isNegative(Object value) {
+        return value instanceof Number && ((Number) value).doubleValue() < 0;
+    }
+
+    private static String crudOperator(Operator operator) {
+        switch (operator) {
+            case LESS_THAN:
+                return "<";
+            case GREATER_THAN:
+                return ">";
+            case LESS_THAN_OR_EQUAL:
+                return "<=";
+            case GREATER_THAN_OR_EQUAL:
+                return ">=";
+            default:
+                return EQUALS;
+        }
+    }
+
+    /**
+     * Comparison of a space field, null value stands for IS NULL.
+     */
+    static final class Condition {
+        private final String operator;
+        private final String field;
+        private final Object value;
+
+        Condition(String operator, String field, Object value) {
+            this.operator = operator;
+            this.field = field;
+            this.value = value;
+        }
+
+        List<Object> toCrud() {
+            return Arrays.asList(operator, field, value);
+        }
+
+        @Override
+        public String toString() {
+            return field + " " + operator + " " + value;
+        }
+    }
+
+    /**
+     * Index of the space with its parts as field names.
+     */
+    static final class Index {
+        private final String name;
+        private final List<String> parts;
+        private final boolean unique;
+        private final Set<String> unsignedParts = new HashSet<>();
+
+        Index(String name, List<String> parts, boolean unique) {
+            this(name, parts, Collections.nCopies(parts.size(), null), unique);
+        }
+
+        /**
+         * @param types tarantool types of the parts
+         */
+        Index(String name, List<String> parts, List<String> types, boolean unique) {
+            this.name = name;
+            this.parts = parts;
+            this.unique = unique;
+            for (int i = 0; i < parts.size(); i++) {
+                if (UNSIGNED.equals(types.get(i))) {
+                    unsignedParts.add(parts.get(i));
+                }
+            }
+        }
+    }
+}
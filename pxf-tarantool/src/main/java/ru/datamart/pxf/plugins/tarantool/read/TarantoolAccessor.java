@@ -0,0 +1,363 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.read;
+
+import io.tarantool.driver.api.metadata.TarantoolIndexMetadata;
+import io.tarantool.driver.api.metadata.TarantoolIndexPartMetadata;
+import io.tarantool.driver.exceptions.TarantoolClientException;
+import org.greenplum.pxf.api.OneRow;
+import org.greenplum.pxf.api.model.Accessor;
+import org.greenplum.pxf.api.model.RequestContext;
+import ru.datamart.pxf.plugins.tarantool.common.CrudUtils;
+import ru.datamart.pxf.plugins.tarantool.common.TarantoolAccessorBase;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Streams the space with {@code crud.select} pages, each page starts after the last tuple of the previous one.
+ * Only the page being read is kept on the heap, unless read-ahead is set: then the following pages are requested
+ * one after another while the current one is read, up to the prefetch depth. A fragment made by {@link TarantoolFragmenter} limits the scan to
+ * its bucket range and sends it to the replicaset owning the range only, the scan fails if the buckets move while
+ * they are read. With filter pushdown the conditions of the Greenplum filter are sent along, led by the index
+ * matching them best. With projection only the columns Greenplum projects are requested, so the values of the other
+ * fields are neither sent nor decoded.
+ */
+public class TarantoolAccessor extends TarantoolAccessorBase implements Accessor {
+    private static final String PAGE_SIZE = "tarantool.cartridge.read.page.size";
+    private static final int DEFAULT_PAGE_SIZE = 1000;
+    private static final String FILTER_PUSHDOWN = "tarantool.cartridge.read.filter.pushdown";
+    private static final String PROJECTION = "tarantool.cartridge.read.projection";
+    private static final String PREFETCH = "tarantool.cartridge.read.prefetch";
+    private static final String BUCKET_ID_FIELD = "bucket_id";
+    // replicaset owning every bucket of the range by the routes of the router, nil when they are split
+    private static final String RANGE_OWNER_COMMAND = "local vshard = require('vshard')\n" +
+            "local from, to = ...\n" +
+            "local owner\n" +
+            "for bucket_id = from, to do\n" +
+            "    local replicaset = vshard.router.route(bucket_id)\n" +
+            "    local id = replicaset ~= nil and (replicaset.uuid or replicaset.id) or nil\n" +
+            "    if id == nil or owner ~= nil and id ~= owner then\n" +
+            "        return box.NULL\n" +
+            "    end\n" +
+            "    owner = id\n" +
+            "end\n" +
+            "return owner";
+
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private boolean filterPushdown;
+    private boolean projection;
+    private int prefetch;
+    private List<?> conditions = Collections.emptyList();
+    private List<String> fields;
+    private Integer ownerBucketId;
+    private BucketRange ownedRange;
+    private String rangeOwner;
+    private int[] columnPositions;
+    private Iterator<?> page = Collections.emptyIterator();
+    private final Deque<CompletableFuture<Page>> pending = new ArrayDeque<>();
+    private CompletableFuture<Page> tail;
+    private volatile boolean closed;
+    private boolean lastPage;
+    private long rowsRead;
+    private long pagesRead;
+    private long openNanos;
+    private long stallNanos;
+
+    @Override
+    public void initialize(RequestContext requestContext) {
+        super.initialize(requestContext);
+        this.pageSize = configuration.getInt(PAGE_SIZE, DEFAULT_PAGE_SIZE);
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("READ_PAGE_SIZE must be positive, got: " + pageSize);
+        }
+        this.filterPushdown = configuration.getBoolean(FILTER_PUSHDOWN, false);
+        this.projection = configuration.getBoolean(PROJECTION, false);
+        this.prefetch = configuration.getInt(PREFETCH, 0);
+        if (prefetch < 0) {
+            throw new IllegalArgumentException("READ_PREFETCH must not be negative, got: " + prefetch);
+        }
+    }
+
+    @Override
+    public boolean openForRead() throws Exception {
+        byte[] fragment = context.getFragmentMetadata();
+        BucketRange range = fragment != null && fragment.length > 0 ? BucketRange.parse(fragment) : null;
+        List<FilterConditions.Condition> scanConditions = new ArrayList<>();
+        if (range != null) {
+            scanConditions.add(new FilterConditions.Condition(">=", BUCKET_ID_FIELD, range.getFrom()));
+            scanConditions.add(new FilterConditions.Condition("<=", BUCKET_ID_FIELD, range.getTo()));
+        }
+        ownerBucketId = null;
+        ownedRange = null;
+        rangeOwner = null;
+        List<FilterConditions.Condition> filterConditions = filterConditions();
+        scanConditions.addAll(filterConditions);
+        LOG.info("Opening \"{}\" for read in {}, buckets: {}. Segment: {}, total: {}",
+                context.getProfile(), spaceName, range != null ? range : "all", context.getSegmentId(), context.getTotalSegments());
+        try {
+            openClient();
+            if (range != null && range.isOwned()) {
+                pinToOwner(range);
+            }
+            conditions = filterConditions.isEmpty()
+                    ? scanConditions.stream().map(FilterConditions.Condition::toCrud).collect(Collectors.toList())
+                    : FilterConditions.plan(scanConditions, spaceIndexes());
+            LOG.debug("Reading \"{}\" with conditions: {}", spaceName, conditions);
+        } catch (Throwable e) {
+            LOG.error("Failed opening \"{}\" for read in \"{}\". Segment: {}, total: {}",
+                    context.getProfile(), spaceName, context.getSegmentId(), context.getTotalSegments(), e);
+            closeConnectionIfOpened();
+            throw e;
+        }
+        fields = projectedFields();
+        columnPositions = null;
+        page = Collections.emptyIterator();
+        pending.clear();
+        tail = CompletableFuture.completedFuture(Page.FIRST);
+        closed = false;
+        lastPage = false;
+        rowsRead = 0;
+        pagesRead = 0;
+        openNanos = System.nanoTime();
+        stallNanos = 0;
+        return true;
+    }
+
+    @Override
+    public OneRow readNextObject() throws Exception {
+        while (!page.hasNext()) {
+            if (lastPage) {
+                return null;
+            }
+            nextPage();
+        }
+        rowsRead++;
+        return new OneRow(null, project((List<?>) page.next()));
+    }
+
+    @Override
+    public void closeForRead() throws Exception {
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - openNanos);
+        LOG.info("Closing \"{}\" for read in \"{}\". Rows: {}, pages: {}, rows/s: {}, stalled: {} ms of {} ms, prefetch: {}, segment: {}, total: {}",
+                context.getProfile(), spaceName, rowsRead, pagesRead, rowsRead * 1000 / Math.max(1, elapsedMillis),
+                TimeUnit.NANOSECONDS.toMillis(stallNanos), elapsedMillis, prefetch, context.getSegmentId(), context.getTotalSegments());
+        // pages requested ahead are dropped, their chain stops at the next request
+        closed = true;
+        pending.clear();
+        tail = null;
+        page = Collections.emptyIterator();
+        closeConnectionIfOpened();
+    }
+
+    /**
+     * @return names of the projected columns, null to read whole tuples
+     */
+    private List<String> projectedFields() {
+        int projected = context.getNumAttrsProjected();
+        // queries like count(*) project nothing, whole tuples are read then
+        if (!projection || projected == 0 || projected >= context.getColumns()) {
+            return null;
+        }
+        List<String> projectedFields = new ArrayList<>(projected);
+        for (int i = 0; i < context.getColumns(); i++) {
+            if (context.getColumn(i).isProjected()) {
+                projectedFields.add(context.getColumn(i).columnName());
+            }
+        }
+        return projectedFields;
+    }
+
+    private List<FilterConditions.Condition> filterConditions() {
+        if (!filterPushdown || !context.hasFilter()) {
+            return Collections.emptyList();
+        }
+        try {
+            return FilterConditions.parse(context.getFilterString(), i -> context.getColumn(i).columnName());
+        } catch (Exception e) {
+            // Greenplum applies the filter anyway
+            LOG.warn("Failed parsing filter \"{}\" of \"{}\", reading without it", context.getFilterString(), spaceName, e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * @return indexes of the space ordered by id with their parts as field names
+     */
+    private List<FilterConditions.Index> spaceIndexes() {
+        Map<String, TarantoolIndexMetadata> indexes = connection.getClient().metadata().getSpaceIndexes(spaceName)
+                .orElseThrow(() -> new IllegalArgumentException(String.format("Space: %s has no indexes", spaceName)));
+        return indexes.values().stream()
+                .sorted(Comparator.comparingInt(TarantoolIndexMetadata::getIndexId))
+                .map(index -> new FilterConditions.Index(index.getIndexName(),
+                        index.getIndexParts().stream()
+                                .map(part -> part.getPath() != null ? part.getPath() : spaceFieldNames().get(part.getFieldIndex()))
+                                .collect(Collectors.toList()),
+                        index.getIndexParts().stream()
+                                .map(TarantoolIndexPartMetadata::getFieldType)
+                                .collect(Collectors.toList()),
+                        index.isUnique()))
+                .collect(Collectors.toList());
+    }
+
+    private void nextPage() throws Exception {
+        // the read page is released before the next one arrives
+        page = Collections.emptyIterator();
+        if (pending.isEmpty()) {
+            pending.add(tail = tail.thenCompose(this::requestAfter));
+        }
+        CompletableFuture<Page> next = pending.poll();
+        long waitStart = System.nanoTime();
+        Page fetched = await(next);
+        stallNanos += System.nanoTime() - waitStart;
+        while (pending.size() < prefetch && !fetched.last) {
+            pending.add(tail = tail.thenCompose(this::requestAfter));
+        }
+
+        if (fetched != Page.LAST) {
+            pagesRead++;
+        }
+        if (columnPositions == null && fetched.metadata != null) {
+            columnPositions = columnPositions(fetched.metadata);
+        }
+        lastPage = fetched.last;
+        if (lastPage && ownerBucketId != null) {
+            checkOwner();
+        }
+        page = fetched.rows.iterator();
+    }
+
+    /**
+     * Sends the scan only to the replicaset owning the range if all its buckets are still owned by one, crud
+     * routes a select with a bucket id to the current owner of that bucket. Buckets moved apart since the space
+     * was split are read from all storages.
+     */
+    private void pinToOwner(BucketRange range) throws Exception {
+        String owner = rangeOwner(range);
+        if (owner == null) {
+            LOG.warn("Buckets {}-{} of \"{}\" are no longer owned by one replicaset, reading them from all storages",
+                    range.getFrom(), range.getTo(), spaceName);
+            return;
+        }
+        ownerBucketId = range.getFrom();
+        ownedRange = range;
+        rangeOwner = owner;
+    }
+
+    /**
+     * Fails the scan if buckets of the range moved while it was read, the rows of moved buckets may be missed.
+     */
+    private void checkOwner() throws Exception {
+        String owner = rangeOwner(ownedRange);
+        if (!rangeOwner.equals(owner)) {
+            throw new TarantoolClientException(String.format("Buckets %d-%d of space %s moved from replicaset %s while they were read, got: %s",
+                    ownedRange.getFrom(), ownedRange.getTo(), spaceName, rangeOwner, owner));
+        }
+    }
+
+    private String rangeOwner(BucketRange range) throws Exception {
+        List<?> result = await(connection.getClient().eval(RANGE_OWNER_COMMAND, Arrays.asList(range.getFrom(), range.getTo())));
+        return result.isEmpty() || result.get(0) == null ? null : result.get(0).toString();
+    }
+
+    /**
+     * Requests the page following the previous one as soon as it arrives, may run on a driver thread.
+     */
+    private CompletableFuture<Page> requestAfter(Page previous) {
+        if (previous.last || closed) {
+            return CompletableFuture.completedFuture(Page.LAST);
+        }
+        Map<String, Object> options = new HashMap<>();
+        options.put("first", pageSize);
+        if (previous.lastRow != null) {
+            options.put("after", previous.lastRow);
+        }
+        if (ownerBucketId != null) {
+            options.put("bucket_id", ownerBucketId);
+        }
+        if (fields != null) {
+            // crud adds the key fields needed for "after" to the rows, columns are found by the returned metadata
+            options.put("fields", fields);
+        }
+        return connection.callEncoded(CrudUtils.SELECT, Arrays.asList(spaceName, conditions, options))
+                .thenApply(response -> {
+                    Map<?, ?> result = (Map<?, ?>) CrudUtils.checkErrors(response).get(0);
+                    List<?> rows = (List<?>) result.get("rows");
+                    return new Page((List<?>) result.get("metadata"), rows, rows.size() < pageSize);
+                });
+    }
+
+    private int[] columnPositions(List<?> metadata) {
+        List<String> fieldNames = new ArrayList<>(metadata.size());
+        for (Object field : metadata) {
+            fieldNames.add(String.valueOf(((Map<?, ?>) field).get("name")));
+        }
+        int[] positions = new int[context.getColumns()];
+        for (int i = 0; i < positions.length; i++) {
+            if (fields != null && !context.getColumn(i).isProjected()) {
+                positions[i] = -1;
+                continue;
+            }
+            String column = context.getColumn(i).columnName();
+            positions[i] = fieldNames.indexOf(column);
+            if (positions[i] < 0) {
+                throw new IllegalArgumentException(String.format("Column %d (%s) not found in space %s, got: %s",
+                        i, column, spaceName, fieldNames));
+            }
+        }
+        return positions;
+    }
+
+    private List<Object> project(List<?> tuple) {
+        Object[] values = new Object[columnPositions.length];
+        for (int i = 0; i < values.length; i++) {
+            // trailing nullable fields may be absent in the tuple
+            int position = columnPositions[i];
+            values[i] = position >= 0 && position < tuple.size() ? tuple.get(position) : null;
+        }
+        return Arrays.asList(values);
+    }
+
+    private static final class Page {
+        // starts the chain of requests, the first one has no "after"
+        private static final Page FIRST = new Page(null, Collections.emptyList(), false);
+        // follows the last page instead of a request
+        private static final Page LAST = new Page(null, Collections.emptyList(), true);
+
+        private final List<?> metadata;
+        private final List<?> rows;
+        private final boolean last;
+        private final Object lastRow;
+
+        private Page(List<?> metadata, List<?> rows, boolean last) {
+            this.metadata = metadata;
+            this.rows = rows;
+            this.last = last;
+            this.lastRow = rows.isEmpty() ? null : rows.get(rows.size() - 1);
+        }
+    }
+}
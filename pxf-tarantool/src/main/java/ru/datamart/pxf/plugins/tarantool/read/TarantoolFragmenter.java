@@ -0,0 +1,108 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.read;
+
+import io.tarantool.driver.api.TarantoolClient;
+import io.tarantool.driver.api.TarantoolClientConfig;
+import io.tarantool.driver.api.TarantoolResult;
+import io.tarantool.driver.api.TarantoolServerAddress;
+import io.tarantool.driver.api.tuple.TarantoolTuple;
+import io.tarantool.driver.core.ClusterTarantoolTupleClient;
+import io.tarantool.driver.exceptions.TarantoolClientException;
+import org.greenplum.pxf.api.model.BaseFragmenter;
+import org.greenplum.pxf.api.model.Fragment;
+import ru.datamart.pxf.plugins.tarantool.common.ClusterSettings;
+import ru.datamart.pxf.plugins.tarantool.discovery.DiscoveryClientProvider;
+import ru.datamart.pxf.plugins.tarantool.routing.VshardRoutingTable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Splits the space into vshard bucket ranges, each owned by a single replicaset, so that segments read disjoint
+ * slices in parallel. Without {@code READ_FRAGMENTS} the whole space is a single fragment.
+ */
+public class TarantoolFragmenter extends BaseFragmenter {
+    private static final String READ_FRAGMENTS = "tarantool.cartridge.read.fragments";
+    private static final String READ_FRAGMENTS_AUTO = "auto";
+
+    private DiscoveryClientProvider clientProvider = (config, routerAddress) -> new ClusterTarantoolTupleClient(config, Collections.singletonList(routerAddress));
+
+    @Override
+    public List<Fragment> getFragments() throws Exception {
+        String spaceName = context.getDataSource();
+        int target = targetFragments();
+        if (target == 0) {
+            fragments.add(new Fragment(spaceName, Fragment.HOSTS, new byte[0]));
+            return fragments;
+        }
+
+        VshardRoutingTable table = fetchRoutingTable();
+        List<BucketRange> ranges = BucketRange.split(table.getBucketCount(), table::getReplicaset, target);
+        for (BucketRange range : ranges) {
+            fragments.add(new Fragment(spaceName, Fragment.HOSTS, range.toBytes()));
+        }
+        LOG.info("Split \"{}\" into {} bucket ranges of {} buckets in {} replicasets, segments: {}",
+                spaceName, ranges.size(), table.getBucketCount(), table.getReplicasets().size(), context.getTotalSegments());
+        return fragments;
+    }
+
+    private int targetFragments() {
+        String value = configuration.get(READ_FRAGMENTS, "0").trim();
+        if (READ_FRAGMENTS_AUTO.equalsIgnoreCase(value)) {
+            return Math.max(1, context.getTotalSegments());
+        }
+        int target;
+        try {
+            target = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            target = -1;
+        }
+        if (target < 0) {
+            throw new IllegalArgumentException("READ_FRAGMENTS must be a non-negative number or auto, got: " + value);
+        }
+        return target;
+    }
+
+    private VshardRoutingTable fetchRoutingTable() throws Exception {
+        ClusterSettings clusterSettings = ClusterSettings.from(configuration);
+        TarantoolClientConfig config = clusterSettings.clientConfig().build();
+
+        List<Throwable> errors = new ArrayList<>();
+        for (TarantoolServerAddress routerAddress : clusterSettings.getRouterAddresses()) {
+            TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>> client =
+                    clientProvider.provide(config, routerAddress);
+            try {
+                return VshardRoutingTable.fetch(client).get();
+            } catch (ExecutionException e) {
+                LOG.warn("Failed to fetch routing table from {}", routerAddress, e.getCause());
+                errors.add(e.getCause());
+            } finally {
+                client.close();
+            }
+        }
+        TarantoolClientException exception = new TarantoolClientException("Failed to fetch routing table from "
+                + clusterSettings.getCluster());
+        errors.forEach(exception::addSuppressed);
+        throw exception;
+    }
+
+    public void setClientProvider(DiscoveryClientProvider clientProvider) {
+        this.clientProvider = clientProvider;
+    }
+}
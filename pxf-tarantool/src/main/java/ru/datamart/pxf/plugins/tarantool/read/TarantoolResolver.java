@@ -0,0 +1,72 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.read;
+
+import org.greenplum.pxf.api.OneField;
+import org.greenplum.pxf.api.OneRow;
+import org.greenplum.pxf.api.io.DataType;
+import org.greenplum.pxf.api.model.BasePlugin;
+import org.greenplum.pxf.api.model.RequestContext;
+import org.greenplum.pxf.api.model.Resolver;
+import org.greenplum.pxf.api.utilities.ColumnDescriptor;
+import ru.datamart.pxf.plugins.tarantool.common.ColumnDecoder;
+import ru.datamart.pxf.plugins.tarantool.common.DataUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns rows of {@link TarantoolAccessor} into fields with decoders built once per column type, values of
+ * columns Greenplum does not project are not requested and stay null.
+ */
+public class TarantoolResolver extends BasePlugin implements Resolver {
+    private int[] oids;
+    private ColumnDecoder[] decoders;
+
+    @Override
+    public void initialize(RequestContext requestContext) {
+        super.initialize(requestContext);
+        List<ColumnDescriptor> columns = requestContext.getTupleDescription();
+        oids = new int[columns.size()];
+        decoders = new ColumnDecoder[columns.size()];
+        for (int i = 0; i < columns.size(); i++) {
+            ColumnDescriptor column = columns.get(i);
+            DataType type = column.getDataType();
+            oids[i] = type.getOID();
+            try {
+                decoders[i] = DataUtils.decoder(type);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(String.format("Column %d (%s) has unsupported type: %s",
+                        i, column.columnName(), column.columnTypeName()), e);
+            }
+        }
+    }
+
+    @Override
+    public List<OneField> getFields(OneRow oneRow) throws Exception {
+        List<?> values = (List<?>) oneRow.getData();
+        List<OneField> fields = new ArrayList<>(decoders.length);
+        for (int i = 0; i < decoders.length; i++) {
+            fields.add(new OneField(oids[i], decoders[i].decode(values.get(i))));
+        }
+        return fields;
+    }
+
+    @Override
+    public OneRow setFields(List<OneField> list) throws Exception {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.routing;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Computes bucket_id the same way as {@code vshard.router.bucket_id_strcrc32} does for a sharding key:
+ * CRC32-C over {@code tostring()} of every key part, modulo bucket count, plus one.
+ */
+public class BucketIdCalculator {
+    private static final int POLYNOMIAL = 0x82F63B78;
+    private static final int[] TABLE = new int[256];
+    // tarantool decodes integers up to 2^53 by absolute value into Lua numbers, bigger ones into int64/uint64 cdata
+    private static final long MAX_LUA_NUMBER = 1L << 53;
+    // Lua numbers are printed with "%.14g"
+    private static final int LUA_NUMBER_DIGITS = 14;
+    private static final MathContext LUA_NUMBER_PRECISION = new MathContext(LUA_NUMBER_DIGITS, RoundingMode.HALF_EVEN);
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+            TABLE[i] = crc;
+        }
+    }
+
+    private final int bucketCount;
+
+    public BucketIdCalculator(int bucketCount) {
+        if (bucketCount < 1) {
+            throw new IllegalArgumentException("Bucket count must be positive, got: " + bucketCount);
+        }
+        this.bucketCount = bucketCount;
+    }
+
+    public int getBucketCount() {
+        return bucketCount;
+    }
+
+    public int bucketId(List<?> shardingKey) {
+        // tarantool digest.crc32 starts with 0xFFFFFFFF and has no final xor
+        int crc = 0xFFFFFFFF;
+        for (Object part : shardingKey) {
+            byte[] bytes = luaToString(part).getBytes(StandardCharsets.UTF_8);
+            for (byte b : bytes) {
+                crc = (crc >>> 8) ^ TABLE[(crc ^ b) & 0xff];
+            }
+        }
+        return (int) (Integer.toUnsignedLong(crc) % bucketCount) + 1;
+    }
+
+    static String luaToString(Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Sharding key must not contain null values");
+        }
+        if (value instanceof String || value instanceof Boolean) {
+            return value.toString();
+        }
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            long number = ((Number) value).longValue();
+            if (number > MAX_LUA_NUMBER) {
+                return number + "ULL";
+            }
+            if (number < -MAX_LUA_NUMBER) {
+                return number + "LL";
+            }
+            return luaNumberToString(number);
+        }
+        throw new IllegalArgumentException("Unsupported sharding key type: " + value.getClass().getName());
+    }
+
+    /**
+     * Formats an integer exactly representable as double like {@code "%.14g"} does.
+     */
+    private static String luaNumberToString(long number) {
+        String digits = Long.toString(Math.abs(number));
+        if (digits.length() <= LUA_NUMBER_DIGITS) {
+            return Long.toString(number);
+        }
+        // the value is exact, so half-even rounding of its decimal digits matches printf
+        BigDecimal rounded = new BigDecimal(Math.abs(number)).round(LUA_NUMBER_PRECISION);
+        String significant = rounded.unscaledValue().toString().replaceAll("0+$", "");
+        int exponent = rounded.precision() - rounded.scale() - 1;
+        StringBuilder result = new StringBuilder();
+        if (number < 0) {
+            result.append('-');
+        }
+        result.append(significant.charAt(0));
+        if (significant.length() > 1) {
+            result.append('.').append(significant, 1, significant.length());
+        }
+        return result.append("e+").append(exponent).toString();
+    }
+}
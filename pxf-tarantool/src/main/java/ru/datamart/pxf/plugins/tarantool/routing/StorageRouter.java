@@ -0,0 +1,354 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.routing;
+
+import io.tarantool.driver.api.TarantoolClient;
+import io.tarantool.driver.api.TarantoolClientConfig;
+import io.tarantool.driver.api.TarantoolResult;
+import io.tarantool.driver.api.TarantoolServerAddress;
+import io.tarantool.driver.api.tuple.TarantoolTuple;
+import io.tarantool.driver.exceptions.NoAvailableConnectionsException;
+import io.tarantool.driver.exceptions.TarantoolClientException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.datamart.pxf.plugins.tarantool.discovery.DiscoveryClientProvider;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Sends writes straight to storage masters through {@code vshard.storage.call}, bypassing crud routers.
+ * The routing table is fetched from a router once and refetched when a storage rejects the bucket.
+ * Batches are split by replicaset and sent as one call per replicaset, which references the buckets of all its rows.
+ */
+public class StorageRouter implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StorageRouter.class);
+    private static final String STORAGE_CALL = "vshard.storage.call";
+    private static final String WRITE_MODE = "write";
+    private static final int MAX_ATTEMPTS = 10;
+    private static final long RETRY_DELAY_MS = 100L;
+    private static final Set<String> ROUTING_ERRORS = new HashSet<>(Arrays.asList(
+            "WRONG_BUCKET", "NON_MASTER", "TRANSFER_IS_IN_PROGRESS", "BUCKET_IS_LOCKED"));
+    private static final String SHARDING_KEY_COMMAND = "local space_name = ...\n" +
+            "local ok, ddl = pcall(require, 'ddl')\n" +
+            "if ok then\n" +
+            "    local space = ddl.get_schema().spaces[space_name]\n" +
+            "    if space ~= nil and space.sharding_key ~= nil then\n" +
+            "        return space.sharding_key\n" +
+            "    end\n" +
+            "end\n" +
+            "return {}";
+    // refs every bucket of the rows like vshard.storage.call refs one, nothing is written unless all are owned
+    private static final String GROUPED_CALL_COMMAND = "local function_name, args, bucket_ids = ...\n" +
+            "local referenced = {}\n" +
+            "local function unref()\n" +
+            "    for _, bucket_id in ipairs(referenced) do\n" +
+            "        vshard.storage.bucket_unref(bucket_id, 'write')\n" +
+            "    end\n" +
+            "end\n" +
+            "for _, bucket_id in ipairs(bucket_ids) do\n" +
+            "    local ok, err = vshard.storage.bucket_ref(bucket_id, 'write')\n" +
+            "    if not ok then\n" +
+            "        unref()\n" +
+            "        return nil, err\n" +
+            "    end\n" +
+            "    table.insert(referenced, bucket_id)\n" +
+            "end\n" +
+            "local fn = _G\n" +
+            "for name in function_name:gmatch('[^.]+') do\n" +
+            "    fn = fn[name]\n" +
+            "end\n" +
+            "local result = {pcall(fn, unpack(args))}\n" +
+            "unref()\n" +
+            "if not result[1] then\n" +
+            "    error(result[2])\n" +
+            "end\n" +
+            "return unpack(result, 2, table.maxn(result))";
+    private static final ScheduledExecutorService RETRY_EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "tarantool-storage-router-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>> router;
+    private final TarantoolClientConfig config;
+    private final DiscoveryClientProvider clientProvider;
+    private final Map<String, TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>>> clients = new ConcurrentHashMap<>();
+    private final AtomicReference<VshardRoutingTable> routingTable = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<VshardRoutingTable>> refreshing = new AtomicReference<>();
+    private BucketIdCalculator bucketIdCalculator;
+
+    public StorageRouter(TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>> router,
+                         TarantoolClientConfig config,
+                         DiscoveryClientProvider clientProvider) {
+        this.router = router;
+        this.config = config;
+        this.clientProvider = clientProvider;
+    }
+
+    public void init() throws Exception {
+        initAsync().get();
+    }
+
+    /**
+     * Fetches the routing table without blocking, the router is usable once the future completes.
+     */
+    public CompletableFuture<Void> initAsync() {
+        return VshardRoutingTable.fetch(router).thenAccept(table -> {
+            routingTable.set(table);
+            bucketIdCalculator = new BucketIdCalculator(table.getBucketCount());
+            LOGGER.info("Retrieved vshard routing table, buckets: {}, replicasets: {}", table.getBucketCount(), table.getReplicasets());
+        });
+    }
+
+    /**
+     * @return names of the space sharding key fields from ddl schema, empty when the space has no explicit sharding key
+     */
+    public CompletableFuture<List<String>> fetchShardingKey(String spaceName) {
+        return router.eval(SHARDING_KEY_COMMAND, Collections.singletonList(spaceName))
+                .thenApply(result -> {
+                    List<String> fields = new ArrayList<>();
+                    if (!result.isEmpty() && result.get(0) instanceof List) {
+                        for (Object field : (List<?>) result.get(0)) {
+                            fields.add(field.toString());
+                        }
+                    }
+                    return fields;
+                });
+    }
+
+    public int bucketId(List<?> shardingKey) {
+        return bucketIdCalculator.bucketId(shardingKey);
+    }
+
+    /**
+     * Calls the function on the master of the replicaset owning the bucket, retrying on another master
+     * after the routing table is refreshed if the bucket has moved.
+     */
+    public CompletableFuture<List<?>> call(int bucketId, String function, List<?> args) {
+        return call(bucketId, function, args, 1);
+    }
+
+    private CompletableFuture<List<?>> call(int bucketId, String function, List<?> args, int attempt) {
+        VshardRoutingTable table = routingTable.get();
+        return send(table, bucketId, client -> client.call(STORAGE_CALL, Arrays.asList(bucketId, WRITE_MODE, function, args)),
+                Function.identity(),
+                cause -> retry(table, bucketId, attempt, cause, () -> call(bucketId, function, args, attempt + 1)));
+    }
+
+    /**
+     * Calls the function once per replicaset owning the buckets of the rows. The master references every bucket
+     * of its group before the call, so a group is written only if all its buckets are still there; otherwise
+     * nothing is written and the rows are split by their new owners and sent again.
+     *
+     * @param bucketIds bucket of each row
+     * @param arguments builds the function arguments from the rows of a group
+     * @return responses of the calls, without the success flag of {@code vshard.storage.call}
+     */
+    public CompletableFuture<List<List<?>>> callGrouped(int[] bucketIds, List<?> rows, String function,
+                                                        Function<List<?>, List<?>> arguments) {
+        return callGrouped(bucketIds, rows, function, arguments, 1);
+    }
+
+    private CompletableFuture<List<List<?>>> callGrouped(int[] bucketIds, List<?> rows, String function,
+                                                         Function<List<?>, List<?>> arguments, int attempt) {
+        VshardRoutingTable table = routingTable.get();
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            groups.computeIfAbsent(table.getReplicaset(bucketIds[i]), k -> new ArrayList<>()).add(i);
+        }
+
+        List<CompletableFuture<List<List<?>>>> calls = new ArrayList<>(groups.size());
+        for (List<Integer> offsets : groups.values()) {
+            int[] groupBucketIds = new int[offsets.size()];
+            List<Object> groupRows = new ArrayList<>(offsets.size());
+            for (int i = 0; i < offsets.size(); i++) {
+                groupBucketIds[i] = bucketIds[offsets.get(i)];
+                groupRows.add(rows.get(offsets.get(i)));
+            }
+            int bucketId = groupBucketIds[0];
+            List<Integer> distinctBucketIds = new ArrayList<>(new LinkedHashSet<>(
+                    Arrays.stream(groupBucketIds).boxed().collect(Collectors.toList())));
+            calls.add(send(table, bucketId,
+                    client -> client.eval(GROUPED_CALL_COMMAND, Arrays.asList(function, arguments.apply(groupRows), distinctBucketIds)),
+                    response -> Collections.singletonList(result(response)),
+                    cause -> retry(table, bucketId, attempt, cause,
+                            () -> callGrouped(groupBucketIds, groupRows, function, arguments, attempt + 1))));
+        }
+
+        return CompletableFuture.allOf(calls.toArray(new CompletableFuture[0]))
+                .thenApply(ignored -> {
+                    List<List<?>> responses = new ArrayList<>();
+                    for (CompletableFuture<List<List<?>>> call : calls) {
+                        responses.addAll(call.join());
+                    }
+                    return responses;
+                });
+    }
+
+    /**
+     * @param request   sends the request to the master of the bucket
+     * @param onSuccess converts the response of the storage
+     * @param retry     called with the cause when the bucket has no known master, the storage is unreachable
+     *                  or rejects the bucket, other errors fail the call at once
+     */
+    private <T> CompletableFuture<T> send(VshardRoutingTable table, int bucketId,
+                                          Function<TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>>, CompletableFuture<List<?>>> request,
+                                          Function<List<?>, T> onSuccess,
+                                          Function<Throwable, CompletableFuture<T>> retry) {
+        TarantoolServerAddress master = table.getMaster(bucketId);
+        if (master == null) {
+            return retry.apply(new TarantoolClientException("No known master for bucket " + bucketId));
+        }
+
+        return request.apply(client(master))
+                .handle((response, throwable) -> {
+                    if (throwable != null) {
+                        // errors raised by the function itself fail the same way on every attempt
+                        return isConnectionFailure(throwable) ? retry.apply(throwable) : StorageRouter.<T>failed(throwable);
+                    }
+                    Map<?, ?> error = error(response);
+                    if (error == null) {
+                        return CompletableFuture.completedFuture(onSuccess.apply(response));
+                    }
+                    TarantoolClientException exception = new TarantoolClientException(
+                            String.format("Storage call to %s for bucket %d failed: %s", master, bucketId, error));
+                    if (ROUTING_ERRORS.contains(String.valueOf(error.get("name")))) {
+                        return retry.apply(exception);
+                    }
+                    return StorageRouter.<T>failed(exception);
+                })
+                .thenCompose(Function.identity());
+    }
+
+    private <T> CompletableFuture<T> retry(VshardRoutingTable staleTable, int bucketId, int attempt, Throwable cause,
+                                           Supplier<CompletableFuture<T>> next) {
+        if (attempt >= MAX_ATTEMPTS) {
+            return failed(new TarantoolClientException("Storage call failed after " + attempt + " attempts", cause));
+        }
+        LOGGER.warn("Storage call for bucket {} failed, refreshing routing table, attempt: {}", bucketId, attempt, cause);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        RETRY_EXECUTOR.schedule(() -> refresh(staleTable)
+                .thenCompose(table -> next.get())
+                .whenComplete((response, throwable) -> {
+                    if (throwable != null) {
+                        result.completeExceptionally(throwable);
+                    } else {
+                        result.complete(response);
+                    }
+                }), RETRY_DELAY_MS * attempt, TimeUnit.MILLISECONDS);
+        return result;
+    }
+
+    private CompletableFuture<VshardRoutingTable> refresh(VshardRoutingTable staleTable) {
+        VshardRoutingTable current = routingTable.get();
+        if (current != staleTable) {
+            return CompletableFuture.completedFuture(current);
+        }
+
+        CompletableFuture<VshardRoutingTable> inProgress = refreshing.get();
+        if (inProgress != null && !inProgress.isDone()) {
+            return inProgress;
+        }
+
+        CompletableFuture<VshardRoutingTable> next = new CompletableFuture<>();
+        if (!refreshing.compareAndSet(inProgress, next)) {
+            return refreshing.get();
+        }
+
+        VshardRoutingTable.fetch(router).whenComplete((table, throwable) -> {
+            if (throwable != null) {
+                next.completeExceptionally(throwable);
+            } else {
+                routingTable.set(table);
+                LOGGER.info("Refreshed vshard routing table, replicasets: {}", table.getReplicasets());
+                next.complete(table);
+            }
+        });
+        return next;
+    }
+
+    private TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>> client(TarantoolServerAddress address) {
+        return clients.computeIfAbsent(address.getHost() + ":" + address.getPort(),
+                key -> clientProvider.provide(config, address));
+    }
+
+    private static boolean isConnectionFailure(Throwable error) {
+        Throwable current = error;
+        while (current != null) {
+            if (current instanceof IOException || current instanceof TimeoutException
+                    || current instanceof NoAvailableConnectionsException) {
+                return true;
+            }
+            current = current.getCause();
+        }
+        return false;
+    }
+
+    private static Map<?, ?> error(List<?> response) {
+        // vshard.storage.call returns "nil, err" on failure
+        if (response.size() > 1 && response.get(0) == null && response.get(1) instanceof Map) {
+            return (Map<?, ?>) response.get(1);
+        }
+        return null;
+    }
+
+    /**
+     * Drops the success flag newer vshard versions put before the results of the function.
+     */
+    private static List<?> result(List<?> response) {
+        return !response.isEmpty() && Boolean.TRUE.equals(response.get(0)) ? response.subList(1, response.size()) : response;
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable throwable) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(throwable);
+        return future;
+    }
+
+    @Override
+    public void close() {
+        for (TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>> client : clients.values()) {
+            try {
+                client.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOGGER.error("Interrupted on close", e);
+            } catch (Exception e) {
+                LOGGER.error("Exception during closing storage client, ignored", e);
+            }
+        }
+        clients.clear();
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.routing;
+
+import io.tarantool.driver.api.TarantoolClient;
+import io.tarantool.driver.api.TarantoolResult;
+import io.tarantool.driver.api.TarantoolServerAddress;
+import io.tarantool.driver.api.tuple.TarantoolTuple;
+import io.tarantool.driver.exceptions.TarantoolClientException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Snapshot of vshard bucket to replicaset master mapping taken from a router.
+ */
+public class VshardRoutingTable {
+    private static final String ROUTING_COMMAND = "local vshard = require('vshard')\n" +
+            "local bucket_count = vshard.router.bucket_count()\n" +
+            "local replicasets = {}\n" +
+            "local masters = {}\n" +
+            "local indexes = {}\n" +
+            "for uuid, replicaset in pairs(vshard.router.routeall()) do\n" +
+            "    table.insert(replicasets, uuid)\n" +
+            "    indexes[uuid] = #replicasets\n" +
+            "    masters[#replicasets] = replicaset.master ~= nil and replicaset.master.uri or ''\n" +
+            "end\n" +
+            "\n" +
+            "local buckets = {}\n" +
+            "for bucket_id = 1, bucket_count do\n" +
+            "    local replicaset = vshard.router.route(bucket_id)\n" +
+            "    buckets[bucket_id] = replicaset ~= nil and indexes[replicaset.uuid] or 0\n" +
+            "end\n" +
+            "\n" +
+            "return bucket_count, replicasets, masters, buckets";
+
+    private final int bucketCount;
+    private final List<String> replicasets;
+    private final List<TarantoolServerAddress> masters;
+    // replicaset index starting from 1 for each bucket, 0 when unknown
+    private final int[] buckets;
+
+    VshardRoutingTable(int bucketCount, List<String> replicasets, List<TarantoolServerAddress> masters, int[] buckets) {
+        this.bucketCount = bucketCount;
+        this.replicasets = replicasets;
+        this.masters = masters;
+        this.buckets = buckets;
+    }
+
+    public static CompletableFuture<VshardRoutingTable> fetch(TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>> router) {
+        return router.eval(ROUTING_COMMAND).thenApply(VshardRoutingTable::parse);
+    }
+
+    static VshardRoutingTable parse(List<?> result) {
+        if (result.size() != 4) {
+            throw new TarantoolClientException("Incorrect result of routing table call, expected: 4, got: " + result.size());
+        }
+        int bucketCount = ((Number) result.get(0)).intValue();
+        List<String> replicasets = new ArrayList<>();
+        for (Object uuid : (List<?>) result.get(1)) {
+            replicasets.add(uuid.toString());
+        }
+        List<TarantoolServerAddress> masters = new ArrayList<>();
+        for (Object uri : (List<?>) result.get(2)) {
+            masters.add(uri == null || uri.toString().isEmpty() ? null : new TarantoolServerAddress(stripCredentials(uri.toString())));
+        }
+        List<?> bucketList = (List<?>) result.get(3);
+        if (bucketList.size() != bucketCount) {
+            throw new TarantoolClientException(String.format("Incorrect routing table, expected %d buckets, got: %d",
+                    bucketCount, bucketList.size()));
+        }
+        int[] buckets = new int[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i] = ((Number) bucketList.get(i)).intValue();
+        }
+        return new VshardRoutingTable(bucketCount, Collections.unmodifiableList(replicasets), Collections.unmodifiableList(masters), buckets);
+    }
+
+    private static String stripCredentials(String uri) {
+        int at = uri.lastIndexOf('@');
+        return at >= 0 ? uri.substring(at + 1) : uri;
+    }
+
+    public int getBucketCount() {
+        return bucketCount;
+    }
+
+    public List<String> getReplicasets() {
+        return replicasets;
+    }
+
+    /**
+     * @return replicaset uuid owning the bucket or null if the router doesn't know it
+     */
+    public String getReplicaset(int bucketId) {
+        int index = buckets[bucketId - 1];
+        return index == 0 ? null : replicasets.get(index - 1);
+    }
+
+    /**
+     * @return master address of the replicaset owning the bucket or null if the bucket or the master is unknown
+     */
+    public TarantoolServerAddress getMaster(int bucketId) {
+        int index = buckets[bucketId - 1];
+        return index == 0 ? null : masters.get(index - 1);
+    }
+}
@@ -15,50 +15,71 @@
  */
 package ru.datamart.pxf.plugins.tarantool.upsert;
 
-import io.tarantool.driver.api.metadata.TarantoolFieldMetadata;
 import io.tarantool.driver.api.tuple.TarantoolTuple;
 import org.greenplum.pxf.api.OneRow;
 import org.greenplum.pxf.api.model.Accessor;
 import org.greenplum.pxf.api.utilities.ColumnDescriptor;
-import ru.datamart.pxf.plugins.tarantool.common.TarantoolAccessorBase;
+import ru.datamart.pxf.plugins.tarantool.client.EncodedTuple;
+import ru.datamart.pxf.plugins.tarantool.common.CrudUtils;
+import ru.datamart.pxf.plugins.tarantool.common.TarantoolWriteAccessorBase;
 
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
-public class TarantoolAccessor extends TarantoolAccessorBase implements Accessor {
+public class TarantoolAccessor extends TarantoolWriteAccessorBase implements Accessor {
+    private static final String BUCKET_ID_FIELD = "bucket_id";
+
+    private int bucketIdPosition;
+    private Map<String, Object> storageOptions;
+
     @Override
     public boolean openForWrite() throws Exception {
         try {
             super.openForWrite();
 
-            List<TarantoolFieldMetadata> tarantoolFields = spaceOperations.getMetadata().getSpaceFormatMetadata().values().stream()
-                    .sorted(Comparator.comparingInt(TarantoolFieldMetadata::getFieldPosition))
-                    .collect(Collectors.toList());
+            List<String> fieldNames = spaceFieldNames();
+            validateColumns("upsert", () -> {
+                if (context.getColumns() != fieldNames.size()) {
+                    String externalTableColumns = IntStream.range(0, context.getColumns())
+                            .mapToObj(i -> context.getColumn(i).columnName())
+                            .collect(Collectors.joining(",", "[", "]"));
+                    String tarantoolIndex = fieldNames.stream()
+                            .collect(Collectors.joining(",", "[", "]"));
 
-            if (context.getColumns() != tarantoolFields.size()) {
-                String externalTableColumns = IntStream.range(0, context.getColumns())
-                        .mapToObj(i -> context.getColumn(i).columnName())
-                        .collect(Collectors.joining(",", "[", "]"));
-                String tarantoolIndex = tarantoolFields.stream()
-                        .map(TarantoolFieldMetadata::getFieldName)
-                        .collect(Collectors.joining(",", "[", "]"));
+                    throw new IllegalArgumentException(String.format("Columns don't match tarantool columns: %s, got: %s",
+                            tarantoolIndex, externalTableColumns));
+                }
 
-                throw new IllegalArgumentException(String.format("Columns don't match tarantool columns: %s, got: %s",
-                        tarantoolIndex, externalTableColumns));
-            }
+                for (int i = 0; i < context.getColumns(); i++) {
+                    String tarantoolColumn = fieldNames.get(i);
+                    ColumnDescriptor externalTableColumn = context.getColumn(i);
 
-            for (int i = 0; i < context.getColumns(); i++) {
-                TarantoolFieldMetadata tarantoolColumn = tarantoolFields.get(i);
-                ColumnDescriptor externalTableColumn = context.getColumn(i);
+                    if (!externalTableColumn.columnName().equals(tarantoolColumn)) {
+                        throw new IllegalArgumentException(String.format("Column %d (%s) not equal to tarantool column with order, expected: %s",
+                                i, externalTableColumn.columnName(), tarantoolColumn));
+                    }
+                }
+            });
+            List<String> primaryKey = spacePrimaryKey();
+            // crud reports the tuples of rejected rows, they are matched to rows by the primary key
+            batchKeyPositions = primaryKey.stream().mapToInt(fieldNames::indexOf).toArray();
 
-                if (!externalTableColumn.columnName().equals(tarantoolColumn.getFieldName())) {
-                    throw new IllegalArgumentException(String.format("Column %d (%s) not equal to tarantool column with order, expected: %s",
-                            i, externalTableColumn.columnName(), tarantoolColumn.getFieldName()));
+            if (storageRouter != null) {
+                bucketIdPosition = fieldNames.indexOf(BUCKET_ID_FIELD);
+                if (bucketIdPosition < 0) {
+                    throw new IllegalArgumentException(String.format("Space: %s has no %s field", spaceName, BUCKET_ID_FIELD));
                 }
+                resolveShardingKey(fieldNames, primaryKey);
+                storageOptions = CrudUtils.storageOptions(noReturn);
             }
 
+            logSetup();
             return true;
         } catch (Throwable e) {
             //pxf will not call closeForWrite if openForWrite not succeeded
@@ -71,27 +92,66 @@ public class TarantoolAccessor extends TarantoolAccessorBase implements Accessor
 
     @Override
     public boolean writeNextObject(OneRow oneRow) throws Exception {
-        waitUntilBufferFreed();
-        totalTasks.incrementAndGet();
-        activeTasks.incrementAndGet();
-
         List<?> columns = (List<?>) oneRow.getData();
-        TarantoolTuple tuple = connection.getTupleFactory().create(columns);
-        spaceOperations.replace(tuple)
-                .whenComplete((tarantoolTuples, throwable) -> {
-                    if (throwable != null) {
-                        LOG.error("Task ended up with exception", throwable);
-                        firstException.compareAndSet(null, throwable);
-                        errorCount.incrementAndGet();
-                    }
-                    activeTasks.decrementAndGet();
-                    notifyIfBufferFreed();
-                });
-
-        if (errorCount.get() > 0) {
-            throw new IllegalStateException("Some of the tasks completed exceptionally", firstException.get());
+        if (storageRouter != null) {
+            List<Object> tuple = new ArrayList<>(columns);
+            Object bucketId = tuple.get(bucketIdPosition);
+            if (bucketId == null) {
+                bucketId = bucketId(tuple);
+                tuple.set(bucketIdPosition, bucketId);
+            }
+            if (batchSize > 1) {
+                addToBatch(encode(tuple));
+            } else {
+                int bucket = ((Number) bucketId).intValue();
+                Object encoded = encode(tuple);
+                long bytes = encodedSize(encoded);
+                submitTask(bytes, () -> storageRouter.call(bucket, "box.space." + spaceName + ":replace",
+                        Collections.singletonList(encoded)));
+            }
+        } else if (batchSize > 1) {
+            addToBatch(encode(columns));
+        } else if (noReturn || tupleEncoder != null) {
+            Object encoded = encode(columns);
+            long bytes = encodedSize(encoded);
+            List<?> args = noReturn
+                    ? Arrays.asList(spaceName, encoded, CrudUtils.NO_RETURN_OPTIONS)
+                    : Arrays.asList(spaceName, encoded);
+            submitTask(bytes, () -> connection.callEncoded(CrudUtils.REPLACE, args)
+                    .thenApply(CrudUtils::checkErrors));
+        } else {
+            TarantoolTuple tuple = connection.getTupleFactory().create(columns);
+            long bytes = encodedSize(columns);
+            submitTask(bytes, () -> spaceOperations().replace(tuple));
         }
 
+        checkTasksFailed();
         return true;
     }
+
+    @Override
+    protected CompletableFuture<List<?>> sendBatch(List<?> rows) {
+        if (storageRouter != null) {
+            return storageRouter.callGrouped(bucketIds(rows), rows, CrudUtils.REPLACE_MANY_ON_STORAGE,
+                            group -> Arrays.asList(spaceName, group, storageOptions))
+                    .thenApply(CrudUtils::joinResponses);
+        }
+        List<?> args = noReturn
+                ? Arrays.asList(spaceName, rows, CrudUtils.NO_RETURN_OPTIONS)
+                : Arrays.asList(spaceName, rows);
+        return connection.callEncoded(CrudUtils.REPLACE_MANY, args);
+    }
+
+    private int[] bucketIds(List<?> rows) {
+        int[] bucketIds = new int[rows.size()];
+        int[] positions = {bucketIdPosition};
+        for (int i = 0; i < rows.size(); i++) {
+            Object row = rows.get(i);
+            Object bucketId = row instanceof EncodedTuple
+                    ? ((EncodedTuple) row).fields(positions).get(0)
+                    : ((List<?>) row).get(bucketIdPosition);
+            bucketIds[i] = ((Number) bucketId).intValue();
+        }
+        return bucketIds;
+    }
 }
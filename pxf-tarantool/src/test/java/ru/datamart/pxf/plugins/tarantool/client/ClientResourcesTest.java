@@ -0,0 +1,68 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClientResourcesTest {
+
+    @Test
+    void shouldCountEventLoopThreads() throws Exception {
+        // arrange
+        int before = ClientResources.eventLoopThreads();
+        CountDownLatch stop = new CountDownLatch(1);
+        Thread eventLoop = new Thread(() -> {
+            try {
+                stop.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "nioEventLoopGroup-42-1");
+        eventLoop.start();
+
+        try {
+            // act
+            int during = ClientResources.eventLoopThreads();
+
+            // assert
+            assertEquals(before + 1, during);
+        } finally {
+            stop.countDown();
+            eventLoop.join();
+        }
+    }
+
+    @Test
+    void shouldDescribeGivenPoolAndCountThreadsOnlyWhenAsked() {
+        // arrange
+        TarantoolConnectionPool pool = new TarantoolConnectionPool(Long.MAX_VALUE / 2);
+
+        // act
+        String withoutThreads = ClientResources.describe(pool, false);
+        String withThreads = ClientResources.describe(pool, true);
+
+        // assert
+        assertFalse(withoutThreads.contains("event loop threads"));
+        assertTrue(withoutThreads.endsWith("pooled clients: 0"));
+        assertTrue(withThreads.startsWith("event loop threads: "));
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.client;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConnectionFanOutTest {
+
+    @Test
+    void shouldParseConnections() {
+        // act & assert
+        assertEquals(4, ConnectionFanOut.parse(" 4 "));
+        assertEquals(0, ConnectionFanOut.parse("AUTO"));
+        assertThrows(IllegalArgumentException.class, () -> ConnectionFanOut.parse("0"));
+        assertThrows(IllegalArgumentException.class, () -> ConnectionFanOut.parse("many"));
+    }
+
+    @Test
+    void shouldOpenSeveralConnectionsForFewSegments() {
+        // act
+        int connections = ConnectionFanOut.auto(4, 2, 2);
+
+        // assert
+        assertEquals(ConnectionFanOut.MAX_CONNECTIONS_PER_ROUTER, connections);
+    }
+
+    @Test
+    void shouldOpenSingleConnectionForManySegments() {
+        // act
+        int connections = ConnectionFanOut.auto(256, 4, 4);
+
+        // assert
+        assertEquals(1, connections);
+    }
+
+    @Test
+    void shouldSplitBudgetBetweenSegmentsSharingRouter() {
+        // act
+        int allRouters = ConnectionFanOut.auto(32, 8, 8);
+        int twoRouters = ConnectionFanOut.auto(32, 2, 8);
+
+        // assert
+        assertEquals(2, allRouters);
+        assertEquals(8, twoRouters);
+    }
+}
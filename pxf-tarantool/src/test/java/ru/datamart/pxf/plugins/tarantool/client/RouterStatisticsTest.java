@@ -0,0 +1,113 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.client;
+
+import io.tarantool.driver.exceptions.TarantoolClientException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouterStatisticsTest {
+    private static final String ROUTER = "10.0.0.1:3301";
+    private static final String OTHER_ROUTER = "10.0.0.2:3301";
+    private static final long EJECT_TIMEOUT = 1000L;
+
+    private final AtomicLong clock = new AtomicLong(1_000_000_000L);
+    private final RouterStatistics statistics = new RouterStatistics(clock::get);
+
+    @Test
+    void shouldExcludeUnhealthyRouter() {
+        // act
+        statistics.update(ROUTER, "unreachable", 1);
+        statistics.update(OTHER_ROUTER, "healthy", 1);
+
+        // assert
+        assertFalse(statistics.isAvailable(ROUTER));
+        assertTrue(statistics.isAvailable(OTHER_ROUTER));
+        assertTrue(statistics.isAvailable("10.0.0.3:3301"));
+    }
+
+    @Test
+    void shouldWeightByPriorityAndLatency() {
+        // arrange
+        statistics.update(ROUTER, "healthy", 1);
+        statistics.update(OTHER_ROUTER, "healthy", 2);
+        statistics.onComplete(ROUTER, 3_000_000L, null, EJECT_TIMEOUT);
+        statistics.onComplete(OTHER_ROUTER, 1_000_000L, null, EJECT_TIMEOUT);
+
+        // act
+        double weight = statistics.weight(ROUTER, 1_000_000L);
+        double otherWeight = statistics.weight(OTHER_ROUTER, 1_000_000L);
+
+        // assert
+        assertEquals(1.0 / 3, weight, 1e-9);
+        assertEquals(1.0 / 2, otherWeight, 1e-9);
+    }
+
+    @Test
+    void shouldAverageLatency() {
+        // act
+        statistics.onComplete(ROUTER, 1_000_000L, null, EJECT_TIMEOUT);
+        statistics.onComplete(ROUTER, 11_000_000L, null, EJECT_TIMEOUT);
+
+        // assert
+        assertEquals(2_000_000.0, statistics.latencyNanos(ROUTER), 1e-3);
+    }
+
+    @Test
+    void shouldEjectRouterFailingInARow() {
+        // arrange
+        for (int i = 0; i < RouterStatistics.FAILURES_TO_EJECT - 1; i++) {
+            statistics.onComplete(ROUTER, 1L, new TimeoutException(), EJECT_TIMEOUT);
+        }
+        assertTrue(statistics.isAvailable(ROUTER));
+
+        // act
+        statistics.onComplete(ROUTER, 1L, new TarantoolClientException(new TimeoutException()), EJECT_TIMEOUT);
+
+        // assert
+        assertFalse(statistics.isAvailable(ROUTER));
+        clock.addAndGet(EJECT_TIMEOUT * 1_000_000L);
+        assertTrue(statistics.isAvailable(ROUTER));
+    }
+
+    @Test
+    void shouldNotEjectOnDataErrors() {
+        // act
+        for (int i = 0; i < RouterStatistics.FAILURES_TO_EJECT * 2; i++) {
+            statistics.onComplete(ROUTER, 1L, new TarantoolClientException("Duplicate key exists"), EJECT_TIMEOUT);
+        }
+
+        // assert
+        assertTrue(statistics.isAvailable(ROUTER));
+    }
+
+    @Test
+    void shouldResetFailuresOnSuccess() {
+        // act
+        for (int i = 0; i < RouterStatistics.FAILURES_TO_EJECT * 2; i++) {
+            statistics.onComplete(ROUTER, 1L, i % 2 == 0 ? new TimeoutException() : null, EJECT_TIMEOUT);
+        }
+
+        // assert
+        assertTrue(statistics.isAvailable(ROUTER));
+    }
+}
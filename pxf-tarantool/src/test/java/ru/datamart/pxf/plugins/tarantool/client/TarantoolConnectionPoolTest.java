@@ -0,0 +1,212 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.client;
+
+import io.tarantool.driver.api.TarantoolClient;
+import io.tarantool.driver.api.TarantoolResult;
+import io.tarantool.driver.api.metadata.TarantoolMetadataOperations;
+import io.tarantool.driver.api.tuple.TarantoolTuple;
+import io.tarantool.driver.exceptions.TarantoolClientException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TarantoolConnectionPoolTest {
+    private static final ConnectionKey KEY = new ConnectionKey("localhost:3301", "user", "password", Arrays.asList(1, 2, 3));
+    private static final ConnectionKey OTHER_KEY = new ConnectionKey("localhost:3301", "other", "password", Arrays.asList(1, 2, 3));
+
+    @Mock
+    private TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>> client;
+
+    @Mock
+    private TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>> otherClient;
+
+    @Mock
+    private TarantoolMetadataOperations metadata;
+
+    private final TarantoolConnectionPool pool = new TarantoolConnectionPool(Long.MAX_VALUE / 2);
+    private final AtomicInteger created = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        pool.closeAll();
+    }
+
+    @Test
+    void shouldShareClientForSameKey() throws Exception {
+        // act
+        TarantoolConnection first = pool.acquire(KEY, 60_000L, this::newConnection);
+        TarantoolConnection second = pool.acquire(KEY, 60_000L, this::newConnection);
+        first.close();
+        second.close();
+
+        // assert
+        assertSame(first.getClient(), second.getClient());
+        assertEquals(1, created.get());
+        assertEquals(1, pool.size());
+        verify(client, never()).close();
+    }
+
+    @Test
+    void shouldCreateSeparateClientsForDifferentKeys() {
+        // act
+        TarantoolConnection first = pool.acquire(KEY, 60_000L, this::newConnection);
+        TarantoolConnection second = pool.acquire(OTHER_KEY, 60_000L, () -> new TarantoolConnection(otherClient, null));
+
+        // assert
+        assertNotSame(first.getClient(), second.getClient());
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    void shouldCloseIdleClient() throws Exception {
+        // arrange
+        TarantoolConnection connection = pool.acquire(KEY, 0L, this::newConnection);
+        connection.close();
+
+        // act
+        pool.maintain();
+
+        // assert
+        verify(client).close();
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    void shouldKeepLeasedClientOnMaintenance() throws Exception {
+        // arrange
+        pool.acquire(KEY, 0L, this::newConnection);
+
+        // act
+        pool.maintain();
+
+        // assert
+        verify(client, never()).close();
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    void shouldCloseUnhealthyIdleClient() throws Exception {
+        // arrange
+        CompletableFuture<java.util.List<?>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new TarantoolClientException("connection lost"));
+        when(client.eval(Mockito.anyString())).thenReturn(failed);
+        pool.acquire(KEY, 60_000L, this::newConnection).close();
+
+        // act
+        pool.maintain();
+
+        // assert
+        verify(client).close();
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    void shouldKeepHealthyIdleClient() throws Exception {
+        // arrange
+        when(client.eval(Mockito.anyString())).thenReturn(CompletableFuture.completedFuture(singletonList(true)));
+        pool.acquire(KEY, 60_000L, this::newConnection).close();
+
+        // act
+        pool.maintain();
+        TarantoolConnection connection = pool.acquire(KEY, 60_000L, this::newConnection);
+
+        // assert
+        assertSame(client, connection.getClient());
+        assertEquals(1, created.get());
+        verify(client, never()).close();
+    }
+
+    @Test
+    void shouldCloseInvalidatedClientAfterLastLease() throws Exception {
+        // arrange
+        TarantoolConnection connection = pool.acquire(KEY, 60_000L, this::newConnection);
+
+        // act
+        pool.invalidate(KEY, connection);
+        verify(client, never()).close();
+        connection.close();
+        connection.close();
+
+        // assert
+        verify(client, times(1)).close();
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    void shouldHandFreshClientOutWhileInvalidatedOneIsHeld() throws Exception {
+        // arrange
+        TarantoolConnection stale = pool.acquire(KEY, 60_000L, this::newConnection);
+        pool.invalidate(KEY, stale);
+
+        // act
+        TarantoolConnection fresh = pool.acquire(KEY, 60_000L, () -> new TarantoolConnection(otherClient, null));
+        pool.invalidate(KEY, stale);
+        stale.close();
+
+        // assert
+        assertSame(otherClient, fresh.getClient());
+        verify(client, times(1)).close();
+        verify(otherClient, never()).close();
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    void shouldReloadMetadataOfReusedClientAfterSchemaChange() throws Exception {
+        // arrange
+        when(client.metadata()).thenReturn(metadata);
+        when(metadata.refresh()).thenReturn(CompletableFuture.completedFuture(null));
+        TarantoolConnection first = pool.acquire(KEY, 60_000L, this::newConnection);
+        first.refreshMetadata(1L).get();
+        first.close();
+
+        // act
+        TarantoolConnection second = pool.acquire(KEY, 60_000L, this::newConnection);
+        second.refreshMetadata(1L).get();
+        verify(metadata, times(1)).refresh();
+        second.refreshMetadata(2L).get();
+        second.close();
+        TarantoolConnection third = pool.acquire(KEY, 60_000L, this::newConnection);
+        third.refreshMetadata(2L).get();
+        third.refreshMetadata(null).get();
+
+        // assert
+        assertEquals(1, created.get());
+        verify(metadata, times(3)).refresh();
+    }
+
+    private TarantoolConnection newConnection() {
+        created.incrementAndGet();
+        return new TarantoolConnection(client, null);
+    }
+}
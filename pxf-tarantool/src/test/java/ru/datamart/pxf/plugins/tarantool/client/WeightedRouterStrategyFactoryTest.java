@@ -0,0 +1,170 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.client;
+
+import io.tarantool.driver.api.connection.ConnectionSelectionStrategy;
+import io.tarantool.driver.api.connection.TarantoolConnection;
+import io.tarantool.driver.exceptions.NoAvailableConnectionsException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class WeightedRouterStrategyFactoryTest {
+    private static final String ROUTER = "10.0.0.1:3301";
+    private static final String OTHER_ROUTER = "10.0.0.2:3301";
+    private static final int SELECTIONS = 10_000;
+
+    @Mock
+    private TarantoolConnection connection;
+
+    @Mock
+    private TarantoolConnection otherConnection;
+
+    private final RouterStatistics statistics = new RouterStatistics(System::nanoTime);
+    private ConnectionSelectionStrategy strategy;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(connection.isConnected()).thenReturn(true);
+        lenient().when(connection.getRemoteAddress()).thenReturn(InetSocketAddress.createUnresolved("10.0.0.1", 3301));
+        lenient().when(otherConnection.isConnected()).thenReturn(true);
+        lenient().when(otherConnection.getRemoteAddress()).thenReturn(InetSocketAddress.createUnresolved("10.0.0.2", 3301));
+        strategy = new WeightedRouterStrategyFactory(statistics, 1000L).create(null, asList(connection, otherConnection));
+    }
+
+    @Test
+    void shouldSkipUnhealthyRouter() {
+        // arrange
+        statistics.update(OTHER_ROUTER, "unreachable", 1);
+
+        // act assert
+        for (int i = 0; i < 100; i++) {
+            assertEquals(ROUTER, RouterStatistics.key(strategy.next().getRemoteAddress()));
+        }
+    }
+
+    @Test
+    void shouldPreferFasterRouter() {
+        // arrange
+        statistics.onComplete(ROUTER, 1_000_000L, null, 1000L);
+        statistics.onComplete(OTHER_ROUTER, 4_000_000L, null, 1000L);
+
+        // act
+        Map<String, Integer> selections = select();
+
+        // assert
+        double share = selections.getOrDefault(ROUTER, 0) / (double) SELECTIONS;
+        assertEquals(0.8, share, 0.05);
+    }
+
+    @Test
+    void shouldPreferHigherPriority() {
+        // arrange
+        statistics.update(ROUTER, "healthy", 1);
+        statistics.update(OTHER_ROUTER, "healthy", 3);
+
+        // act
+        Map<String, Integer> selections = select();
+
+        // assert
+        double share = selections.getOrDefault(ROUTER, 0) / (double) SELECTIONS;
+        assertEquals(0.75, share, 0.05);
+    }
+
+    @Test
+    void shouldUseDegradedRouterWhenNoOtherConnected() {
+        // arrange
+        statistics.update(ROUTER, "unreachable", 1);
+        lenient().when(otherConnection.isConnected()).thenReturn(false);
+
+        // act assert
+        assertEquals(ROUTER, RouterStatistics.key(strategy.next().getRemoteAddress()));
+    }
+
+    @Test
+    void shouldRecordLatencyOfRequestsSentThroughSelectedConnection() {
+        // arrange
+        statistics.update(OTHER_ROUTER, "unreachable", 1);
+        CompletableFuture<Object> response = new CompletableFuture<>();
+        when(connection.sendRequest(any(), any())).thenReturn(response);
+        TarantoolConnection selected = strategy.next();
+
+        // act
+        selected.sendRequest(null, null);
+        response.complete(null);
+
+        // assert
+        assertTrue(statistics.latencyNanos(ROUTER) > 0);
+        assertEquals(0.0, statistics.latencyNanos(OTHER_ROUTER));
+    }
+
+    @Test
+    void shouldEjectRouterFailingRequestsSentThroughSelectedConnection() {
+        // arrange
+        when(connection.sendRequest(any(), any())).thenAnswer(invocation -> {
+            CompletableFuture<Object> response = new CompletableFuture<>();
+            response.completeExceptionally(new TimeoutException());
+            return response;
+        });
+        TarantoolConnection selected = new MeasuredConnection(connection, ROUTER, statistics, 1000L);
+
+        // act
+        for (int i = 0; i < RouterStatistics.FAILURES_TO_EJECT; i++) {
+            selected.sendRequest(null, null);
+        }
+
+        // assert
+        assertFalse(statistics.isAvailable(ROUTER));
+        assertTrue(statistics.isAvailable(OTHER_ROUTER));
+    }
+
+    @Test
+    void shouldFailWhenNothingConnected() {
+        // arrange
+        lenient().when(connection.isConnected()).thenReturn(false);
+        lenient().when(otherConnection.isConnected()).thenReturn(false);
+
+        // act assert
+        assertThrows(NoAvailableConnectionsException.class, () -> strategy.next());
+    }
+
+    private Map<String, Integer> select() {
+        Map<String, Integer> selections = new HashMap<>();
+        for (int i = 0; i < SELECTIONS; i++) {
+            selections.merge(RouterStatistics.key(strategy.next().getRemoteAddress()), 1, Integer::sum);
+        }
+        assertTrue(selections.size() <= 2);
+        return selections;
+    }
+}
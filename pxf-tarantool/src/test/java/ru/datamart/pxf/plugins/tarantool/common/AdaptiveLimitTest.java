@@ -0,0 +1,157 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AdaptiveLimitTest {
+    private static final long MS = 1_000_000L;
+
+    @Test
+    void shouldStartAtMinAndDoubleWhileLatencyIsStable() {
+        // arrange
+        FlowController flowController = new FlowController(1000);
+        AdaptiveLimit limit = new AdaptiveLimit(flowController, 10, 1000, 5000);
+
+        // act
+        completeWindow(limit, 2 * MS, null);
+        completeWindow(limit, 2 * MS, null);
+
+        // assert
+        assertEquals(40, flowController.getLimit());
+        assertEquals(40, limit.getPeakLimit());
+    }
+
+    @Test
+    void shouldDecreaseOnLatencyGrowthAndThenIncreaseAdditively() {
+        // arrange
+        FlowController flowController = new FlowController(1000);
+        AdaptiveLimit limit = new AdaptiveLimit(flowController, 10, 1000, 5000);
+        completeWindow(limit, 2 * MS, null);
+        completeWindow(limit, 2 * MS, null);
+
+        // act
+        completeWindow(limit, 10 * MS, null);
+        int decreased = flowController.getLimit();
+        completeWindow(limit, 2 * MS, null);
+
+        // assert
+        assertEquals(30, decreased);
+        assertEquals(31, flowController.getLimit());
+        assertEquals(1, limit.getDecreases());
+    }
+
+    @Test
+    void shouldDecreaseOnTimeout() {
+        // arrange
+        FlowController flowController = new FlowController(1000);
+        AdaptiveLimit limit = new AdaptiveLimit(flowController, 10, 1000, 5000);
+        completeWindow(limit, 2 * MS, null);
+
+        // act
+        limit.onComplete(2 * MS, new CompletionException(new TimeoutException()));
+        completeWindow(limit, 2 * MS, null);
+
+        // assert
+        assertEquals(15, flowController.getLimit());
+    }
+
+    @Test
+    void shouldDecreaseWhenLatencyApproachesRequestTimeout() {
+        // arrange
+        FlowController flowController = new FlowController(1000);
+        AdaptiveLimit limit = new AdaptiveLimit(flowController, 10, 1000, 100);
+
+        // act
+        completeWindow(limit, 60 * MS, null);
+
+        // assert
+        assertEquals(10, flowController.getLimit());
+        assertEquals(1, limit.getDecreases());
+    }
+
+    @Test
+    void shouldStayWithinBounds() {
+        // arrange
+        FlowController flowController = new FlowController(1000);
+        AdaptiveLimit limit = new AdaptiveLimit(flowController, 10, 50, 5000);
+
+        // act
+        for (int i = 0; i < 10; i++) {
+            completeWindow(limit, 2 * MS, null);
+        }
+        int max = flowController.getLimit();
+        for (int i = 0; i < 10; i++) {
+            completeWindow(limit, 100 * MS * (i + 1), null);
+        }
+
+        // assert
+        assertEquals(50, max);
+        assertEquals(10, flowController.getLimit());
+    }
+
+    @Test
+    void shouldEvaluateWindowsOfStoredSamplesOnly() throws Exception {
+        for (int attempt = 0; attempt < 200; attempt++) {
+            // arrange
+            AdaptiveLimit limit = new AdaptiveLimit(new FlowController(1000), 10, 1000, 5000);
+            CyclicBarrier start = new CyclicBarrier(4);
+            Thread[] threads = new Thread[4];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                    for (int j = 0; j < AdaptiveLimit.WINDOW; j++) {
+                        limit.onComplete(2 * MS, null);
+                    }
+                });
+            }
+
+            // act
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            // assert
+            assertEquals(2 * MS, limit.getBaselineNanos());
+        }
+    }
+
+    @Test
+    void shouldFailOnInvalidBounds() {
+        // act assert
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveLimit(new FlowController(1), 10, 5, 5000));
+    }
+
+    private static void completeWindow(AdaptiveLimit limit, long latencyNanos, Throwable error) {
+        for (int i = 0; i < AdaptiveLimit.WINDOW; i++) {
+            limit.onComplete(latencyNanos, error);
+        }
+    }
+}
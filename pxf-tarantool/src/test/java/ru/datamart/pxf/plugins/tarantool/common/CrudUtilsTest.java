@@ -0,0 +1,109 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.common;
+
+import io.tarantool.driver.exceptions.TarantoolClientException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CrudUtilsTest {
+    private static final int[] KEY = {0, 1};
+
+    @Test
+    void shouldMapErrorsToRowsByKey() {
+        // arrange
+        List<?> rows = asList(asList(1, "a", 10), asList(2, "b", 20), asList(3, "c", 30));
+        List<?> response = asList(null, singletonList(error("Duplicate key exists", asList(2L, "b", 20L))));
+
+        // act
+        Map<Integer, Throwable> errors = CrudUtils.rowErrors(response, rows, KEY);
+
+        // assert
+        assertEquals(Collections.singleton(1), errors.keySet());
+        assertEquals("Crud call failed: Duplicate key exists", errors.get(1).getMessage());
+    }
+
+    @Test
+    void shouldReturnNoErrorsForSucceededCall() {
+        // arrange
+        List<?> rows = singletonList(asList(1, "a", 10));
+
+        // act & assert
+        assertTrue(CrudUtils.rowErrors(asList(new HashMap<>(), null), rows, KEY).isEmpty());
+        assertTrue(CrudUtils.rowErrors(asList(null, Collections.emptyList()), rows, KEY).isEmpty());
+    }
+
+    @Test
+    void shouldFailWholeCallOnUnmatchedError() {
+        // arrange
+        List<?> rows = singletonList(asList(1, "a", 10));
+        List<?> response = asList(null, singletonList(error("Duplicate key exists", asList(5L, "e", 50L))));
+
+        // act & assert
+        assertThrows(TarantoolClientException.class, () -> CrudUtils.rowErrors(response, rows, KEY));
+    }
+
+    @Test
+    void shouldFailWholeCallOnSingleError() {
+        // arrange
+        List<?> rows = singletonList(asList(1, "a", 10));
+        List<?> response = asList(null, error("Space not found", null));
+
+        // act & assert
+        assertThrows(TarantoolClientException.class, () -> CrudUtils.rowErrors(response, rows, KEY));
+    }
+
+    @Test
+    void shouldJoinErrorsOfStorageResponses() {
+        // arrange
+        List<?> rows = asList(asList(1, "a", 10), asList(2, "b", 20), asList(3, "c", 30));
+        List<List<?>> responses = asList(
+                asList(singletonList(asList(1L, "a", 10L)), singletonList(error("Duplicate key exists", asList(3L, "c", 30L)))),
+                singletonList(singletonList(asList(2L, "b", 20L))));
+
+        // act
+        Map<Integer, Throwable> errors = CrudUtils.rowErrors(CrudUtils.joinResponses(responses), rows, KEY);
+
+        // assert
+        assertEquals(Collections.singleton(2), errors.keySet());
+    }
+
+    @Test
+    void shouldJoinSucceededStorageResponses() {
+        // act
+        List<?> response = CrudUtils.joinResponses(singletonList(singletonList(singletonList(asList(1L, "a", 10L)))));
+
+        // assert
+        assertEquals(asList(null, null), response);
+    }
+
+    private static Map<String, Object> error(String message, List<?> operationData) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("str", message);
+        error.put("operation_data", operationData);
+        return error;
+    }
+}
@@ -19,8 +19,11 @@ import org.greenplum.pxf.api.io.DataType;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -77,4 +80,24 @@ class DataUtilsTest {
 
         assertTrue(unexpected.isEmpty(), "There is UNEXPECTED DataType, handle it and register in this test.");
     }
-}
\ No newline at end of file
+
+    @Test
+    void messagePackSizeTest() {
+        assertEquals(1, DataUtils.messagePackSize((Object) null));
+        assertEquals(1, DataUtils.messagePackSize(true));
+        assertEquals(1, DataUtils.messagePackSize(127));
+        assertEquals(1, DataUtils.messagePackSize(-32));
+        assertEquals(2, DataUtils.messagePackSize(255));
+        assertEquals(2, DataUtils.messagePackSize(-128));
+        assertEquals(3, DataUtils.messagePackSize(65535L));
+        assertEquals(5, DataUtils.messagePackSize(65536L));
+        assertEquals(9, DataUtils.messagePackSize(Long.MAX_VALUE));
+        assertEquals(5, DataUtils.messagePackSize(1.5f));
+        assertEquals(9, DataUtils.messagePackSize(1.5d));
+        assertEquals(5, DataUtils.messagePackSize("test"));
+        assertEquals(3, DataUtils.messagePackSize("\u0436"));
+        assertEquals(5, DataUtils.messagePackSize("\uD83D\uDE00"));
+        assertEquals(34, DataUtils.messagePackSize(String.join("", Collections.nCopies(32, "a"))));
+        assertEquals(9, DataUtils.messagePackSize(Arrays.asList(1L, "test", null, false)));
+    }
+}
@@ -0,0 +1,294 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.common;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FlowControllerTest {
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shouldAcquireUpToLimitWithoutBlocking() throws Exception {
+        // arrange
+        FlowController flowController = new FlowController(3);
+
+        // act
+        flowController.acquire();
+        flowController.acquire();
+        flowController.acquire();
+
+        // assert
+        assertEquals(3, flowController.getInFlight());
+        assertEquals(3, flowController.getAcquired());
+    }
+
+    @Test
+    void shouldIgnoreReleasesAfterClose() throws Exception {
+        // arrange
+        FlowController flowController = new FlowController(2, 100L);
+        flowController.acquire(10L);
+        flowController.acquire(20L);
+
+        // act
+        flowController.close();
+        flowController.release(10L);
+        flowController.release(20L);
+        flowController.release(30L);
+
+        // assert
+        assertEquals(2, flowController.getInFlight());
+        assertEquals(30L, flowController.getInFlightBytes());
+    }
+
+    @Test
+    void shouldBlockAtLimitUntilReleased() throws Exception {
+        // arrange
+        FlowController flowController = new FlowController(1);
+        flowController.acquire();
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread writer = new Thread(() -> {
+            try {
+                flowController.acquire();
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        // act
+        writer.start();
+        boolean acquiredBeforeRelease = acquired.await(200, TimeUnit.MILLISECONDS);
+        flowController.release();
+
+        // assert
+        assertFalse(acquiredBeforeRelease);
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        writer.join(5000);
+        assertEquals(1, flowController.getInFlight());
+    }
+
+    @Test
+    void shouldNotLoseWakeupsUnderConcurrentReleases() throws Exception {
+        // arrange
+        FlowController flowController = new FlowController(4);
+        int tasks = 200_000;
+        AtomicLong maxInFlight = new AtomicLong();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+
+        // act
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < tasks; i++) {
+                    flowController.acquire();
+                    maxInFlight.accumulateAndGet(flowController.getInFlight(), Math::max);
+                    if (ThreadLocalRandom.current().nextBoolean()) {
+                        executor.execute(flowController::release);
+                    } else {
+                        flowController.release();
+                    }
+                }
+                flowController.awaitDrained(() -> false);
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        });
+        writer.start();
+        writer.join(30_000);
+
+        // assert
+        assertFalse(writer.isAlive(), "writer must not hang on a lost wakeup");
+        assertNull(error.get());
+        assertEquals(0, flowController.getInFlight());
+        assertEquals(tasks, flowController.getAcquired());
+        assertTrue(maxInFlight.get() <= 4);
+    }
+
+    @Test
+    void shouldReturnFromDrainWhenAllReleased() throws Exception {
+        // arrange
+        FlowController flowController = new FlowController(10);
+        for (int i = 0; i < 10; i++) {
+            flowController.acquire();
+        }
+
+        // act
+        for (int i = 0; i < 10; i++) {
+            executor.execute(flowController::release);
+        }
+        boolean drained = flowController.awaitDrained(() -> false);
+
+        // assert
+        assertTrue(drained);
+        assertEquals(0, flowController.getInFlight());
+    }
+
+    @Test
+    void shouldStopDrainOnStopCondition() throws Exception {
+        // arrange
+        FlowController flowController = new FlowController(10);
+        flowController.acquire();
+        flowController.acquire();
+        AtomicBoolean failed = new AtomicBoolean();
+
+        // act
+        executor.execute(() -> {
+            failed.set(true);
+            flowController.release();
+        });
+        boolean drained = flowController.awaitDrained(failed::get);
+
+        // assert
+        assertFalse(drained);
+        assertEquals(1, flowController.getInFlight());
+    }
+
+    @Test
+    void shouldWakeUpDrainWithoutRelease() throws Exception {
+        // arrange
+        FlowController flowController = new FlowController(10);
+        flowController.acquire();
+        AtomicBoolean failed = new AtomicBoolean();
+
+        // act
+        executor.execute(() -> {
+            failed.set(true);
+            flowController.wakeUp();
+        });
+        boolean drained = flowController.awaitDrained(failed::get);
+
+        // assert
+        assertFalse(drained);
+    }
+
+    @Test
+    void shouldThrowWhenInterrupted() throws Exception {
+        // arrange
+        FlowController flowController = new FlowController(1);
+        flowController.acquire();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                flowController.acquire();
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        });
+
+        // act
+        writer.start();
+        writer.interrupt();
+        writer.join(5000);
+
+        // assert
+        assertTrue(error.get() instanceof InterruptedException);
+    }
+
+    @Test
+    void shouldBlockWhenByteLimitReached() throws Exception {
+        // arrange
+        FlowController flowController = new FlowController(100, 1000L);
+        flowController.acquire(600L);
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread writer = new Thread(() -> {
+            try {
+                flowController.acquire(600L);
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        // act
+        writer.start();
+        boolean acquiredBeforeRelease = acquired.await(200, TimeUnit.MILLISECONDS);
+        executor.execute(() -> flowController.release(600L));
+
+        // assert
+        assertFalse(acquiredBeforeRelease);
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        writer.join(5000);
+        assertEquals(600L, flowController.getInFlightBytes());
+        assertEquals(600L, flowController.getPeakBytes());
+    }
+
+    @Test
+    void shouldLetOversizedRequestThroughWhenNothingInFlight() throws Exception {
+        // arrange
+        FlowController flowController = new FlowController(100, 1000L);
+
+        // act
+        flowController.acquire(5000L);
+
+        // assert
+        assertEquals(1, flowController.getInFlight());
+        assertEquals(5000L, flowController.getPeakBytes());
+    }
+
+    @Test
+    void shouldTrackPeakBytes() throws Exception {
+        // arrange
+        FlowController flowController = new FlowController(100, 1000L);
+
+        // act
+        flowController.acquire(300L);
+        flowController.acquire(400L);
+        flowController.release(300L);
+        flowController.acquire(100L);
+        flowController.release(400L);
+        flowController.release(100L);
+
+        // assert
+        assertEquals(0L, flowController.getInFlightBytes());
+        assertEquals(700L, flowController.getPeakBytes());
+    }
+
+    @Test
+    void shouldFailOnExtraRelease() {
+        // arrange
+        FlowController flowController = new FlowController(1);
+
+        // act assert
+        assertThrows(IllegalStateException.class, flowController::release);
+        assertEquals(0, flowController.getInFlight());
+    }
+
+    @Test
+    void shouldFailOnNonPositiveLimit() {
+        // act assert
+        assertThrows(IllegalArgumentException.class, () -> new FlowController(0));
+    }
+}
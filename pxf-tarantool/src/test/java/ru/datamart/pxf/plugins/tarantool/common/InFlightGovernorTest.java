@@ -0,0 +1,176 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InFlightGovernorTest {
+
+    @Test
+    void shouldUseSpareCapacityWhenNobodyWaits() throws Exception {
+        // arrange
+        InFlightGovernor governor = new InFlightGovernor(10, 0);
+        InFlightGovernor.Load large = governor.register();
+        governor.register();
+
+        // act
+        for (int i = 0; i < 10; i++) {
+            large.acquire(0);
+        }
+
+        // assert
+        assertEquals(10, governor.getTotalRequests());
+    }
+
+    @Test
+    void shouldBlockAtGlobalLimit() throws Exception {
+        // arrange
+        InFlightGovernor governor = new InFlightGovernor(2, 0);
+        InFlightGovernor.Load load = governor.register();
+        load.acquire(0);
+        load.acquire(0);
+
+        // act
+        CountDownLatch acquired = acquireAsync(load, 0);
+        boolean acquiredBeforeRelease = acquired.await(200, TimeUnit.MILLISECONDS);
+        load.release(0);
+
+        // assert
+        assertFalse(acquiredBeforeRelease);
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        assertEquals(2, governor.getTotalRequests());
+    }
+
+    @Test
+    void shouldLimitLargeLoadToFairShareWhileOthersWait() throws Exception {
+        // arrange
+        InFlightGovernor governor = new InFlightGovernor(10, 0);
+        InFlightGovernor.Load large = governor.register();
+        InFlightGovernor.Load small = governor.register();
+        for (int i = 0; i < 9; i++) {
+            large.acquire(0);
+        }
+        small.acquire(0);
+        CountDownLatch largeAcquired = acquireAsync(large, 0);
+        CountDownLatch smallAcquired = acquireAsync(small, 0);
+        Thread.sleep(100);
+
+        // act
+        large.release(0);
+        boolean smallProceeded = smallAcquired.await(5, TimeUnit.SECONDS);
+        boolean largeProceeded = largeAcquired.await(200, TimeUnit.MILLISECONDS);
+
+        // assert
+        assertTrue(smallProceeded);
+        assertFalse(largeProceeded);
+        assertEquals(10, governor.getTotalRequests());
+    }
+
+    @Test
+    void shouldGrantReleasedCapacityToWaitersInOrder() throws Exception {
+        // arrange
+        InFlightGovernor governor = new InFlightGovernor(0, 1000);
+        InFlightGovernor.Load load = governor.register();
+        load.acquire(500);
+        load.acquire(500);
+        CountDownLatch first = acquireAsync(load, 600);
+        Thread.sleep(100);
+        CountDownLatch second = acquireAsync(load, 100);
+        Thread.sleep(100);
+
+        // act
+        load.release(500);
+        boolean secondOvertook = second.await(200, TimeUnit.MILLISECONDS);
+        load.release(500);
+
+        // assert
+        assertFalse(secondOvertook);
+        assertTrue(first.await(5, TimeUnit.SECONDS));
+        assertTrue(second.await(5, TimeUnit.SECONDS));
+        assertEquals(700, governor.getTotalBytes());
+    }
+
+    @Test
+    void shouldAlwaysAllowOneRequestPerLoad() throws Exception {
+        // arrange
+        InFlightGovernor governor = new InFlightGovernor(1, 100);
+        InFlightGovernor.Load first = governor.register();
+        InFlightGovernor.Load second = governor.register();
+        first.acquire(100);
+
+        // act
+        second.acquire(1000);
+
+        // assert
+        assertEquals(2, governor.getTotalRequests());
+        assertEquals(1100, governor.getTotalBytes());
+    }
+
+    @Test
+    void shouldBlockAtGlobalByteLimit() throws Exception {
+        // arrange
+        InFlightGovernor governor = new InFlightGovernor(0, 1000);
+        InFlightGovernor.Load load = governor.register();
+        load.acquire(800);
+
+        // act
+        CountDownLatch acquired = acquireAsync(load, 300);
+        boolean acquiredBeforeRelease = acquired.await(200, TimeUnit.MILLISECONDS);
+        load.release(800);
+
+        // assert
+        assertFalse(acquiredBeforeRelease);
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        assertEquals(300, governor.getTotalBytes());
+        assertTrue(load.getWaitNanos() > 0);
+    }
+
+    @Test
+    void shouldUnregisterOnClose() {
+        // arrange
+        InFlightGovernor governor = new InFlightGovernor(0, 0);
+        InFlightGovernor.Load load = governor.register();
+
+        // act
+        load.close();
+        load.close();
+
+        // assert
+        assertEquals(0, governor.getLoads());
+    }
+
+    private static CountDownLatch acquireAsync(InFlightGovernor.Load load, long size) {
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            try {
+                load.acquire(size);
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return acquired;
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.common;
+
+import org.greenplum.pxf.api.OneField;
+import org.greenplum.pxf.api.io.DataType;
+import org.greenplum.pxf.api.utilities.ColumnDescriptor;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RowConverterTest {
+    private static final List<ColumnDescriptor> COLUMNS = Arrays.asList(
+            new ColumnDescriptor("id", DataType.BIGINT.getOID(), 0, null, null),
+            new ColumnDescriptor("name", DataType.VARCHAR.getOID(), 1, null, null),
+            new ColumnDescriptor("active", DataType.BOOLEAN.getOID(), 2, null, null),
+            new ColumnDescriptor("rate", DataType.FLOAT8.getOID(), 3, null, null));
+
+    @Test
+    void shouldConvertRow() {
+        // arrange
+        RowConverter converter = RowConverter.forColumns(COLUMNS);
+
+        // act
+        List<Object> row = converter.convert(Arrays.asList(
+                new OneField(DataType.BIGINT.getOID(), 1L),
+                new OneField(DataType.VARCHAR.getOID(), "test"),
+                new OneField(DataType.BOOLEAN.getOID(), null),
+                new OneField(DataType.FLOAT8.getOID(), 1.5d)));
+
+        // assert
+        assertEquals(Arrays.asList(1L, "test", null, 1.5d), row);
+    }
+
+    @Test
+    void shouldFailOnUnsupportedColumnType() {
+        // arrange
+        List<ColumnDescriptor> columns = Arrays.asList(
+                new ColumnDescriptor("id", DataType.BIGINT.getOID(), 0, null, null),
+                new ColumnDescriptor("created", DataType.DATE.getOID(), 1, "date", null));
+
+        // act
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> RowConverter.forColumns(columns));
+
+        // assert
+        assertTrue(exception.getMessage().contains("created"));
+    }
+
+    @Test
+    void shouldValidateFieldsOfUnexpectedType() {
+        // arrange
+        RowConverter converter = RowConverter.forColumns(COLUMNS);
+
+        // act assert
+        assertThrows(IllegalArgumentException.class, () -> converter.convert(Arrays.asList(
+                new OneField(DataType.BIGINT.getOID(), 1L),
+                new OneField(DataType.VARCHAR.getOID(), "test"),
+                new OneField(DataType.BOOLEAN.getOID(), true),
+                new OneField(DataType.DATE.getOID(), "2022-01-01"))));
+    }
+
+    @Test
+    void shouldFailOnFieldsCountMismatch() {
+        // arrange
+        RowConverter converter = RowConverter.forColumns(COLUMNS);
+
+        // act assert
+        assertThrows(IllegalArgumentException.class, () -> converter.convert(Arrays.asList(
+                new OneField(DataType.BIGINT.getOID(), 1L))));
+    }
+}
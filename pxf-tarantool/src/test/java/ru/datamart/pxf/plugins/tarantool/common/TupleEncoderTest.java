@@ -0,0 +1,157 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.common;
+
+import org.greenplum.pxf.api.io.DataType;
+import org.greenplum.pxf.api.utilities.ColumnDescriptor;
+import io.tarantool.driver.mappers.DefaultMessagePackMapperFactory;
+import io.tarantool.driver.mappers.MessagePackMapper;
+import org.junit.jupiter.api.Test;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+import ru.datamart.pxf.plugins.tarantool.client.EncodedTuple;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class TupleEncoderTest {
+    private static final int MEASURED_ROWS = 100_000;
+    private static final List<ColumnDescriptor> COLUMNS = Arrays.asList(
+            new ColumnDescriptor("id", DataType.BIGINT.getOID(), 0, null, null),
+            new ColumnDescriptor("name", DataType.TEXT.getOID(), 1, null, null),
+            new ColumnDescriptor("active", DataType.BOOLEAN.getOID(), 2, null, null));
+
+    @Test
+    void shouldEncodeRowAsArray() throws IOException {
+        // arrange
+        TupleEncoder encoder = TupleEncoder.forColumns(COLUMNS);
+        MessageBufferPacker expected = MessagePack.newDefaultBufferPacker();
+        expected.packArrayHeader(3).packLong(1L).packString("ab").packBoolean(true);
+
+        // act
+        EncodedTuple tuple = encoder.encode(Arrays.asList(1L, "ab", true));
+
+        // assert
+        assertArrayEquals(expected.toByteArray(), tuple.getBytes());
+        assertEquals(6, tuple.size());
+    }
+
+    @Test
+    void shouldEncodeNulls() throws IOException {
+        // arrange
+        TupleEncoder encoder = TupleEncoder.forColumns(COLUMNS);
+        MessageBufferPacker expected = MessagePack.newDefaultBufferPacker();
+        expected.packArrayHeader(3).packNil().packNil().packNil();
+
+        // act
+        EncodedTuple tuple = encoder.encode(Arrays.asList(null, null, null));
+
+        // assert
+        assertArrayEquals(expected.toByteArray(), tuple.getBytes());
+        assertEquals(4, tuple.size());
+    }
+
+    @Test
+    void shouldReadFieldsOfEncodedRow() {
+        // arrange
+        TupleEncoder encoder = TupleEncoder.forColumns(COLUMNS);
+
+        // act
+        EncodedTuple first = encoder.encode(Arrays.asList(7L, "строка", true));
+        EncodedTuple second = encoder.encode(Arrays.asList(8L, null, false));
+
+        // assert
+        assertEquals(Arrays.asList(true, 7L, "строка"), first.fields(new int[]{2, 0, 1}));
+        assertEquals(Arrays.asList(8L, null), second.fields(new int[]{0, 1}));
+    }
+
+    @Test
+    void shouldAllocateLessThanDriverMapper() throws IOException {
+        // arrange
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        long threadId = Thread.currentThread().getId();
+        TupleEncoder encoder = TupleEncoder.forColumns(COLUMNS);
+        MessagePackMapper mapper = DefaultMessagePackMapperFactory.getInstance().defaultComplexTypesMapper();
+        MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+        List<?> row = Arrays.asList(1L, "строка", true);
+        for (int i = 0; i < MEASURED_ROWS; i++) {
+            encoder.encode(row);
+            packer.clear();
+            packer.packValue(mapper.toValue(row));
+        }
+
+        // act
+        long start = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_ROWS; i++) {
+            encoder.encode(row);
+        }
+        long encoderBytes = threads.getThreadAllocatedBytes(threadId) - start;
+        start = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_ROWS; i++) {
+            packer.clear();
+            packer.packValue(mapper.toValue(row));
+        }
+        long mapperBytes = threads.getThreadAllocatedBytes(threadId) - start;
+
+        // assert
+        assertTrue(encoderBytes < mapperBytes, String.format("Allocated per row by encoder: %d bytes, by driver mapper: %d bytes",
+                encoderBytes / MEASURED_ROWS, mapperBytes / MEASURED_ROWS));
+    }
+
+    @Test
+    void shouldMatchMessagePackSize() {
+        // arrange
+        TupleEncoder encoder = TupleEncoder.forColumns(COLUMNS);
+        List<?> first = Arrays.asList(Long.MAX_VALUE, "строка", false);
+        List<?> second = Arrays.asList(-100L, String.join("", java.util.Collections.nCopies(300, "x")), null);
+
+        // act
+        EncodedTuple firstTuple = encoder.encode(first);
+        EncodedTuple secondTuple = encoder.encode(second);
+
+        // assert
+        assertEquals(DataUtils.messagePackSize(first), firstTuple.size());
+        assertEquals(DataUtils.messagePackSize(second), secondTuple.size());
+    }
+
+    @Test
+    void shouldFailOnUnsupportedColumnType() {
+        // arrange
+        List<ColumnDescriptor> columns = Arrays.asList(
+                new ColumnDescriptor("created", DataType.DATE.getOID(), 0, "date", null));
+
+        // act assert
+        assertThrows(IllegalArgumentException.class, () -> TupleEncoder.forColumns(columns));
+    }
+
+    @Test
+    void shouldFailOnFieldsCountMismatch() {
+        // arrange
+        TupleEncoder encoder = TupleEncoder.forColumns(COLUMNS);
+
+        // act assert
+        assertThrows(IllegalArgumentException.class, () -> encoder.encode(Arrays.asList(1L, "test")));
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.common;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteAggregatorTest {
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final WriteAggregator aggregator = new WriteAggregator(scheduler);
+    private final List<List<?>> sent = new ArrayList<>();
+    private final List<String> senders = new ArrayList<>();
+
+    private WriteAggregator.BatchSender sender(String name) {
+        return rows -> {
+            synchronized (sent) {
+                sent.add(new ArrayList<>(rows));
+                senders.add(name);
+            }
+            return CompletableFuture.completedFuture(Collections.emptyMap());
+        };
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void shouldMergeBatchesUpToSize() throws Exception {
+        // arrange
+        WriteAggregator.Member first = aggregator.register("space", 4, Long.MAX_VALUE, 60_000L, sender("first"));
+        WriteAggregator.Member second = aggregator.register("space", 4, Long.MAX_VALUE, 60_000L, sender("second"));
+
+        // act
+        CompletableFuture<Void> firstFuture = first.submit(asList(1, 2), 0L, false);
+        CompletableFuture<Void> secondFuture = second.submit(asList(3, 4), 0L, false);
+
+        // assert
+        assertEquals(1, aggregator.getPipelines());
+        assertEquals(singletonList(asList(1, 2, 3, 4)), sent);
+        assertEquals(singletonList("second"), senders);
+        firstFuture.get();
+        secondFuture.get();
+    }
+
+    @Test
+    void shouldSendOnLastSubmission() {
+        // arrange
+        WriteAggregator.Member member = aggregator.register("space", 100, Long.MAX_VALUE, 60_000L, sender("member"));
+
+        // act
+        CompletableFuture<Void> pending = member.submit(asList(1, 2), 0L, false);
+        CompletableFuture<Void> last = member.submit(singletonList(3), 0L, true);
+
+        // assert
+        assertTrue(pending.isDone());
+        assertTrue(last.isDone());
+        assertEquals(singletonList(asList(1, 2, 3)), sent);
+    }
+
+    @Test
+    void shouldSendByBytes() {
+        // arrange
+        WriteAggregator.Member member = aggregator.register("space", 100, 10L, 60_000L, sender("member"));
+
+        // act
+        member.submit(singletonList(1), 6L, false);
+        member.submit(singletonList(2), 6L, false);
+
+        // assert
+        assertEquals(singletonList(asList(1, 2)), sent);
+    }
+
+    @Test
+    void shouldFlushOnlyBatchWithOwnRows() {
+        // arrange
+        WriteAggregator.Member first = aggregator.register("space", 100, Long.MAX_VALUE, 60_000L, sender("first"));
+        WriteAggregator.Member second = aggregator.register("space", 100, Long.MAX_VALUE, 60_000L, sender("second"));
+        first.submit(asList(1, 2), 0L, false);
+
+        // act
+        second.flush();
+        int afterForeignFlush = sent.size();
+        first.flush();
+
+        // assert
+        assertEquals(0, afterForeignFlush);
+        assertEquals(singletonList(asList(1, 2)), sent);
+        assertEquals(singletonList("first"), senders);
+    }
+
+    @Test
+    void shouldSendLingeringBatch() throws Exception {
+        // arrange
+        WriteAggregator.Member member = aggregator.register("space", 100, Long.MAX_VALUE, 10L, sender("member"));
+
+        // act
+        CompletableFuture<Void> future = member.submit(singletonList(1), 0L, false);
+
+        // assert
+        future.get(5, TimeUnit.SECONDS);
+        assertEquals(singletonList(singletonList(1)), sent);
+    }
+
+    @Test
+    void shouldFailEverySubmitterOfFailedBatch() {
+        // arrange
+        WriteAggregator.BatchSender failingSender = rows -> {
+            CompletableFuture<Map<Integer, Throwable>> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalStateException("failed"));
+            return future;
+        };
+        WriteAggregator.Member first = aggregator.register("space", 2, Long.MAX_VALUE, 60_000L, failingSender);
+        WriteAggregator.Member second = aggregator.register("space", 2, Long.MAX_VALUE, 60_000L, failingSender);
+
+        // act
+        CompletableFuture<Void> firstFuture = first.submit(singletonList(1), 0L, false);
+        CompletableFuture<Void> secondFuture = second.submit(singletonList(2), 0L, false);
+
+        // assert
+        ExecutionException error = assertThrows(ExecutionException.class, firstFuture::get);
+        assertEquals("failed", error.getCause().getMessage());
+        assertTrue(secondFuture.isCompletedExceptionally());
+    }
+
+    @Test
+    void shouldFailOnlySubmitterOfRejectedRows() {
+        // arrange
+        WriteAggregator.BatchSender rejectingSender = rows ->
+                CompletableFuture.completedFuture(Collections.singletonMap(2, new IllegalStateException("rejected")));
+        WriteAggregator.Member first = aggregator.register("space", 4, Long.MAX_VALUE, 60_000L, rejectingSender);
+        WriteAggregator.Member second = aggregator.register("space", 4, Long.MAX_VALUE, 60_000L, rejectingSender);
+
+        // act
+        CompletableFuture<Void> firstFuture = first.submit(asList(1, 2), 0L, false);
+        CompletableFuture<Void> secondFuture = second.submit(asList(3, 4), 0L, false);
+
+        // assert
+        assertTrue(firstFuture.isDone());
+        assertFalse(firstFuture.isCompletedExceptionally());
+        ExecutionException error = assertThrows(ExecutionException.class, secondFuture::get);
+        assertEquals("rejected", error.getCause().getMessage());
+    }
+
+    @Test
+    void shouldHandOffPendingBatchOnClose() {
+        // arrange
+        WriteAggregator.Member first = aggregator.register("space", 100, Long.MAX_VALUE, 60_000L, sender("first"));
+        WriteAggregator.Member second = aggregator.register("space", 100, Long.MAX_VALUE, 60_000L, sender("second"));
+        first.submit(singletonList(1), 0L, false);
+        second.submit(singletonList(2), 0L, false);
+
+        // act
+        second.close();
+        int afterClose = sent.size();
+        first.flush();
+
+        // assert
+        assertEquals(0, afterClose);
+        assertEquals(singletonList(asList(1, 2)), sent);
+        assertEquals(singletonList("first"), senders);
+    }
+
+    @Test
+    void shouldSendPendingBatchWhenLastContributorCloses() {
+        // arrange
+        WriteAggregator.Member first = aggregator.register("space", 100, Long.MAX_VALUE, 60_000L, sender("first"));
+        WriteAggregator.Member second = aggregator.register("space", 100, Long.MAX_VALUE, 60_000L, sender("second"));
+        CompletableFuture<Void> future = second.submit(singletonList(1), 0L, false);
+
+        // act
+        second.close();
+
+        // assert
+        assertTrue(future.isDone());
+        assertEquals(singletonList(singletonList(1)), sent);
+        assertEquals(singletonList("second"), senders);
+        first.close();
+    }
+
+    @Test
+    void shouldRemovePipelineWhenLastUserCloses() {
+        // arrange
+        WriteAggregator.Member first = aggregator.register("space", 2, Long.MAX_VALUE, 60_000L, sender("first"));
+        WriteAggregator.Member second = aggregator.register("space", 2, Long.MAX_VALUE, 60_000L, sender("second"));
+
+        // act
+        first.close();
+        int afterFirst = aggregator.getPipelines();
+        second.close();
+
+        // assert
+        assertEquals(1, afterFirst);
+        assertEquals(0, aggregator.getPipelines());
+    }
+}
@@ -43,12 +43,15 @@ import ru.datamart.pxf.plugins.tarantool.common.TestTarantoolIndexPartMetadata;
 import ru.datamart.pxf.plugins.tarantool.discovery.DiscoveryClientProvider;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
 import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
@@ -128,6 +131,7 @@ class TarantoolAccessorTest {
 
         lenient().when(discoveryClientProvider.provide(any(), any())).thenAnswer(invocation -> clientDiscovery);
         lenient().when(clientOperations.metadata()).thenReturn(tarantoolMetadataOperations);
+        lenient().when(tarantoolMetadataOperations.refresh()).thenReturn(CompletableFuture.completedFuture(null));
 
         TestTarantoolIndexMetadata primaryIndexMetadata = new TestTarantoolIndexMetadata();
         primaryIndexMetadata.setIndexParts(Arrays.asList(new TestTarantoolIndexPartMetadata(0, "integer", "id"),
@@ -219,7 +223,7 @@ class TarantoolAccessorTest {
 
         // assert
         verify(clientOperations).space(Mockito.eq(SPACE));
-        verify(clientOperations).metadata();
+        verify(clientOperations, times(2)).metadata();
         verify(clientOperations).close();
         verifyNoMoreInteractions(clientOperations);
 
@@ -253,7 +257,7 @@ class TarantoolAccessorTest {
 
         // assert
         verify(clientOperations).space(Mockito.eq(SPACE));
-        verify(clientOperations).metadata();
+        verify(clientOperations, times(2)).metadata();
         verify(clientOperations).close();
         verifyNoMoreInteractions(clientOperations);
 
@@ -261,6 +265,98 @@ class TarantoolAccessorTest {
         verifyNoMoreInteractions(spaceOperations);
     }
 
+    @Test
+    void shouldDeleteInBatches() throws Exception {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.batch.size", "2");
+        context.getAdditionalConfigProps().put("tarantool.cartridge.batch.delete.function", "crud.delete_many");
+        when(clientOperations.call(Mockito.eq("crud.delete_many"), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(asList(new HashMap<>(), null)));
+
+        // act
+        tarantoolDeleteAccessor.initialize(context);
+        assertTrue(tarantoolDeleteAccessor.openForWrite());
+        assertTrue(tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(1L, "test", 1))));
+        assertTrue(tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(2L, "test2", 2))));
+        assertTrue(tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(3L, "test3", 3))));
+        tarantoolDeleteAccessor.closeForWrite();
+
+        // assert
+        verify(clientOperations).call(Mockito.eq("crud.delete_many"), Mockito.eq(asList(SPACE,
+                asList(asList(1L, "test", 1), asList(2L, "test2", 2)))));
+        verify(clientOperations).call(Mockito.eq("crud.delete_many"), Mockito.eq(asList(SPACE,
+                singletonList(asList(3L, "test3", 3)))));
+        verify(spaceOperations, never()).delete(Mockito.any());
+    }
+
+    @Test
+    void shouldDeleteWithoutReturn() throws Exception {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.write.noreturn", "true");
+        when(clientOperations.call(Mockito.eq("crud.delete"), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(asList(null, null)));
+
+        // act
+        tarantoolDeleteAccessor.initialize(context);
+        assertTrue(tarantoolDeleteAccessor.openForWrite());
+        assertTrue(tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(1L, "test", 1))));
+        tarantoolDeleteAccessor.closeForWrite();
+
+        // assert
+        verify(clientOperations).call("crud.delete", asList(SPACE, asList(1L, "test", 1),
+                Collections.singletonMap("noreturn", true)));
+        verify(spaceOperations, never()).delete(Mockito.any());
+    }
+
+    @Test
+    void shouldDeleteInBatchesWithCustomFunction() throws Exception {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.batch.size", "10");
+        context.getAdditionalConfigProps().put("tarantool.cartridge.batch.delete.function", "delete_by_keys");
+        when(clientOperations.call(Mockito.eq("delete_by_keys"), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(singletonList(true)));
+
+        // act
+        tarantoolDeleteAccessor.initialize(context);
+        tarantoolDeleteAccessor.openForWrite();
+        tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(1L, "test", 1)));
+        tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(2L, "test2", 2)));
+        tarantoolDeleteAccessor.closeForWrite();
+
+        // assert
+        verify(clientOperations).call(Mockito.eq("delete_by_keys"), Mockito.eq(asList(SPACE,
+                asList(asList(1L, "test", 1), asList(2L, "test2", 2)))));
+    }
+
+    @Test
+    void shouldFailWhenBatchDeleteFailed() throws Exception {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.batch.size", "2");
+        context.getAdditionalConfigProps().put("tarantool.cartridge.batch.delete.function", "crud.delete_many");
+        CompletableFuture<List<?>> value = new CompletableFuture<>();
+        value.completeExceptionally(new RuntimeException("Exception"));
+        when(clientOperations.call(Mockito.eq("crud.delete_many"), Mockito.anyList())).thenReturn(value);
+
+        // act
+        tarantoolDeleteAccessor.initialize(context);
+        tarantoolDeleteAccessor.openForWrite();
+        tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(1L, "test", 1)));
+        assertThrows(IllegalStateException.class, () -> tarantoolDeleteAccessor.closeForWrite());
+
+        // assert
+        verify(clientOperations).call(Mockito.eq("crud.delete_many"), Mockito.anyList());
+        verify(clientOperations).close();
+    }
+
+    @Test
+    void shouldRequireBatchDeleteFunction() {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.batch.size", "2");
+
+        // act & assert
+        assertThrows(IllegalArgumentException.class, () -> tarantoolDeleteAccessor.initialize(context));
+    }
+
     @Test
     void validateConfigOfDiscovery() throws Exception {
         // act
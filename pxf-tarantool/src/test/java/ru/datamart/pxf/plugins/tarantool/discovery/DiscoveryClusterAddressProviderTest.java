@@ -27,17 +27,22 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import ru.datamart.pxf.plugins.tarantool.client.RouterStatistics;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyMap;
 import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.*;
 
@@ -70,6 +75,9 @@ class DiscoveryClusterAddressProviderTest {
     @Mock
     private DiscoveryClientProvider discoveryClientProvider;
 
+    @Mock
+    private RouterStatistics routerStatistics;
+
     private DiscoveryClusterAddressProvider discoveryClusterAddressProvider;
 
     @BeforeEach
@@ -102,6 +110,22 @@ class DiscoveryClusterAddressProviderTest {
         ));
     }
 
+    @Test
+    void shouldReturnPrefetchedServersWithoutDiscoveringAgain() throws Exception {
+        // arrange
+        when(tarantoolClient.eval(Mockito.anyString())).thenReturn(CompletableFuture.completedFuture(asList(CORRECT_RESULT)));
+
+        // act
+        Collection<TarantoolServerAddress> prefetched = discoveryClusterAddressProvider.prefetch();
+        Collection<TarantoolServerAddress> addresses = discoveryClusterAddressProvider.getAddresses();
+        discoveryClusterAddressProvider.getAddresses();
+
+        // assert
+        assertEquals(2, prefetched.size());
+        assertEquals(prefetched, addresses);
+        verify(tarantoolClient, times(2)).eval(Mockito.anyString());
+    }
+
     @Test
     void failOnCloseAfterSuccessfulCall() throws Exception {
         // arrange
@@ -180,4 +204,122 @@ class DiscoveryClusterAddressProviderTest {
         verify(tarantoolClient).close();
     }
 
+    @Test
+    void discoverServersWithFunction() throws Exception {
+        // arrange
+        discoveryClusterAddressProvider = new DiscoveryClusterAddressProvider(TarantoolClientConfig.builder().build(),
+                singletonList(new TarantoolServerAddress(HOST)), discoveryClientProvider, "discover_routers", null, 0, 0, routerStatistics);
+        when(tarantoolClient.call("discover_routers")).thenReturn(CompletableFuture.completedFuture(asList(CORRECT_RESULT)));
+
+        // act
+        Collection<TarantoolServerAddress> addresses = discoveryClusterAddressProvider.getAddresses();
+
+        // assert
+        verify(tarantoolClient).call("discover_routers");
+        verify(tarantoolClient, never()).eval(Mockito.anyString());
+        assertThat(addresses, hasSize(2));
+    }
+
+    @Test
+    void fallBackToEvalWhenFunctionNotRegistered() throws Exception {
+        // arrange
+        discoveryClusterAddressProvider = new DiscoveryClusterAddressProvider(TarantoolClientConfig.builder().build(),
+                singletonList(new TarantoolServerAddress(HOST)), discoveryClientProvider, "discover_routers", null, 0, 0, routerStatistics);
+        CompletableFuture<List<?>> undefined = new CompletableFuture<>();
+        undefined.completeExceptionally(new RuntimeException("Procedure 'discover_routers' is not defined"));
+        when(tarantoolClient.call("discover_routers")).thenReturn(undefined);
+        when(tarantoolClient.eval(Mockito.anyString())).thenReturn(CompletableFuture.completedFuture(asList(CORRECT_RESULT)));
+
+        // act
+        Collection<TarantoolServerAddress> addresses = discoveryClusterAddressProvider.getAddresses();
+
+        // assert
+        verify(tarantoolClient).eval(Mockito.anyString());
+        assertThat(addresses, hasSize(2));
+    }
+
+    @Test
+    void discoverOnceWithCache() throws Exception {
+        // arrange
+        TopologyCache topologyCache = new TopologyCache(Runnable::run, System::currentTimeMillis, null);
+        discoveryClusterAddressProvider = new DiscoveryClusterAddressProvider(TarantoolClientConfig.builder().build(),
+                singletonList(new TarantoolServerAddress(HOST)), discoveryClientProvider, null, topologyCache, 60_000L, 0, routerStatistics);
+        when(tarantoolClient.eval(Mockito.anyString())).thenReturn(CompletableFuture.completedFuture(asList(CORRECT_RESULT)));
+
+        // act
+        discoveryClusterAddressProvider.getAddresses();
+        Collection<TarantoolServerAddress> addresses = discoveryClusterAddressProvider.getAddresses();
+
+        // assert
+        verify(discoveryClientProvider, times(1)).provide(Mockito.any(), Mockito.any());
+        verify(tarantoolClient, times(1)).eval(Mockito.anyString());
+        assertThat(addresses, hasSize(2));
+    }
+
+
+    @Test
+    void discoverServersFromFirstAnsweringSeed() throws Exception {
+        // arrange
+        TarantoolServerAddress deadSeed = new TarantoolServerAddress("127.0.0.2:1343");
+        discoveryClusterAddressProvider = new DiscoveryClusterAddressProvider(TarantoolClientConfig.builder().build(),
+                asList(deadSeed, new TarantoolServerAddress(HOST)), discoveryClientProvider, null, null, 0, 0, routerStatistics);
+        when(discoveryClientProvider.provide(Mockito.any(), Mockito.eq(deadSeed))).thenThrow(new RuntimeException("Connection refused"));
+        when(tarantoolClient.eval(Mockito.anyString())).thenReturn(CompletableFuture.completedFuture(asList(CORRECT_RESULT)));
+
+        // act
+        Collection<TarantoolServerAddress> addresses = discoveryClusterAddressProvider.getAddresses();
+
+        // assert
+        assertThat(addresses, hasSize(2));
+    }
+
+    @Test
+    void shouldThrowWhenAllSeedsFail() {
+        // arrange
+        discoveryClusterAddressProvider = new DiscoveryClusterAddressProvider(TarantoolClientConfig.builder().build(),
+                asList(new TarantoolServerAddress("127.0.0.2:1343"), new TarantoolServerAddress(HOST)), discoveryClientProvider,
+                null, null, 0, 0, routerStatistics);
+        when(discoveryClientProvider.provide(Mockito.any(), Mockito.any())).thenThrow(new RuntimeException("Connection refused"));
+
+        // act assert
+        assertThrows(TarantoolClientException.class, () -> discoveryClusterAddressProvider.getAddresses());
+    }
+
+    @Test
+    void shouldReconnectClientWhenRoutersChanged() throws Exception {
+        // arrange
+        Map<String, Map<String, String>> changedResult = new HashMap<>(CORRECT_RESULT);
+        changedResult.put("key3", singletonMap("uri", "10.10.10.11:3333"));
+        when(tarantoolClient.eval(Mockito.anyString())).thenReturn(
+                CompletableFuture.completedFuture(asList(CORRECT_RESULT)),
+                CompletableFuture.completedFuture(asList(CORRECT_RESULT)),
+                CompletableFuture.completedFuture(asList(changedResult)));
+        AtomicInteger reconnects = new AtomicInteger();
+        discoveryClusterAddressProvider.getAddresses();
+
+        // act
+        discoveryClusterAddressProvider.refresh(reconnects::incrementAndGet);
+        discoveryClusterAddressProvider.refresh(reconnects::incrementAndGet);
+
+        // assert
+        assertEquals(1, reconnects.get());
+    }
+
+    @Test
+    void shouldReportRoutersToGivenStatistics() throws Exception {
+        // arrange
+        Map<String, Object> router = new HashMap<>();
+        router.put("uri", "localhost:1111");
+        router.put("status", "healthy");
+        router.put("priority", 2);
+        discoveryClusterAddressProvider = new DiscoveryClusterAddressProvider(TarantoolClientConfig.builder().build(),
+                singletonList(new TarantoolServerAddress(HOST)), discoveryClientProvider, null, null, 0, 0, routerStatistics);
+        when(tarantoolClient.eval(Mockito.anyString())).thenReturn(CompletableFuture.completedFuture(asList(singletonMap("key1", router))));
+
+        // act
+        discoveryClusterAddressProvider.getAddresses();
+
+        // assert
+        verify(routerStatistics).update("localhost:1111", "healthy", 2);
+    }
 }
\ No newline at end of file
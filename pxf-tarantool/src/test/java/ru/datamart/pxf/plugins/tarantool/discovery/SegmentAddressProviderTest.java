@@ -0,0 +1,99 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.discovery;
+
+import io.tarantool.driver.api.TarantoolClusterAddressProvider;
+import io.tarantool.driver.api.TarantoolServerAddress;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SegmentAddressProviderTest {
+    private static final TarantoolServerAddress ROUTER_1 = new TarantoolServerAddress("10.0.0.1:3301");
+    private static final TarantoolServerAddress ROUTER_2 = new TarantoolServerAddress("10.0.0.2:3301");
+    private static final TarantoolServerAddress ROUTER_3 = new TarantoolServerAddress("10.0.0.3:3301");
+    private static final TarantoolServerAddress ROUTER_4 = new TarantoolServerAddress("10.0.0.4:3301");
+
+    // discovery order is not stable
+    private final TarantoolClusterAddressProvider discovery = () -> asList(ROUTER_3, ROUTER_1, ROUTER_4, ROUTER_2);
+
+    @Test
+    void shouldAssignConsecutiveRoutersToSegment() {
+        // act
+        Collection<TarantoolServerAddress> addresses = new SegmentAddressProvider(discovery, 3, 2, router -> true).getAddresses();
+
+        // assert
+        assertEquals(asList(ROUTER_4, ROUTER_1), addresses);
+    }
+
+    @Test
+    void shouldSpreadSegmentsEvenly() {
+        // arrange
+        Map<TarantoolServerAddress, Integer> segmentsPerRouter = new HashMap<>();
+
+        // act
+        for (int segment = 0; segment < 16; segment++) {
+            for (TarantoolServerAddress router : new SegmentAddressProvider(discovery, segment, 2, router -> true).getAddresses()) {
+                segmentsPerRouter.merge(router, 1, Integer::sum);
+            }
+        }
+
+        // assert
+        assertEquals(4, segmentsPerRouter.size());
+        segmentsPerRouter.values().forEach(segments -> assertEquals(8, segments.intValue()));
+    }
+
+    @Test
+    void shouldReplaceUnhealthyRouterWithNextOne() {
+        // arrange
+        List<TarantoolServerAddress> checked = new ArrayList<>();
+
+        // act
+        Collection<TarantoolServerAddress> addresses = new SegmentAddressProvider(discovery, 0, 2, router -> {
+            checked.add(router);
+            return !router.equals(ROUTER_2);
+        }).getAddresses();
+
+        // assert
+        assertEquals(asList(ROUTER_1, ROUTER_3), addresses);
+        assertEquals(asList(ROUTER_1, ROUTER_2, ROUTER_3), checked);
+    }
+
+    @Test
+    void shouldUseAllRoutersWhenNoneHealthy() {
+        // act
+        Collection<TarantoolServerAddress> addresses = new SegmentAddressProvider(discovery, 1, 2, router -> false).getAddresses();
+
+        // assert
+        assertEquals(asList(ROUTER_1, ROUTER_2, ROUTER_3, ROUTER_4), addresses);
+    }
+
+    @Test
+    void shouldUseAllRoutersWhenFewerThanAssigned() {
+        // act
+        Collection<TarantoolServerAddress> addresses = new SegmentAddressProvider(discovery, 1, 4, router -> false).getAddresses();
+
+        // assert
+        assertEquals(asList(ROUTER_1, ROUTER_2, ROUTER_3, ROUTER_4), addresses);
+    }
+}
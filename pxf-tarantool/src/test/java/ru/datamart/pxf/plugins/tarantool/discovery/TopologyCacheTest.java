@@ -0,0 +1,172 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.discovery;
+
+import io.tarantool.driver.api.TarantoolServerAddress;
+import io.tarantool.driver.auth.SimpleTarantoolCredentials;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TopologyCacheTest {
+    private static final String KEY = "admin@127.0.0.1:3301";
+    private static final long TTL = 1000L;
+
+    private final AtomicLong clock = new AtomicLong(10_000L);
+    private final List<Runnable> refreshes = new ArrayList<>();
+    private final AtomicInteger loads = new AtomicInteger();
+    private TopologyCache topologyCache;
+    private Path store;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        topologyCache = new TopologyCache(refreshes::add, clock::get, null);
+        store = Files.createTempDirectory("topology");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try (Stream<Path> files = Files.list(store)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(store);
+    }
+
+    @Test
+    void shouldDiscoverOnceWithinTtl() {
+        // act
+        topologyCache.get(KEY, TTL, loader("localhost:1111"));
+        clock.addAndGet(TTL - 1);
+        List<TarantoolServerAddress> addresses = topologyCache.get(KEY, TTL, loader("localhost:2222"));
+
+        // assert
+        assertEquals(1, loads.get());
+        assertEquals(singletonList(new TarantoolServerAddress("localhost:1111")), addresses);
+        assertEquals(0, refreshes.size());
+    }
+
+    @Test
+    void shouldServeExpiredTopologyWhileRefreshing() {
+        // arrange
+        topologyCache.get(KEY, TTL, loader("localhost:1111"));
+        clock.addAndGet(TTL);
+
+        // act
+        List<TarantoolServerAddress> stale = topologyCache.get(KEY, TTL, loader("localhost:2222"));
+        topologyCache.get(KEY, TTL, loader("localhost:2222"));
+        refreshes.forEach(Runnable::run);
+        List<TarantoolServerAddress> fresh = topologyCache.get(KEY, TTL, loader("localhost:3333"));
+
+        // assert
+        assertEquals(singletonList(new TarantoolServerAddress("localhost:1111")), stale);
+        assertEquals(1, refreshes.size());
+        assertEquals(singletonList(new TarantoolServerAddress("localhost:2222")), fresh);
+    }
+
+    @Test
+    void shouldKeepTopologyWhenRefreshFails() {
+        // arrange
+        topologyCache.get(KEY, TTL, loader("localhost:1111"));
+        clock.addAndGet(TTL);
+
+        // act
+        topologyCache.get(KEY, TTL, () -> {
+            throw new IllegalStateException("router is down");
+        });
+        refreshes.forEach(Runnable::run);
+        refreshes.clear();
+        List<TarantoolServerAddress> addresses = topologyCache.get(KEY, TTL, loader("localhost:2222"));
+
+        // assert
+        assertEquals(singletonList(new TarantoolServerAddress("localhost:1111")), addresses);
+        assertEquals(1, refreshes.size());
+    }
+
+    @Test
+    void shouldPropagateFirstDiscoveryFailure() {
+        // act
+        assertThrows(IllegalStateException.class, () -> topologyCache.get(KEY, TTL, () -> {
+            throw new IllegalStateException("router is down");
+        }));
+        List<TarantoolServerAddress> addresses = topologyCache.get(KEY, TTL, loader("localhost:1111"));
+
+        // assert
+        assertEquals(singletonList(new TarantoolServerAddress("localhost:1111")), addresses);
+    }
+
+    @Test
+    void shouldStartFromStoredTopology() throws Exception {
+        // arrange
+        new TopologyCache(refreshes::add, clock::get, store).get(KEY, TTL, loader("localhost:1111", "10.10.10.10:2222"));
+        TopologyCache restarted = new TopologyCache(refreshes::add, clock::get, store);
+
+        // act
+        List<TarantoolServerAddress> addresses = restarted.get(KEY, TTL, loader("localhost:3333"));
+
+        // assert
+        assertEquals(asList(new TarantoolServerAddress("localhost:1111"), new TarantoolServerAddress("10.10.10.10:2222")), addresses);
+        assertEquals(1, loads.get());
+        assertEquals(1, refreshes.size());
+        try (Stream<Path> files = Files.list(store)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void shouldKeyTopologyByPasswordHash() {
+        // arrange
+        List<TarantoolServerAddress> seeds = singletonList(new TarantoolServerAddress("127.0.0.1:3301"));
+
+        // act
+        String key = TopologyCache.key(new SimpleTarantoolCredentials("admin", "secret"), seeds);
+        String otherPasswordKey = TopologyCache.key(new SimpleTarantoolCredentials("admin", "other"), seeds);
+
+        // assert
+        assertNotEquals(key, otherPasswordKey);
+        assertFalse(key.contains("secret"));
+        assertFalse(TopologyCache.fileName(key).contains("admin"));
+    }
+
+    private Supplier<List<TarantoolServerAddress>> loader(String... uris) {
+        return () -> {
+            loads.incrementAndGet();
+            List<TarantoolServerAddress> addresses = new ArrayList<>();
+            for (String uri : uris) {
+                addresses.add(new TarantoolServerAddress(uri));
+            }
+            return addresses;
+        };
+    }
+}
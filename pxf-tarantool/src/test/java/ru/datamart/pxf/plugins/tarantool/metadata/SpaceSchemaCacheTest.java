@@ -0,0 +1,132 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.metadata;
+
+import io.tarantool.driver.api.TarantoolClient;
+import io.tarantool.driver.api.TarantoolResult;
+import io.tarantool.driver.api.tuple.TarantoolTuple;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SpaceSchemaCacheTest {
+    private static final String CLUSTER = "localhost:3301";
+    private static final String SPACE = "test_space";
+
+    @Mock
+    private TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>> client;
+
+    private final SpaceSchemaCache spaceSchemaCache = new SpaceSchemaCache();
+
+    @Test
+    void shouldLoadSchemaOfSpace() throws Exception {
+        // arrange
+        when(client.eval(Mockito.anyString(), Mockito.eq(asList(SPACE, null))))
+                .thenReturn(result(5L, asList("id", "name", "bucket_id"), singletonList("id")));
+
+        // act
+        SpaceSchema schema = spaceSchemaCache.get(CLUSTER, SPACE, client);
+
+        // assert
+        assertEquals(5L, schema.getVersion());
+        assertEquals(asList("id", "name", "bucket_id"), schema.getFieldNames());
+        assertEquals(singletonList("id"), schema.getPrimaryKey());
+    }
+
+    @Test
+    void shouldReuseSchemaWhenVersionNotChanged() throws Exception {
+        // arrange
+        when(client.eval(Mockito.anyString(), Mockito.eq(asList(SPACE, null))))
+                .thenReturn(result(5L, asList("id", "name"), singletonList("id")));
+        when(client.eval(Mockito.anyString(), Mockito.eq(asList(SPACE, 5L))))
+                .thenReturn(CompletableFuture.completedFuture(singletonList(5L)));
+        SpaceSchema first = spaceSchemaCache.get(CLUSTER, SPACE, client);
+        first.markValidated(asList("upsert", "id", "name"));
+
+        // act
+        SpaceSchema second = spaceSchemaCache.get(CLUSTER, SPACE, client);
+
+        // assert
+        assertSame(first, second);
+        assertTrue(second.isValidated(asList("upsert", "id", "name")));
+        verify(client).eval(Mockito.anyString(), Mockito.eq(asList(SPACE, 5L)));
+    }
+
+    @Test
+    void shouldReloadSchemaWhenVersionChanged() throws Exception {
+        // arrange
+        when(client.eval(Mockito.anyString(), Mockito.eq(asList(SPACE, null))))
+                .thenReturn(result(5L, asList("id", "name"), singletonList("id")));
+        when(client.eval(Mockito.anyString(), Mockito.eq(asList(SPACE, 5L))))
+                .thenReturn(result(6L, asList("id", "name", "value"), singletonList("id")));
+        SpaceSchema first = spaceSchemaCache.get(CLUSTER, SPACE, client);
+        first.markValidated(asList("upsert", "id", "name"));
+
+        // act
+        SpaceSchema second = spaceSchemaCache.get(CLUSTER, SPACE, client);
+
+        // assert
+        assertNotSame(first, second);
+        assertEquals(6L, second.getVersion());
+        assertEquals(asList("id", "name", "value"), second.getFieldNames());
+        assertFalse(second.isValidated(asList("upsert", "id", "name")));
+    }
+
+    @Test
+    void shouldFailWhenSpaceNotFound() {
+        // arrange
+        when(client.eval(Mockito.anyString(), Mockito.eq(asList(SPACE, null))))
+                .thenReturn(CompletableFuture.completedFuture(asList(5L, null)));
+
+        // act assert
+        assertThrows(IllegalArgumentException.class, () -> spaceSchemaCache.get(CLUSTER, SPACE, client));
+    }
+
+    @Test
+    void shouldReturnEmptyKeyWhenNoPrimaryIndex() throws Exception {
+        // arrange
+        when(client.eval(Mockito.anyString(), Mockito.eq(asList(SPACE, null))))
+                .thenReturn(CompletableFuture.completedFuture(asList(5L, asList("id"), Collections.emptyMap())));
+
+        // act
+        SpaceSchema schema = spaceSchemaCache.get(CLUSTER, SPACE, client);
+
+        // assert
+        assertTrue(schema.getPrimaryKey().isEmpty());
+    }
+
+    private static CompletableFuture<List<?>> result(long version, List<String> fields, List<String> key) {
+        return CompletableFuture.completedFuture(asList(version, fields, key));
+    }
+}
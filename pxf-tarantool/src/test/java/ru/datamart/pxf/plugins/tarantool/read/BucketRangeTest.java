@@ -0,0 +1,76 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.read;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BucketRangeTest {
+
+    @Test
+    void shouldSplitByReplicasets() {
+        // act
+        List<BucketRange> ranges = BucketRange.split(6, bucketId -> bucketId <= 3 ? "a" : "b", 1);
+
+        // assert
+        assertEquals(asList(new BucketRange(1, 3, "a"), new BucketRange(4, 6, "b")), ranges);
+    }
+
+    @Test
+    void shouldInterleaveReplicasets() {
+        // act
+        List<BucketRange> ranges = BucketRange.split(8, bucketId -> bucketId <= 4 ? "a" : "b", 4);
+
+        // assert
+        assertEquals(asList(new BucketRange(1, 2, "a"), new BucketRange(5, 6, "b"),
+                new BucketRange(3, 4, "a"), new BucketRange(7, 8, "b")), ranges);
+    }
+
+    @Test
+    void shouldKeepRangesWithinOwnerRuns() {
+        // act
+        List<BucketRange> ranges = BucketRange.split(6, bucketId -> bucketId % 2 == 1 ? "a" : null, 1);
+
+        // assert
+        assertEquals(6, ranges.size());
+        assertEquals(new BucketRange(1, 1, "a"), ranges.get(0));
+        assertEquals(new BucketRange(2, 2, ""), ranges.get(1));
+    }
+
+    @Test
+    void shouldGiveLargerReplicasetsMoreRanges() {
+        // act
+        List<BucketRange> ranges = BucketRange.split(9, bucketId -> bucketId <= 6 ? "a" : "b", 3);
+
+        // assert
+        assertEquals(asList(new BucketRange(1, 3, "a"), new BucketRange(7, 9, "b"), new BucketRange(4, 6, "a")), ranges);
+    }
+
+    @Test
+    void shouldParseWrittenRange() {
+        // arrange
+        BucketRange range = new BucketRange(10, 20, "c5b4c1a0-uuid");
+
+        // act & assert
+        assertEquals(range, BucketRange.parse(range.toBytes()));
+        assertThrows(IllegalArgumentException.class, () -> BucketRange.parse("x".getBytes()));
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.read;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FilterConditionsTest {
+    private static final IntFunction<String> COLUMNS = asList("name", "id", "count")::get;
+    private static final List<FilterConditions.Index> INDEXES = asList(
+            new FilterConditions.Index("primary", asList("id"), true),
+            new FilterConditions.Index("bucket_id", asList("bucket_id"), false),
+            new FilterConditions.Index("name_count", asList("name", "count"), false));
+
+    @Test
+    void shouldParseConjunctionOfComparisons() throws Exception {
+        // act
+        List<FilterConditions.Condition> conditions = FilterConditions.parse("a1c20s1d5o5a0o8l0a2c23s1d7o3l0", COLUMNS);
+
+        // assert
+        assertEquals(asList(asList("==", "id", 5L), asList("==", "name", null), asList("<=", "count", 7L)), crud(conditions));
+    }
+
+    @Test
+    void shouldPruneDisjunctionsAndUnsupportedOperators() throws Exception {
+        // act
+        List<FilterConditions.Condition> conditions = FilterConditions.parse("a1c20s1d1o5a1c20s1d2o5l1a1c20s1d3o6l0a1c20s1d0o2l0", COLUMNS);
+
+        // assert
+        assertEquals(asList(asList(">", "id", 0L)), crud(conditions));
+    }
+
+    @Test
+    void shouldPushOnlyEqualityOfText() throws Exception {
+        // act
+        List<FilterConditions.Condition> conditions = FilterConditions.parse("a0c25s1dao2a0c25s1dbo5l0", COLUMNS);
+
+        // assert
+        assertEquals(asList(asList("==", "name", "b")), crud(conditions));
+    }
+
+    @Test
+    void shouldConvertRealAsFloat() throws Exception {
+        // act
+        List<FilterConditions.Condition> conditions = FilterConditions.parse("a2c700s3d0.1o5", COLUMNS);
+
+        // assert
+        assertEquals(asList(asList("==", "count", 0.1f)), crud(conditions));
+    }
+
+    @Test
+    void shouldReturnNothingWhenFilterIsNotPushable() throws Exception {
+        // act
+        List<FilterConditions.Condition> conditions = FilterConditions.parse("a1c20s1d1o5a1c20s1d2o5l1", COLUMNS);
+
+        // assert
+        assertEquals(emptyList(), conditions);
+    }
+
+    @Test
+    void shouldLeadWithFullyMatchedUniqueIndex() {
+        // arrange
+        List<FilterConditions.Condition> conditions = asList(
+                new FilterConditions.Condition("==", "name", "a"),
+                new FilterConditions.Condition("==", "count", 2L),
+                new FilterConditions.Condition("==", "id", 1L));
+
+        // act
+        List<List<Object>> planned = FilterConditions.plan(conditions, INDEXES);
+
+        // assert
+        assertEquals(asList(
+                asList("==", "primary", asList(1L)),
+                asList("==", "name", "a"),
+                asList("==", "count", 2L)), planned);
+    }
+
+    @Test
+    void shouldMergeEqualitiesOfIndexPrefix() {
+        // arrange
+        List<FilterConditions.Condition> conditions = asList(
+                new FilterConditions.Condition(">", "id", 5L),
+                new FilterConditions.Condition("==", "count", 2L),
+                new FilterConditions.Condition("==", "name", "a"));
+
+        // act
+        List<List<Object>> planned = FilterConditions.plan(conditions, INDEXES);
+
+        // assert
+        assertEquals(asList(
+                asList("==", "name_count", asList("a", 2L)),
+                asList(">", "id", 5L)), planned);
+    }
+
+    @Test
+    void shouldScanRangeOfIndexWithoutEqualities() {
+        // arrange
+        List<FilterConditions.Condition> conditions = asList(
+                new FilterConditions.Condition(">=", "bucket_id", 1),
+                new FilterConditions.Condition("<=", "bucket_id", 100),
+                new FilterConditions.Condition(">", "count", 1L));
+
+        // act
+        List<List<Object>> planned = FilterConditions.plan(conditions, INDEXES);
+
+        // assert
+        assertEquals(asList(
+                asList(">=", "bucket_id", asList(1)),
+                asList("<=", "bucket_id", 100),
+                asList(">", "count", 1L)), planned);
+    }
+
+    @Test
+    void shouldNotScanIndexByNull() {
+        // arrange
+        List<FilterConditions.Condition> conditions = asList(
+                new FilterConditions.Condition("==", "name", null),
+                new FilterConditions.Condition(">", "count", 1L));
+
+        // act
+        List<List<Object>> planned = FilterConditions.plan(conditions, INDEXES);
+
+        // assert
+        assertEquals(asList(asList(">", "count", 1L)), planned);
+    }
+
+    @Test
+    void shouldKeepNullAsFilterOfIndexScan() {
+        // arrange
+        List<FilterConditions.Condition> conditions = asList(
+                new FilterConditions.Condition("==", "name", null),
+                new FilterConditions.Condition("<", "id", 10L));
+
+        // act
+        List<List<Object>> planned = FilterConditions.plan(conditions, INDEXES);
+
+        // assert
+        assertEquals(asList(asList("<", "primary", asList(10L)), asList("==", "name", null)), planned);
+    }
+
+    @Test
+    void shouldDropNegativeConstantsOfUnsignedIndexParts() {
+        // arrange
+        List<FilterConditions.Index> indexes = asList(
+                new FilterConditions.Index("primary", asList("id"), asList("unsigned"), true),
+                new FilterConditions.Index("name_count", asList("name", "count"), asList("string", "integer"), false));
+        List<FilterConditions.Condition> conditions = asList(
+                new FilterConditions.Condition(">", "id", -5L),
+                new FilterConditions.Condition("==", "id", -1L),
+                new FilterConditions.Condition("<", "id", 10L),
+                new FilterConditions.Condition(">", "count", -3L));
+
+        // act
+        List<List<Object>> planned = FilterConditions.plan(conditions, indexes);
+
+        // assert
+        assertEquals(asList(asList("<", "primary", asList(10L)), asList(">", "count", -3L)), planned);
+    }
+
+    private static List<List<Object>> crud(List<FilterConditions.Condition> conditions) {
+        return conditions.stream().map(FilterConditions.Condition::toCrud).collect(Collectors.toList());
+    }
+}
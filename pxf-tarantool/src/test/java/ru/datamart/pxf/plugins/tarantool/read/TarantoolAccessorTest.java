@@ -0,0 +1,443 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.read;
+
+import io.tarantool.driver.api.TarantoolClient;
+import io.tarantool.driver.api.TarantoolClusterAddressProvider;
+import io.tarantool.driver.api.TarantoolResult;
+import io.tarantool.driver.api.metadata.TarantoolIndexMetadata;
+import io.tarantool.driver.api.metadata.TarantoolIndexPartMetadata;
+import io.tarantool.driver.api.metadata.TarantoolMetadataOperations;
+import io.tarantool.driver.api.tuple.DefaultTarantoolTupleFactory;
+import io.tarantool.driver.api.tuple.TarantoolTuple;
+import io.tarantool.driver.mappers.DefaultMessagePackMapper;
+import io.tarantool.driver.mappers.DefaultMessagePackMapperFactory;
+import org.greenplum.pxf.api.OneRow;
+import org.greenplum.pxf.api.io.DataType;
+import org.greenplum.pxf.api.model.RequestContext;
+import org.greenplum.pxf.api.utilities.ColumnDescriptor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.datamart.pxf.plugins.tarantool.client.TarantoolConnection;
+import ru.datamart.pxf.plugins.tarantool.client.TarantoolConnectionProvider;
+import ru.datamart.pxf.plugins.tarantool.discovery.DiscoveryClientProvider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TarantoolAccessorTest {
+    private static final String VALID_HOST = "localhost:1111";
+    private static final String SPACE = "space";
+
+    @Mock
+    private TarantoolConnectionProvider tarantoolConnectionProvider;
+
+    @Mock
+    private TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>> clientDiscovery;
+
+    @Mock
+    private TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>> clientOperations;
+
+    @Mock
+    private DiscoveryClientProvider discoveryClientProvider;
+
+    private RequestContext context;
+
+    private TarantoolAccessor tarantoolReadAccessor;
+
+    @BeforeEach
+    void setUp() {
+        context = new RequestContext();
+        context.setSegmentId(0);
+        context.setTotalSegments(1);
+        context.setUser("user");
+        context.setConfig("default");
+        context.setDataSource(SPACE);
+        context.setTupleDescription(Arrays.asList(
+                new ColumnDescriptor("name", DataType.VARCHAR.getOID(), 0, null, null),
+                new ColumnDescriptor("id", DataType.BIGINT.getOID(), 1, null, null)));
+        context.setAdditionalConfigProps(new HashMap<String, String>() {{
+            put("tarantool.cartridge.server", VALID_HOST);
+            put("tarantool.cartridge.read.page.size", "2");
+        }});
+
+        Map<String, Map<String, String>> discoveryResult = new HashMap<>();
+        HashMap<String, String> address1 = new HashMap<>();
+        address1.put("uri", "localhost:1111");
+        discoveryResult.put("key1", address1);
+        lenient().when(clientDiscovery.eval(Mockito.anyString())).thenReturn(CompletableFuture.completedFuture(asList(discoveryResult)));
+        lenient().when(discoveryClientProvider.provide(any(), any())).thenAnswer(invocation -> clientDiscovery);
+
+        DefaultMessagePackMapper mapper = DefaultMessagePackMapperFactory.getInstance().defaultComplexTypesMapper();
+        lenient().when(tarantoolConnectionProvider.provide(any(), any())).thenAnswer(invocation -> {
+            ((TarantoolClusterAddressProvider) invocation.getArgument(1)).getAddresses(); //hack to emulate discovery
+            return new TarantoolConnection(clientOperations, new DefaultTarantoolTupleFactory(mapper));
+        });
+
+        tarantoolReadAccessor = new TarantoolAccessor();
+        tarantoolReadAccessor.setTarantoolConnectionProvider(tarantoolConnectionProvider);
+        tarantoolReadAccessor.setDiscoveryClientProvider(discoveryClientProvider);
+    }
+
+    @Test
+    void shouldReadSpaceByPages() throws Exception {
+        // arrange
+        when(clientOperations.call(Mockito.eq("crud.select"), Mockito.anyList()))
+                .thenReturn(page(asList(1L, "a", 10), asList(2L, "b", 20)))
+                .thenReturn(page(asList(3L, "c")));
+
+        // act
+        tarantoolReadAccessor.initialize(context);
+        assertTrue(tarantoolReadAccessor.openForRead());
+        List<Object> rows = new ArrayList<>();
+        OneRow row;
+        while ((row = tarantoolReadAccessor.readNextObject()) != null) {
+            rows.add(row.getData());
+        }
+        tarantoolReadAccessor.closeForRead();
+
+        // assert
+        assertEquals(asList(asList("a", 1L), asList("b", 2L), asList("c", 3L)), rows);
+        ArgumentCaptor<List<?>> argumentsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(clientOperations, times(2)).call(Mockito.eq("crud.select"), argumentsCaptor.capture());
+        Map<String, Object> firstOptions = new HashMap<>();
+        firstOptions.put("first", 2);
+        Map<String, Object> secondOptions = new HashMap<>(firstOptions);
+        secondOptions.put("after", asList(2L, "b", 20));
+        assertEquals(asList(SPACE, emptyList(), firstOptions), argumentsCaptor.getAllValues().get(0));
+        assertEquals(asList(SPACE, emptyList(), secondOptions), argumentsCaptor.getAllValues().get(1));
+    }
+
+    @Test
+    void shouldRequestNextPageAfterFullPage() throws Exception {
+        // arrange
+        when(clientOperations.call(Mockito.eq("crud.select"), Mockito.anyList()))
+                .thenReturn(page(asList(1L, "a"), asList(2L, "b")))
+                .thenReturn(page());
+
+        // act
+        tarantoolReadAccessor.initialize(context);
+        tarantoolReadAccessor.openForRead();
+        tarantoolReadAccessor.readNextObject();
+        tarantoolReadAccessor.readNextObject();
+        OneRow last = tarantoolReadAccessor.readNextObject();
+        tarantoolReadAccessor.closeForRead();
+
+        // assert
+        assertNull(last);
+        verify(clientOperations, times(2)).call(Mockito.eq("crud.select"), Mockito.anyList());
+    }
+
+    @Test
+    void shouldRequestPagesAheadOfReader() throws Exception {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.read.prefetch", "2");
+        when(clientOperations.call(Mockito.eq("crud.select"), Mockito.anyList()))
+                .thenReturn(page(asList(1L, "a"), asList(2L, "b")))
+                .thenReturn(page(asList(3L, "c"), asList(4L, "d")))
+                .thenReturn(page(asList(5L, "e")));
+
+        // act
+        tarantoolReadAccessor.initialize(context);
+        tarantoolReadAccessor.openForRead();
+        OneRow first = tarantoolReadAccessor.readNextObject();
+        // both following pages are requested before the first one is read
+        verify(clientOperations, times(3)).call(Mockito.eq("crud.select"), Mockito.anyList());
+        List<Object> rows = new ArrayList<>();
+        rows.add(first.getData());
+        OneRow row;
+        while ((row = tarantoolReadAccessor.readNextObject()) != null) {
+            rows.add(row.getData());
+        }
+        tarantoolReadAccessor.closeForRead();
+
+        // assert
+        assertEquals(asList(asList("a", 1L), asList("b", 2L), asList("c", 3L), asList("d", 4L), asList("e", 5L)), rows);
+        ArgumentCaptor<List<?>> argumentsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(clientOperations, times(3)).call(Mockito.eq("crud.select"), argumentsCaptor.capture());
+        Map<String, Object> thirdOptions = new HashMap<>();
+        thirdOptions.put("first", 2);
+        thirdOptions.put("after", asList(4L, "d"));
+        assertEquals(asList(SPACE, emptyList(), thirdOptions), argumentsCaptor.getAllValues().get(2));
+    }
+
+    @Test
+    void shouldReadBucketRangeOfFragment() throws Exception {
+        // arrange
+        context.setFragmentMetadata(new BucketRange(1, 100, "a").toBytes());
+        when(clientOperations.eval(Mockito.anyString(), Mockito.eq(asList(1, 100))))
+                .thenReturn(CompletableFuture.completedFuture(asList("a")));
+        when(clientOperations.call(Mockito.eq("crud.select"), Mockito.anyList()))
+                .thenReturn(page(asList(1L, "a", 10)));
+
+        // act
+        tarantoolReadAccessor.initialize(context);
+        tarantoolReadAccessor.openForRead();
+        OneRow row = tarantoolReadAccessor.readNextObject();
+        tarantoolReadAccessor.closeForRead();
+
+        // assert
+        assertEquals(asList("a", 1L), row.getData());
+        Map<String, Object> options = new HashMap<>();
+        options.put("first", 2);
+        options.put("bucket_id", 1);
+        verify(clientOperations).call("crud.select", asList(SPACE,
+                asList(asList(">=", "bucket_id", 1), asList("<=", "bucket_id", 100)), options));
+    }
+
+    @Test
+    void shouldNotPinRangeOfUnknownReplicaset() throws Exception {
+        // arrange
+        context.setFragmentMetadata(new BucketRange(1, 100, "").toBytes());
+        when(clientOperations.call(Mockito.eq("crud.select"), Mockito.anyList()))
+                .thenReturn(page(asList(1L, "a", 10)));
+
+        // act
+        tarantoolReadAccessor.initialize(context);
+        tarantoolReadAccessor.openForRead();
+        tarantoolReadAccessor.readNextObject();
+        tarantoolReadAccessor.closeForRead();
+
+        // assert
+        Map<String, Object> options = new HashMap<>();
+        options.put("first", 2);
+        verify(clientOperations).call("crud.select", asList(SPACE,
+                asList(asList(">=", "bucket_id", 1), asList("<=", "bucket_id", 100)), options));
+    }
+
+    @Test
+    void shouldReadRangeFromAllStoragesWhenBucketsMovedApart() throws Exception {
+        // arrange
+        context.setFragmentMetadata(new BucketRange(1, 100, "a").toBytes());
+        when(clientOperations.eval(Mockito.anyString(), Mockito.eq(asList(1, 100))))
+                .thenReturn(CompletableFuture.completedFuture(Arrays.asList((Object) null)));
+        when(clientOperations.call(Mockito.eq("crud.select"), Mockito.anyList()))
+                .thenReturn(page(asList(1L, "a", 10)));
+
+        // act
+        tarantoolReadAccessor.initialize(context);
+        tarantoolReadAccessor.openForRead();
+        tarantoolReadAccessor.readNextObject();
+        tarantoolReadAccessor.closeForRead();
+
+        // assert
+        Map<String, Object> options = new HashMap<>();
+        options.put("first", 2);
+        verify(clientOperations).call("crud.select", asList(SPACE,
+                asList(asList(">=", "bucket_id", 1), asList("<=", "bucket_id", 100)), options));
+        verify(clientOperations, times(1)).eval(Mockito.anyString(), Mockito.anyList());
+    }
+
+    @Test
+    void shouldFailWhenBucketsMovedWhileRead() throws Exception {
+        // arrange
+        context.setFragmentMetadata(new BucketRange(1, 100, "a").toBytes());
+        when(clientOperations.eval(Mockito.anyString(), Mockito.eq(asList(1, 100))))
+                .thenReturn(CompletableFuture.completedFuture(asList("a")))
+                .thenReturn(CompletableFuture.completedFuture(asList("b")));
+        when(clientOperations.call(Mockito.eq("crud.select"), Mockito.anyList()))
+                .thenReturn(page(asList(1L, "a", 10)));
+
+        // act
+        tarantoolReadAccessor.initialize(context);
+        tarantoolReadAccessor.openForRead();
+
+        // assert
+        assertThrows(RuntimeException.class, () -> tarantoolReadAccessor.readNextObject());
+        tarantoolReadAccessor.closeForRead();
+    }
+
+    @Test
+    void shouldPushFilterDownLedByBestIndex() throws Exception {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.read.filter.pushdown", "true");
+        context.setFragmentMetadata(new BucketRange(1, 100, "a").toBytes());
+        // name = 'a' AND id = 5
+        context.setFilterString("a0c25s1dao5a1c20s1d5o5l0");
+        TarantoolMetadataOperations metadata = mock(TarantoolMetadataOperations.class);
+        Map<String, TarantoolIndexMetadata> indexes = new HashMap<>();
+        indexes.put("primary", index(0, "primary", true, "id"));
+        indexes.put("bucket_id", index(1, "bucket_id", false, "bucket_id"));
+        when(metadata.getSpaceIndexes(SPACE)).thenReturn(Optional.of(indexes));
+        when(clientOperations.metadata()).thenReturn(metadata);
+        when(clientOperations.call(Mockito.eq("crud.select"), Mockito.anyList()))
+                .thenReturn(page(asList(5L, "a", 10)));
+        when(clientOperations.eval(Mockito.anyString(), Mockito.eq(asList(1, 100))))
+                .thenReturn(CompletableFuture.completedFuture(asList("a")));
+
+        // act
+        tarantoolReadAccessor.initialize(context);
+        tarantoolReadAccessor.openForRead();
+        OneRow row = tarantoolReadAccessor.readNextObject();
+        tarantoolReadAccessor.closeForRead();
+
+        // assert
+        assertEquals(asList("a", 5L), row.getData());
+        Map<String, Object> options = new HashMap<>();
+        options.put("first", 2);
+        options.put("bucket_id", 1);
+        verify(clientOperations).call("crud.select", asList(SPACE, asList(
+                asList("==", "primary", asList(5L)),
+                asList(">=", "bucket_id", 1),
+                asList("<=", "bucket_id", 100),
+                asList("==", "name", "a")), options));
+    }
+
+    @Test
+    void shouldIgnoreFilterWithoutPushdown() throws Exception {
+        // arrange
+        context.setFilterString("a1c20s1d5o5");
+        when(clientOperations.call(Mockito.eq("crud.select"), Mockito.anyList()))
+                .thenReturn(page(asList(5L, "a", 10)));
+
+        // act
+        tarantoolReadAccessor.initialize(context);
+        tarantoolReadAccessor.openForRead();
+        tarantoolReadAccessor.readNextObject();
+        tarantoolReadAccessor.closeForRead();
+
+        // assert
+        Map<String, Object> options = new HashMap<>();
+        options.put("first", 2);
+        verify(clientOperations).call("crud.select", asList(SPACE, emptyList(), options));
+        verify(clientOperations, never()).metadata();
+    }
+
+    @Test
+    void shouldRequestOnlyProjectedFields() throws Exception {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.read.projection", "true");
+        ColumnDescriptor count = new ColumnDescriptor("count", DataType.INTEGER.getOID(), 2, null, null);
+        count.setProjected(false);
+        context.setTupleDescription(Arrays.asList(
+                new ColumnDescriptor("name", DataType.VARCHAR.getOID(), 0, null, null),
+                new ColumnDescriptor("id", DataType.BIGINT.getOID(), 1, null, null),
+                count));
+        context.setNumAttrsProjected(2);
+        Map<String, Object> result = new HashMap<>();
+        result.put("metadata", asList(field("id"), field("name")));
+        result.put("rows", asList(asList(1L, "a")));
+        when(clientOperations.call(Mockito.eq("crud.select"), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(asList(result, null)));
+
+        // act
+        tarantoolReadAccessor.initialize(context);
+        tarantoolReadAccessor.openForRead();
+        OneRow row = tarantoolReadAccessor.readNextObject();
+        tarantoolReadAccessor.closeForRead();
+
+        // assert
+        assertEquals(asList("a", 1L, null), row.getData());
+        Map<String, Object> options = new HashMap<>();
+        options.put("first", 2);
+        options.put("fields", asList("name", "id"));
+        verify(clientOperations).call("crud.select", asList(SPACE, emptyList(), options));
+    }
+
+    @Test
+    void shouldFailWhenColumnNotInSpace() throws Exception {
+        // arrange
+        context.setTupleDescription(Arrays.asList(
+                new ColumnDescriptor("id", DataType.BIGINT.getOID(), 0, null, null),
+                new ColumnDescriptor("unknown", DataType.TEXT.getOID(), 1, null, null)));
+        when(clientOperations.call(Mockito.eq("crud.select"), Mockito.anyList()))
+                .thenReturn(page(asList(1L, "a")));
+
+        // act
+        tarantoolReadAccessor.initialize(context);
+        tarantoolReadAccessor.openForRead();
+
+        // assert
+        assertThrows(IllegalArgumentException.class, () -> tarantoolReadAccessor.readNextObject());
+        tarantoolReadAccessor.closeForRead();
+    }
+
+    @Test
+    void shouldFailWhenSelectFailed() throws Exception {
+        // arrange
+        Map<String, Object> error = new HashMap<>();
+        error.put("str", "Space \"space\" doesn't exist");
+        when(clientOperations.call(Mockito.eq("crud.select"), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(asList(null, error)));
+
+        // act
+        tarantoolReadAccessor.initialize(context);
+        tarantoolReadAccessor.openForRead();
+
+        // assert
+        assertThrows(RuntimeException.class, () -> tarantoolReadAccessor.readNextObject());
+        tarantoolReadAccessor.closeForRead();
+    }
+
+    @Test
+    void shouldFailOnInvalidPageSize() {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.read.page.size", "0");
+
+        // act & assert
+        assertThrows(IllegalArgumentException.class, () -> tarantoolReadAccessor.initialize(context));
+    }
+
+    @Test
+    void shouldFailOnNegativePrefetch() {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.read.prefetch", "-1");
+
+        // act & assert
+        assertThrows(IllegalArgumentException.class, () -> tarantoolReadAccessor.initialize(context));
+    }
+
+    private static TarantoolIndexMetadata index(int id, String name, boolean unique, String field) {
+        TarantoolIndexPartMetadata part = mock(TarantoolIndexPartMetadata.class);
+        when(part.getPath()).thenReturn(field);
+        TarantoolIndexMetadata index = mock(TarantoolIndexMetadata.class);
+        when(index.getIndexId()).thenReturn(id);
+        when(index.getIndexName()).thenReturn(name);
+        when(index.isUnique()).thenReturn(unique);
+        when(index.getIndexParts()).thenReturn(asList(part));
+        return index;
+    }
+
+    private static CompletableFuture<List<?>> page(List<?>... rows) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("metadata", asList(field("id"), field("name"), field("count")));
+        result.put("rows", asList(rows));
+        return CompletableFuture.completedFuture(asList(result, null));
+    }
+
+    private static Map<String, Object> field(String name) {
+        Map<String, Object> field = new HashMap<>();
+        field.put("name", name);
+        return field;
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.read;
+
+import io.tarantool.driver.api.TarantoolClient;
+import io.tarantool.driver.api.TarantoolResult;
+import io.tarantool.driver.api.TarantoolServerAddress;
+import io.tarantool.driver.api.tuple.TarantoolTuple;
+import io.tarantool.driver.exceptions.TarantoolClientException;
+import org.greenplum.pxf.api.model.Fragment;
+import org.greenplum.pxf.api.model.RequestContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.datamart.pxf.plugins.tarantool.discovery.DiscoveryClientProvider;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TarantoolFragmenterTest {
+    private static final String SPACE = "space";
+
+    @Mock
+    private DiscoveryClientProvider clientProvider;
+
+    @Mock
+    private TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>> router;
+
+    private RequestContext context;
+
+    private TarantoolFragmenter fragmenter;
+
+    @BeforeEach
+    void setUp() {
+        context = new RequestContext();
+        context.setSegmentId(0);
+        context.setTotalSegments(2);
+        context.setUser("user");
+        context.setConfig("default");
+        context.setDataSource(SPACE);
+        context.setAdditionalConfigProps(new HashMap<String, String>() {{
+            put("tarantool.cartridge.server", "localhost:1111");
+        }});
+
+        fragmenter = new TarantoolFragmenter();
+        fragmenter.setClientProvider(clientProvider);
+    }
+
+    @Test
+    void shouldReturnSingleFragmentByDefault() throws Exception {
+        // act
+        fragmenter.initialize(context);
+        List<Fragment> fragments = fragmenter.getFragments();
+
+        // assert
+        assertEquals(1, fragments.size());
+        assertEquals(0, fragments.get(0).getMetadata().length);
+        verifyNoInteractions(clientProvider);
+    }
+
+    @Test
+    void shouldSplitByBucketRanges() throws Exception {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.read.fragments", "auto");
+        when(clientProvider.provide(any(), any())).thenReturn(router);
+        when(router.eval(Mockito.anyString())).thenReturn(CompletableFuture.completedFuture(asList(4,
+                asList("a", "b"), asList("host1:3301", "host2:3301"), asList(1, 1, 2, 2))));
+
+        // act
+        fragmenter.initialize(context);
+        List<Fragment> fragments = fragmenter.getFragments();
+
+        // assert
+        assertEquals(2, fragments.size());
+        assertEquals(new BucketRange(1, 2, "a"), BucketRange.parse(fragments.get(0).getMetadata()));
+        assertEquals(new BucketRange(3, 4, "b"), BucketRange.parse(fragments.get(1).getMetadata()));
+        assertEquals(SPACE, fragments.get(0).getSourceName());
+        verify(router).close();
+    }
+
+    @Test
+    void shouldFetchRoutingTableFromNextRouter() throws Exception {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.server", "localhost:1111,localhost:2222");
+        context.getAdditionalConfigProps().put("tarantool.cartridge.read.fragments", "1");
+        @SuppressWarnings("unchecked")
+        TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>> failedRouter = mock(TarantoolClient.class);
+        CompletableFuture<List<?>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new TarantoolClientException("connection refused"));
+        when(failedRouter.eval(Mockito.anyString())).thenReturn(failed);
+        when(clientProvider.provide(any(), Mockito.eq(new TarantoolServerAddress("localhost:1111")))).thenReturn(failedRouter);
+        when(clientProvider.provide(any(), Mockito.eq(new TarantoolServerAddress("localhost:2222")))).thenReturn(router);
+        when(router.eval(Mockito.anyString())).thenReturn(CompletableFuture.completedFuture(asList(2,
+                asList("a"), asList("host1:3301"), asList(1, 1))));
+
+        // act
+        fragmenter.initialize(context);
+        List<Fragment> fragments = fragmenter.getFragments();
+
+        // assert
+        assertEquals(1, fragments.size());
+        assertEquals(new BucketRange(1, 2, "a"), BucketRange.parse(fragments.get(0).getMetadata()));
+        verify(failedRouter).close();
+    }
+
+    @Test
+    void shouldFailOnInvalidFragments() {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.read.fragments", "-1");
+
+        // act & assert
+        fragmenter.initialize(context);
+        assertThrows(IllegalArgumentException.class, () -> fragmenter.getFragments());
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.read;
+
+import org.greenplum.pxf.api.OneField;
+import org.greenplum.pxf.api.OneRow;
+import org.greenplum.pxf.api.io.DataType;
+import org.greenplum.pxf.api.model.RequestContext;
+import org.greenplum.pxf.api.utilities.ColumnDescriptor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TarantoolResolverTest {
+    private RequestContext context;
+
+    @BeforeEach
+    void setUp() {
+        context = new RequestContext();
+        context.setUser("user");
+        context.setConfig("default");
+        context.setAdditionalConfigProps(new HashMap<>());
+    }
+
+    @Test
+    void shouldConvertValuesToColumnTypes() throws Exception {
+        // arrange
+        context.setTupleDescription(Arrays.asList(
+                new ColumnDescriptor("id", DataType.BIGINT.getOID(), 0, null, null),
+                new ColumnDescriptor("count", DataType.INTEGER.getOID(), 1, null, null),
+                new ColumnDescriptor("ratio", DataType.FLOAT8.getOID(), 2, null, null),
+                new ColumnDescriptor("name", DataType.TEXT.getOID(), 3, null, null),
+                new ColumnDescriptor("flag", DataType.BOOLEAN.getOID(), 4, null, null)));
+        TarantoolResolver resolver = new TarantoolResolver();
+        resolver.initialize(context);
+
+        // act
+        List<OneField> fields = resolver.getFields(new OneRow(null, asList(1, 2L, 0.5f, "a", true)));
+
+        // assert
+        assertEquals(1L, fields.get(0).val);
+        assertEquals(DataType.BIGINT.getOID(), fields.get(0).type);
+        assertEquals(2, fields.get(1).val);
+        assertEquals(0.5d, fields.get(2).val);
+        assertEquals("a", fields.get(3).val);
+        assertEquals(true, fields.get(4).val);
+    }
+
+    @Test
+    void shouldReadNulls() throws Exception {
+        // arrange
+        context.setTupleDescription(Arrays.asList(
+                new ColumnDescriptor("id", DataType.BIGINT.getOID(), 0, null, null)));
+        TarantoolResolver resolver = new TarantoolResolver();
+        resolver.initialize(context);
+
+        // act
+        List<OneField> fields = resolver.getFields(new OneRow(null, Arrays.asList(new Object[]{null})));
+
+        // assert
+        assertNull(fields.get(0).val);
+    }
+
+    @Test
+    void shouldFailOnValueOfOtherType() {
+        // arrange
+        context.setTupleDescription(Arrays.asList(
+                new ColumnDescriptor("id", DataType.INTEGER.getOID(), 0, null, null)));
+        TarantoolResolver resolver = new TarantoolResolver();
+        resolver.initialize(context);
+
+        // act & assert
+        assertThrows(IllegalArgumentException.class, () -> resolver.getFields(new OneRow(null, asList("a"))));
+        assertThrows(IllegalArgumentException.class, () -> resolver.getFields(new OneRow(null, asList(Long.MAX_VALUE))));
+    }
+
+    @Test
+    void shouldFailOnUnsignedValueAboveLongRange() throws Exception {
+        // arrange
+        context.setTupleDescription(Arrays.asList(
+                new ColumnDescriptor("id", DataType.BIGINT.getOID(), 0, null, null),
+                new ColumnDescriptor("count", DataType.INTEGER.getOID(), 1, null, null)));
+        TarantoolResolver resolver = new TarantoolResolver();
+        resolver.initialize(context);
+        BigInteger aboveLong = BigInteger.ONE.shiftLeft(63);
+
+        // act
+        List<OneField> fields = resolver.getFields(new OneRow(null, asList(BigInteger.valueOf(Long.MAX_VALUE), 1)));
+
+        // assert
+        assertEquals(Long.MAX_VALUE, fields.get(0).val);
+        assertThrows(IllegalArgumentException.class, () -> resolver.getFields(new OneRow(null, asList(aboveLong, 1))));
+        assertThrows(IllegalArgumentException.class,
+                () -> resolver.getFields(new OneRow(null, asList(1L, aboveLong.add(BigInteger.ONE).shiftLeft(1)))));
+    }
+
+    @Test
+    void shouldFailOnUnsupportedColumnType() {
+        // arrange
+        context.setTupleDescription(Arrays.asList(
+                new ColumnDescriptor("data", DataType.BYTEA.getOID(), 0, null, null)));
+
+        // act & assert
+        assertThrows(IllegalArgumentException.class, () -> new TarantoolResolver().initialize(context));
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.routing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BucketIdCalculatorTest {
+    private static final int BUCKET_COUNT = 30000;
+
+    private final BucketIdCalculator calculator = new BucketIdCalculator(BUCKET_COUNT);
+
+    @Test
+    void shouldCalculateCrc32cWithoutFinalXor() {
+        // CRC32-C check value of "123456789" is 0xE3069283, tarantool keeps it inverted: 0x1CF96D7C
+        assertEquals(0x1CF96D7C % BUCKET_COUNT + 1, calculator.bucketId(Collections.singletonList("123456789")));
+    }
+
+    @Test
+    void shouldHashCompositeKeyAsConcatenation() {
+        assertEquals(calculator.bucketId(Collections.singletonList("1test")), calculator.bucketId(Arrays.asList(1L, "test")));
+        assertEquals(calculator.bucketId(Collections.singletonList("12")), calculator.bucketId(Arrays.asList(1, 2L)));
+    }
+
+    @Test
+    void shouldFormatValuesAsLuaToString() {
+        assertEquals("1", BucketIdCalculator.luaToString(1));
+        assertEquals("-5", BucketIdCalculator.luaToString(-5L));
+        assertEquals("99999999999999", BucketIdCalculator.luaToString(99_999_999_999_999L));
+        assertEquals("1e+14", BucketIdCalculator.luaToString(100_000_000_000_000L));
+        assertEquals("1.2345678901234e+14", BucketIdCalculator.luaToString(123_456_789_012_345L));
+        assertEquals("-1.2345678901234e+14", BucketIdCalculator.luaToString(-123_456_789_012_345L));
+        assertEquals("1.6343184e+15", BucketIdCalculator.luaToString(1_634_318_400_000_000L));
+        assertEquals("9.007199254741e+15", BucketIdCalculator.luaToString(9_007_199_254_740_992L));
+        assertEquals("9007199254740993ULL", BucketIdCalculator.luaToString(9_007_199_254_740_993L));
+        assertEquals("-9007199254740993LL", BucketIdCalculator.luaToString(-9_007_199_254_740_993L));
+        assertEquals("true", BucketIdCalculator.luaToString(true));
+        assertEquals("text", BucketIdCalculator.luaToString("text"));
+    }
+
+    @Test
+    void shouldKeepBucketIdInRange() {
+        for (long i = 0; i < 10000; i++) {
+            int bucketId = calculator.bucketId(Collections.singletonList(i));
+            assertTrue(bucketId >= 1 && bucketId <= BUCKET_COUNT);
+        }
+    }
+
+    @Test
+    void shouldFailOnUnsupportedValues() {
+        assertThrows(IllegalArgumentException.class, () -> calculator.bucketId(Collections.singletonList(null)));
+        assertThrows(IllegalArgumentException.class, () -> calculator.bucketId(Collections.singletonList(1.5d)));
+        assertThrows(IllegalArgumentException.class, () -> new BucketIdCalculator(0));
+    }
+}
@@ -0,0 +1,269 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.routing;
+
+import io.tarantool.driver.api.TarantoolClient;
+import io.tarantool.driver.api.TarantoolClientConfig;
+import io.tarantool.driver.api.TarantoolResult;
+import io.tarantool.driver.api.tuple.TarantoolTuple;
+import io.tarantool.driver.exceptions.TarantoolClientException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.datamart.pxf.plugins.tarantool.discovery.DiscoveryClientProvider;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StorageRouterTest {
+    private static final List<?> ROUTING_BEFORE = asList(2, asList("rs-1", "rs-2"), asList("storage-1:3301", "storage-2:3302"), asList(1, 1));
+    private static final List<?> ROUTING_AFTER = asList(2, asList("rs-1", "rs-2"), asList("storage-1:3301", "storage-2:3302"), asList(1, 2));
+
+    @Mock
+    private TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>> router;
+
+    @Mock
+    private TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>> storage1;
+
+    @Mock
+    private TarantoolClient<TarantoolTuple, TarantoolResult<TarantoolTuple>> storage2;
+
+    @Mock
+    private DiscoveryClientProvider clientProvider;
+
+    private StorageRouter storageRouter;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(clientProvider.provide(any(), argThat(address -> address != null && address.getPort() == 3301))).thenReturn(storage1);
+        lenient().when(clientProvider.provide(any(), argThat(address -> address != null && address.getPort() == 3302))).thenReturn(storage2);
+        storageRouter = new StorageRouter(router, TarantoolClientConfig.builder().build(), clientProvider);
+    }
+
+    @Test
+    void shouldCallMasterOwningBucket() throws Exception {
+        // arrange
+        when(router.eval(Mockito.anyString())).thenReturn(CompletableFuture.completedFuture(ROUTING_BEFORE));
+        when(storage1.call(Mockito.eq("vshard.storage.call"), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(asList(true, asList(1, "a"))));
+
+        // act
+        storageRouter.init();
+        storageRouter.call(2, "box.space.space:replace", Collections.singletonList(asList(1, "a"))).get();
+
+        // assert
+        verify(storage1).call("vshard.storage.call", asList(2, "write", "box.space.space:replace", Collections.singletonList(asList(1, "a"))));
+        verifyNoInteractions(storage2);
+    }
+
+    @Test
+    void shouldRefreshRoutingAndRetryOnWrongBucket() throws Exception {
+        // arrange
+        when(router.eval(Mockito.anyString()))
+                .thenReturn(CompletableFuture.completedFuture(ROUTING_BEFORE))
+                .thenReturn(CompletableFuture.completedFuture(ROUTING_AFTER));
+        Map<String, Object> wrongBucket = new HashMap<>();
+        wrongBucket.put("name", "WRONG_BUCKET");
+        wrongBucket.put("code", 1);
+        when(storage1.call(Mockito.eq("vshard.storage.call"), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(asList(null, wrongBucket)));
+        when(storage2.call(Mockito.eq("vshard.storage.call"), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(asList(true, asList(1, "a"))));
+
+        // act
+        storageRouter.init();
+        List<?> result = storageRouter.call(2, "box.space.space:replace", Collections.singletonList(asList(1, "a"))).get();
+
+        // assert
+        assertEquals(true, result.get(0));
+        verify(router, times(2)).eval(Mockito.anyString());
+        verify(storage1).call(Mockito.eq("vshard.storage.call"), Mockito.anyList());
+        verify(storage2).call(Mockito.eq("vshard.storage.call"), Mockito.anyList());
+    }
+
+    @Test
+    void shouldFailWithoutRetryOnOtherErrors() throws Exception {
+        // arrange
+        when(router.eval(Mockito.anyString())).thenReturn(CompletableFuture.completedFuture(ROUTING_BEFORE));
+        Map<String, Object> error = new HashMap<>();
+        error.put("type", "ClientError");
+        error.put("message", "Duplicate key exists");
+        when(storage1.call(Mockito.eq("vshard.storage.call"), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(asList(null, error)));
+
+        // act
+        storageRouter.init();
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> storageRouter.call(1, "box.space.space:replace", Collections.singletonList(asList(1, "a"))).get());
+
+        // assert
+        assertTrue(exception.getCause() instanceof TarantoolClientException);
+        verify(router).eval(Mockito.anyString());
+    }
+
+    @Test
+    void shouldFailWithoutRetryOnErrorsRaisedByFunction() throws Exception {
+        // arrange
+        when(router.eval(Mockito.anyString())).thenReturn(CompletableFuture.completedFuture(ROUTING_BEFORE));
+        CompletableFuture<List<?>> raised = new CompletableFuture<>();
+        raised.completeExceptionally(new TarantoolClientException("Duplicate key exists in unique index 'primary'"));
+        when(storage1.call(Mockito.eq("vshard.storage.call"), Mockito.anyList())).thenReturn(raised);
+
+        // act
+        storageRouter.init();
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> storageRouter.call(1, "box.space.space:replace", Collections.singletonList(asList(1, "a"))).get());
+
+        // assert
+        assertEquals("Duplicate key exists in unique index 'primary'", exception.getCause().getMessage());
+        verify(router).eval(Mockito.anyString());
+        verify(storage1).call(Mockito.eq("vshard.storage.call"), Mockito.anyList());
+    }
+
+    @Test
+    void shouldRetryOnTimeout() throws Exception {
+        // arrange
+        when(router.eval(Mockito.anyString()))
+                .thenReturn(CompletableFuture.completedFuture(ROUTING_BEFORE))
+                .thenReturn(CompletableFuture.completedFuture(ROUTING_BEFORE));
+        CompletableFuture<List<?>> timedOut = new CompletableFuture<>();
+        timedOut.completeExceptionally(new CompletionException(new TimeoutException()));
+        when(storage1.call(Mockito.eq("vshard.storage.call"), Mockito.anyList()))
+                .thenReturn(timedOut)
+                .thenReturn(CompletableFuture.completedFuture(asList(true, asList(1, "a"))));
+
+        // act
+        storageRouter.init();
+        List<?> result = storageRouter.call(1, "box.space.space:replace", Collections.singletonList(asList(1, "a"))).get();
+
+        // assert
+        assertEquals(true, result.get(0));
+        verify(storage1, times(2)).call(Mockito.eq("vshard.storage.call"), Mockito.anyList());
+    }
+
+    @Test
+    void shouldSendOneCallPerReplicaset() throws Exception {
+        // arrange
+        when(router.eval(Mockito.anyString())).thenReturn(CompletableFuture.completedFuture(ROUTING_AFTER));
+        when(storage1.eval(Mockito.anyString(), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(asList(asList(asList(1, "a"), asList(3, "c")))));
+        when(storage2.eval(Mockito.anyString(), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(asList(asList(asList(2, "b")))));
+
+        // act
+        storageRouter.init();
+        List<List<?>> responses = storageRouter.callGrouped(new int[]{1, 2, 1}, asList(asList(1, "a"), asList(2, "b"), asList(3, "c")),
+                "_crud.replace_many_on_storage", rows -> asList("space", rows)).get();
+
+        // assert
+        verify(storage1).eval(Mockito.anyString(), Mockito.eq(asList("_crud.replace_many_on_storage",
+                asList("space", asList(asList(1, "a"), asList(3, "c"))), asList(1))));
+        verify(storage2).eval(Mockito.anyString(), Mockito.eq(asList("_crud.replace_many_on_storage",
+                asList("space", asList(asList(2, "b"))), asList(2))));
+        assertEquals(asList(Collections.singletonList(asList(asList(1, "a"), asList(3, "c"))),
+                Collections.singletonList(asList(asList(2, "b")))), responses);
+    }
+
+    @Test
+    void shouldReferenceEveryBucketOfGroup() throws Exception {
+        // arrange
+        List<?> sameReplicaset = asList(4, asList("rs-1", "rs-2"), asList("storage-1:3301", "storage-2:3302"), asList(1, 1, 1, 2));
+        when(router.eval(Mockito.anyString())).thenReturn(CompletableFuture.completedFuture(sameReplicaset));
+        when(storage1.eval(Mockito.anyString(), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(asList(asList(asList(1, "a"), asList(2, "b"), asList(3, "c")))));
+
+        // act
+        storageRouter.init();
+        storageRouter.callGrouped(new int[]{3, 2, 3}, asList(asList(1, "a"), asList(2, "b"), asList(3, "c")),
+                "_crud.replace_many_on_storage", rows -> asList("space", rows)).get();
+
+        // assert
+        verify(storage1).eval(Mockito.anyString(), Mockito.eq(asList("_crud.replace_many_on_storage",
+                asList("space", asList(asList(1, "a"), asList(2, "b"), asList(3, "c"))), asList(3, 2))));
+        verifyNoInteractions(storage2);
+    }
+
+    @Test
+    void shouldRegroupRowsOfMovedBuckets() throws Exception {
+        // arrange
+        when(router.eval(Mockito.anyString()))
+                .thenReturn(CompletableFuture.completedFuture(ROUTING_BEFORE))
+                .thenReturn(CompletableFuture.completedFuture(ROUTING_AFTER));
+        Map<String, Object> wrongBucket = new HashMap<>();
+        wrongBucket.put("name", "WRONG_BUCKET");
+        wrongBucket.put("bucket_id", 2);
+        when(storage1.eval(Mockito.anyString(), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(asList(null, wrongBucket)))
+                .thenReturn(CompletableFuture.completedFuture(asList(asList(asList(1, "a")))));
+        when(storage2.eval(Mockito.anyString(), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(asList(asList(asList(2, "b")))));
+
+        // act
+        storageRouter.init();
+        List<List<?>> responses = storageRouter.callGrouped(new int[]{1, 2}, asList(asList(1, "a"), asList(2, "b")),
+                "_crud.replace_many_on_storage", rows -> asList("space", rows)).get();
+
+        // assert
+        assertEquals(2, responses.size());
+        verify(storage1).eval(Mockito.anyString(), Mockito.eq(asList("_crud.replace_many_on_storage",
+                asList("space", asList(asList(1, "a"), asList(2, "b"))), asList(1, 2))));
+        verify(storage1).eval(Mockito.anyString(), Mockito.eq(asList("_crud.replace_many_on_storage",
+                asList("space", asList(asList(1, "a"))), asList(1))));
+        verify(storage2).eval(Mockito.anyString(), Mockito.eq(asList("_crud.replace_many_on_storage",
+                asList("space", asList(asList(2, "b"))), asList(2))));
+    }
+
+    @Test
+    void shouldReturnShardingKeyFromDdl() throws Exception {
+        // arrange
+        when(router.eval(Mockito.anyString(), Mockito.eq(Collections.singletonList("space"))))
+                .thenReturn(CompletableFuture.completedFuture(Collections.singletonList(Arrays.asList("id", "name"))));
+
+        // act assert
+        assertEquals(Arrays.asList("id", "name"), storageRouter.fetchShardingKey("space").get());
+    }
+
+    @Test
+    void shouldCloseStorageClients() throws Exception {
+        // arrange
+        when(router.eval(Mockito.anyString())).thenReturn(CompletableFuture.completedFuture(ROUTING_BEFORE));
+        when(storage1.call(Mockito.eq("vshard.storage.call"), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(asList(true, null)));
+
+        // act
+        storageRouter.init();
+        storageRouter.call(1, "box.space.space:delete", Collections.singletonList(asList(1))).get();
+        storageRouter.close();
+
+        // assert
+        verify(storage1).close();
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright © 2022 DATAMART LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ru.datamart.pxf.plugins.tarantool.routing;
+
+import io.tarantool.driver.exceptions.TarantoolClientException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VshardRoutingTableTest {
+
+    @Test
+    void shouldParseRoutingTable() {
+        // act
+        VshardRoutingTable table = VshardRoutingTable.parse(Arrays.asList(
+                4,
+                Arrays.asList("rs-1", "rs-2"),
+                Arrays.asList("admin:secret@storage-1:3301", "storage-2:3302"),
+                Arrays.asList(1, 2, 2, 0)));
+
+        // assert
+        assertEquals(4, table.getBucketCount());
+        assertEquals("rs-1", table.getReplicaset(1));
+        assertEquals("rs-2", table.getReplicaset(3));
+        assertNull(table.getReplicaset(4));
+        assertEquals("storage-1", table.getMaster(1).getHost());
+        assertEquals(3301, table.getMaster(1).getPort());
+        assertEquals("storage-2", table.getMaster(2).getHost());
+        assertNull(table.getMaster(4));
+    }
+
+    @Test
+    void shouldKeepUnknownMasterEmpty() {
+        // act
+        VshardRoutingTable table = VshardRoutingTable.parse(Arrays.asList(
+                1, Arrays.asList("rs-1"), Arrays.asList(""), Arrays.asList(1)));
+
+        // assert
+        assertEquals("rs-1", table.getReplicaset(1));
+        assertNull(table.getMaster(1));
+    }
+
+    @Test
+    void shouldFailOnIncompleteRoutingTable() {
+        assertThrows(TarantoolClientException.class, () -> VshardRoutingTable.parse(Arrays.asList(
+                3, Arrays.asList("rs-1"), Arrays.asList("storage-1:3301"), Arrays.asList(1, 1))));
+        assertThrows(TarantoolClientException.class, () -> VshardRoutingTable.parse(Arrays.asList(3, Arrays.asList("rs-1"))));
+    }
+}
@@ -38,20 +38,30 @@ import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import ru.datamart.pxf.plugins.tarantool.client.EncodedTuple;
 import ru.datamart.pxf.plugins.tarantool.client.TarantoolConnection;
 import ru.datamart.pxf.plugins.tarantool.client.TarantoolConnectionProvider;
 import ru.datamart.pxf.plugins.tarantool.common.TestTarantoolFieldMetadata;
 import ru.datamart.pxf.plugins.tarantool.common.TestTarantoolIndexMetadata;
 import ru.datamart.pxf.plugins.tarantool.common.TestTarantoolIndexPartMetadata;
+import ru.datamart.pxf.plugins.tarantool.metadata.SpaceSchema;
+import ru.datamart.pxf.plugins.tarantool.metadata.SpaceSchemaCache;
+import ru.datamart.pxf.plugins.tarantool.common.TupleEncoder;
 import ru.datamart.pxf.plugins.tarantool.discovery.DiscoveryClientProvider;
+import ru.datamart.pxf.plugins.tarantool.routing.BucketIdCalculator;
 
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
 import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
@@ -134,6 +144,7 @@ class TarantoolAccessorTest {
 
         lenient().when(discoveryClientProvider.provide(any(), any())).thenAnswer(invocation -> clientDiscovery);
         lenient().when(clientOperations.metadata()).thenReturn(tarantoolMetadataOperations);
+        lenient().when(tarantoolMetadataOperations.refresh()).thenReturn(CompletableFuture.completedFuture(null));
 
         TestTarantoolIndexMetadata primaryIndexMetadata = new TestTarantoolIndexMetadata();
         primaryIndexMetadata.setIndexParts(Arrays.asList(new TestTarantoolIndexPartMetadata(0, "integer", "id"),
@@ -264,6 +275,450 @@ class TarantoolAccessorTest {
         verifyNoMoreInteractions(spaceOperations);
     }
 
+    @Test
+    void shouldReplaceInBatches() throws Exception {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.batch.size", "2");
+        when(clientOperations.call(Mockito.eq("crud.replace_many"), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(asList(new HashMap<>(), null)));
+
+        // act
+        tarantoolDeleteAccessor.initialize(context);
+        assertTrue(tarantoolDeleteAccessor.openForWrite());
+        assertTrue(tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(1L, "test", 1))));
+        assertTrue(tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(2L, "test2", 2))));
+        assertTrue(tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(3L, "test3", 3))));
+        tarantoolDeleteAccessor.closeForWrite();
+
+        // assert
+        verify(clientOperations).call(Mockito.eq("crud.replace_many"), Mockito.eq(asList(SPACE,
+                asList(asList(1L, "test", 1), asList(2L, "test2", 2)))));
+        verify(clientOperations).call(Mockito.eq("crud.replace_many"), Mockito.eq(asList(SPACE,
+                singletonList(asList(3L, "test3", 3)))));
+        verify(spaceOperations, never()).replace(Mockito.any());
+    }
+
+    @Test
+    void shouldMergeBatchesOfCoLocatedSegments() throws Exception {
+        // arrange
+        context.setTransactionId("1");
+        context.getAdditionalConfigProps().put("tarantool.cartridge.batch.size", "2");
+        context.getAdditionalConfigProps().put("tarantool.cartridge.aggregate.size", "4");
+        context.getAdditionalConfigProps().put("tarantool.cartridge.aggregate.linger", "60000");
+        when(clientOperations.call(Mockito.eq("crud.replace_many"), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(asList(new HashMap<>(), null)));
+        TarantoolAccessor otherSegmentAccessor = new TarantoolAccessor();
+        otherSegmentAccessor.setTarantoolConnectionProvider(tarantoolConnectionProvider);
+        otherSegmentAccessor.setDiscoveryClientProvider(discoveryClientProvider);
+
+        // act
+        tarantoolDeleteAccessor.initialize(context);
+        otherSegmentAccessor.initialize(context);
+        assertTrue(tarantoolDeleteAccessor.openForWrite());
+        assertTrue(otherSegmentAccessor.openForWrite());
+        assertTrue(tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(1L, "test", 1))));
+        assertTrue(tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(2L, "test2", 2))));
+        assertTrue(otherSegmentAccessor.writeNextObject(new OneRow(Arrays.asList(3L, "test3", 3))));
+        assertTrue(otherSegmentAccessor.writeNextObject(new OneRow(Arrays.asList(4L, "test4", 4))));
+        assertTrue(tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(5L, "test5", 5))));
+        tarantoolDeleteAccessor.closeForWrite();
+        otherSegmentAccessor.closeForWrite();
+
+        // assert
+        verify(clientOperations).call(Mockito.eq("crud.replace_many"), Mockito.eq(asList(SPACE,
+                asList(asList(1L, "test", 1), asList(2L, "test2", 2), asList(3L, "test3", 3), asList(4L, "test4", 4)))));
+        verify(clientOperations).call(Mockito.eq("crud.replace_many"), Mockito.eq(asList(SPACE,
+                singletonList(asList(5L, "test5", 5)))));
+    }
+
+    @Test
+    void shouldFailOnlySegmentWithRejectedRows() throws Exception {
+        // arrange
+        context.setTransactionId("1");
+        context.getAdditionalConfigProps().put("tarantool.cartridge.batch.size", "2");
+        context.getAdditionalConfigProps().put("tarantool.cartridge.aggregate.size", "4");
+        context.getAdditionalConfigProps().put("tarantool.cartridge.aggregate.linger", "60000");
+        Map<String, Object> rowError = new HashMap<>();
+        rowError.put("str", "Duplicate key exists");
+        rowError.put("operation_data", asList(3L, "test3", 3));
+        when(clientOperations.call(Mockito.eq("crud.replace_many"), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(asList(null, singletonList(rowError))));
+        TarantoolAccessor otherSegmentAccessor = new TarantoolAccessor();
+        otherSegmentAccessor.setTarantoolConnectionProvider(tarantoolConnectionProvider);
+        otherSegmentAccessor.setDiscoveryClientProvider(discoveryClientProvider);
+
+        // act
+        tarantoolDeleteAccessor.initialize(context);
+        otherSegmentAccessor.initialize(context);
+        assertTrue(tarantoolDeleteAccessor.openForWrite());
+        assertTrue(otherSegmentAccessor.openForWrite());
+        assertTrue(tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(1L, "test", 1))));
+        assertTrue(tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(2L, "test2", 2))));
+        assertTrue(otherSegmentAccessor.writeNextObject(new OneRow(Arrays.asList(3L, "test3", 3))));
+        assertTrue(otherSegmentAccessor.writeNextObject(new OneRow(Arrays.asList(4L, "test4", 4))));
+
+        // assert
+        tarantoolDeleteAccessor.closeForWrite();
+        assertThrows(Exception.class, otherSegmentAccessor::closeForWrite);
+        verify(clientOperations).call(Mockito.eq("crud.replace_many"), Mockito.anyList());
+    }
+
+    @Test
+    void shouldNotMergeBatchesWithoutTransaction() throws Exception {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.batch.size", "2");
+        context.getAdditionalConfigProps().put("tarantool.cartridge.aggregate.size", "4");
+        context.getAdditionalConfigProps().put("tarantool.cartridge.aggregate.linger", "60000");
+        when(clientOperations.call(Mockito.eq("crud.replace_many"), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(asList(new HashMap<>(), null)));
+
+        // act
+        tarantoolDeleteAccessor.initialize(context);
+        assertTrue(tarantoolDeleteAccessor.openForWrite());
+        assertTrue(tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(1L, "test", 1))));
+        assertTrue(tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(2L, "test2", 2))));
+        tarantoolDeleteAccessor.closeForWrite();
+
+        // assert
+        verify(clientOperations).call(Mockito.eq("crud.replace_many"), Mockito.eq(asList(SPACE,
+                asList(asList(1L, "test", 1), asList(2L, "test2", 2)))));
+    }
+
+    @Test
+    void shouldFailAggregationWithoutBatches() {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.aggregate.size", "4");
+
+        // act & assert
+        assertThrows(IllegalArgumentException.class, () -> tarantoolDeleteAccessor.initialize(context));
+    }
+
+    @Test
+    void shouldReplaceWithoutReturn() throws Exception {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.write.noreturn", "true");
+        when(clientOperations.call(Mockito.eq("crud.replace"), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(asList(null, null)));
+
+        // act
+        tarantoolDeleteAccessor.initialize(context);
+        assertTrue(tarantoolDeleteAccessor.openForWrite());
+        assertTrue(tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(1L, "test", 1))));
+        tarantoolDeleteAccessor.closeForWrite();
+
+        // assert
+        verify(clientOperations).call("crud.replace", asList(SPACE, asList(1L, "test", 1),
+                Collections.singletonMap("noreturn", true)));
+        verify(spaceOperations, never()).replace(Mockito.any());
+    }
+
+    @Test
+    void shouldReleaseBufferWhenRequestThrows() throws Exception {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.write.noreturn", "true");
+        context.getAdditionalConfigProps().put("tarantool.cartridge.buffer.size", "1");
+        when(clientOperations.call(Mockito.eq("crud.replace"), Mockito.anyList()))
+                .thenThrow(new IllegalStateException("closed"))
+                .thenReturn(CompletableFuture.completedFuture(asList(null, null)));
+
+        // act
+        tarantoolDeleteAccessor.initialize(context);
+        assertTrue(tarantoolDeleteAccessor.openForWrite());
+        assertThrows(IllegalStateException.class,
+                () -> tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(1L, "test", 1))));
+        assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(2L, "test2", 2))));
+        tarantoolDeleteAccessor.closeForWrite();
+
+        // assert
+        verify(clientOperations, times(2)).call(Mockito.eq("crud.replace"), Mockito.anyList());
+    }
+
+    @Test
+    void shouldReplaceEncodedTuples() throws Exception {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.encoding.direct", "true");
+        when(clientOperations.call(Mockito.eq("crud.replace"), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(asList(new HashMap<>(), null)));
+        EncodedTuple expected = TupleEncoder.forColumns(context.getTupleDescription()).encode(Arrays.asList(1L, "test", 1));
+
+        // act
+        tarantoolDeleteAccessor.initialize(context);
+        assertTrue(tarantoolDeleteAccessor.openForWrite());
+        assertTrue(tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(1L, "test", 1))));
+        tarantoolDeleteAccessor.closeForWrite();
+
+        // assert
+        verify(clientOperations).call("crud.replace", asList(SPACE, expected));
+        verify(spaceOperations, never()).replace(Mockito.any());
+    }
+
+    @Test
+    void shouldReplaceInBatchesWithoutReturn() throws Exception {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.write.noreturn", "true");
+        context.getAdditionalConfigProps().put("tarantool.cartridge.batch.size", "2");
+        when(clientOperations.call(Mockito.eq("crud.replace_many"), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(asList(null, null)));
+
+        // act
+        tarantoolDeleteAccessor.initialize(context);
+        assertTrue(tarantoolDeleteAccessor.openForWrite());
+        assertTrue(tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(1L, "test", 1))));
+        assertTrue(tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(2L, "test2", 2))));
+        tarantoolDeleteAccessor.closeForWrite();
+
+        // assert
+        verify(clientOperations).call("crud.replace_many", asList(SPACE,
+                asList(asList(1L, "test", 1), asList(2L, "test2", 2)), Collections.singletonMap("noreturn", true)));
+    }
+
+    @Test
+    void shouldFlushBatchWhenBytesLimitReached() throws Exception {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.batch.size", "100");
+        context.getAdditionalConfigProps().put("tarantool.cartridge.batch.bytes", "5");
+        when(clientOperations.call(Mockito.eq("crud.replace_many"), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(asList(new HashMap<>(), null)));
+
+        // act
+        tarantoolDeleteAccessor.initialize(context);
+        tarantoolDeleteAccessor.openForWrite();
+        tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(1L, "test", 1)));
+        tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(2L, "test2", 2)));
+
+        // assert
+        verify(clientOperations, times(2)).call(Mockito.eq("crud.replace_many"), Mockito.anyList());
+        tarantoolDeleteAccessor.closeForWrite();
+        verify(clientOperations, times(2)).call(Mockito.eq("crud.replace_many"), Mockito.anyList());
+    }
+
+    @Test
+    void shouldThrowExceptionWhenBatchReturnedErrors() throws Exception {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.batch.size", "2");
+        Map<String, String> error = new HashMap<>();
+        error.put("str", "ReplaceManyError: Duplicate key exists");
+        when(clientOperations.call(Mockito.eq("crud.replace_many"), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(asList(null, singletonList(error))));
+
+        // act
+        tarantoolDeleteAccessor.initialize(context);
+        tarantoolDeleteAccessor.openForWrite();
+        tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(1L, "test", 1)));
+        assertThrows(IllegalStateException.class, () -> tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(2L, "test2", 2))));
+        assertThrows(IllegalStateException.class, () -> tarantoolDeleteAccessor.closeForWrite());
+
+        // assert
+        verify(clientOperations).call(Mockito.eq("crud.replace_many"), Mockito.anyList());
+        verify(clientOperations).close();
+    }
+
+    @Test
+    void shouldWriteDirectlyToStorages() throws Exception {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.routing.mode", "storage");
+        when(clientOperations.eval(Mockito.anyString())).thenReturn(CompletableFuture.completedFuture(asList(
+                2, singletonList("rs-1"), singletonList("localhost:3301"), asList(1, 1))));
+        when(clientOperations.eval(Mockito.anyString(), Mockito.eq(singletonList(SPACE))))
+                .thenReturn(CompletableFuture.completedFuture(singletonList(singletonList("id"))));
+        when(clientDiscovery.call(Mockito.eq("vshard.storage.call"), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(asList(true, null)));
+
+        // act
+        tarantoolDeleteAccessor.initialize(context);
+        assertTrue(tarantoolDeleteAccessor.openForWrite());
+        assertTrue(tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(1L, "test", null))));
+        assertTrue(tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(2L, "test2", 1))));
+        tarantoolDeleteAccessor.closeForWrite();
+
+        // assert
+        int bucketId = new BucketIdCalculator(2).bucketId(singletonList(1L));
+        verify(clientDiscovery).call("vshard.storage.call", asList(bucketId, "write", "box.space.space:replace",
+                singletonList(asList(1L, "test", bucketId))));
+        verify(clientDiscovery).call("vshard.storage.call", asList(1, "write", "box.space.space:replace",
+                singletonList(asList(2L, "test2", 1))));
+        verify(spaceOperations, never()).replace(Mockito.any());
+        verify(clientDiscovery, times(2)).close();
+    }
+
+    @Test
+    void shouldWriteStorageBatchInOneCallPerReplicaset() throws Exception {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.routing.mode", "storage");
+        context.getAdditionalConfigProps().put("tarantool.cartridge.batch.size", "2");
+        when(clientOperations.eval(Mockito.anyString())).thenReturn(CompletableFuture.completedFuture(asList(
+                2, singletonList("rs-1"), singletonList("localhost:3301"), asList(1, 1))));
+        when(clientOperations.eval(Mockito.anyString(), Mockito.eq(singletonList(SPACE))))
+                .thenReturn(CompletableFuture.completedFuture(singletonList(singletonList("id"))));
+        when(clientDiscovery.call(Mockito.eq("vshard.storage.call"), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(asList(true, emptyList())));
+
+        // act
+        tarantoolDeleteAccessor.initialize(context);
+        assertTrue(tarantoolDeleteAccessor.openForWrite());
+        assertTrue(tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(1L, "test", null))));
+        assertTrue(tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(2L, "test2", 1))));
+        tarantoolDeleteAccessor.closeForWrite();
+
+        // assert
+        int bucketId = new BucketIdCalculator(2).bucketId(singletonList(1L));
+        verify(clientDiscovery).call("vshard.storage.call", asList(bucketId, "write", "_crud.replace_many_on_storage",
+                asList(SPACE, asList(asList(1L, "test", bucketId), asList(2L, "test2", 1)),
+                        singletonMap("skip_sharding_hash_check", true))));
+        verify(clientDiscovery, times(1)).call(Mockito.eq("vshard.storage.call"), Mockito.anyList());
+    }
+
+    @Test
+    void shouldFailStorageRoutingWithoutBucketId() throws Exception {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.routing.mode", "storage");
+        context.setTupleDescription(Arrays.asList(
+                new ColumnDescriptor("id", DataType.BIGINT.getOID(), 0, null, null),
+                new ColumnDescriptor("name", DataType.VARCHAR.getOID(), 0, null, null)));
+        HashMap<String, TarantoolFieldMetadata> spaceMetadata = new HashMap<>();
+        spaceMetadata.put("id", new TestTarantoolFieldMetadata("id", "integer", 0));
+        spaceMetadata.put("name", new TestTarantoolFieldMetadata("name", "string", 1));
+        when(tarantoolSpaceMetadata.getSpaceFormatMetadata()).thenReturn(spaceMetadata);
+        when(clientOperations.eval(Mockito.anyString())).thenReturn(CompletableFuture.completedFuture(asList(
+                2, singletonList("rs-1"), singletonList("localhost:3301"), asList(1, 1))));
+
+        // act assert
+        tarantoolDeleteAccessor.initialize(context);
+        assertThrows(IllegalArgumentException.class, () -> tarantoolDeleteAccessor.openForWrite());
+        verify(clientOperations).close();
+    }
+
+    @Test
+    void shouldUseCachedSpaceSchema() throws Exception {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.metadata.cache", "true");
+        SpaceSchemaCache spaceSchemaCache = mock(SpaceSchemaCache.class);
+        when(spaceSchemaCache.getAsync(VALID_HOST, SPACE, clientOperations)).thenReturn(CompletableFuture.completedFuture(
+                new SpaceSchema(1L, asList("id", "name", "bucket_id"), asList("id", "name", "bucket_id"))));
+        tarantoolDeleteAccessor.setSpaceSchemaCache(spaceSchemaCache);
+        when(spaceOperations.replace(Mockito.any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        // act
+        tarantoolDeleteAccessor.initialize(context);
+        assertTrue(tarantoolDeleteAccessor.openForWrite());
+        assertTrue(tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(1L, "test", 1))));
+        tarantoolDeleteAccessor.closeForWrite();
+
+        // assert
+        verify(spaceSchemaCache).getAsync(VALID_HOST, SPACE, clientOperations);
+        verify(spaceOperations, never()).getMetadata();
+        verify(tarantoolMetadataOperations, never()).getIndexById(Mockito.anyString(), Mockito.anyInt());
+    }
+
+    @Test
+    void shouldLoadMetadataOfNewClientWhileSetupRuns() throws Exception {
+        // arrange
+        when(spaceOperations.replace(Mockito.any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        // act
+        tarantoolDeleteAccessor.initialize(context);
+        assertTrue(tarantoolDeleteAccessor.openForWrite());
+        assertTrue(tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(1L, "test", 1))));
+        tarantoolDeleteAccessor.closeForWrite();
+
+        // assert
+        verify(tarantoolMetadataOperations, times(1)).refresh();
+        verify(spaceOperations).replace(Mockito.any());
+    }
+
+    @Test
+    void shouldNotResolveSpaceOperationsForCrudCalls() throws Exception {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.metadata.cache", "true");
+        context.getAdditionalConfigProps().put("tarantool.cartridge.write.noreturn", "true");
+        SpaceSchemaCache spaceSchemaCache = mock(SpaceSchemaCache.class);
+        when(spaceSchemaCache.getAsync(VALID_HOST, SPACE, clientOperations)).thenReturn(CompletableFuture.completedFuture(
+                new SpaceSchema(1L, asList("id", "name", "bucket_id"), asList("id", "name", "bucket_id"))));
+        tarantoolDeleteAccessor.setSpaceSchemaCache(spaceSchemaCache);
+        when(clientOperations.call(Mockito.eq("crud.replace"), Mockito.anyList()))
+                .thenReturn(CompletableFuture.completedFuture(asList(null, null)));
+
+        // act
+        tarantoolDeleteAccessor.initialize(context);
+        assertTrue(tarantoolDeleteAccessor.openForWrite());
+        assertTrue(tarantoolDeleteAccessor.writeNextObject(new OneRow(Arrays.asList(1L, "test", 1))));
+        tarantoolDeleteAccessor.closeForWrite();
+
+        // assert
+        verify(clientOperations, never()).space(Mockito.any());
+        verify(clientOperations, never()).metadata();
+    }
+
+    @Test
+    void shouldOpenSeveralConnectionsPerRouterInAutoMode() throws Exception {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.connections.per.router", "auto");
+
+        // act
+        tarantoolDeleteAccessor.initialize(context);
+        assertTrue(tarantoolDeleteAccessor.openForWrite());
+        tarantoolDeleteAccessor.closeForWrite();
+
+        // assert
+        verify(tarantoolConnectionProvider).provide(configArgumentCaptor.capture(), any());
+        assertEquals(8, configArgumentCaptor.getValue().getConnections());
+    }
+
+    @Test
+    void shouldFailOnInvalidConnectionsPerRouter() {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.connections.per.router", "0");
+
+        // act & assert
+        assertThrows(IllegalArgumentException.class, () -> tarantoolDeleteAccessor.initialize(context));
+    }
+
+    @Test
+    void shouldFailWhenCachedSpaceSchemaDiffers() throws Exception {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.metadata.cache", "true");
+        SpaceSchemaCache spaceSchemaCache = mock(SpaceSchemaCache.class);
+        when(spaceSchemaCache.getAsync(VALID_HOST, SPACE, clientOperations))
+                .thenReturn(CompletableFuture.completedFuture(new SpaceSchema(1L, asList("id", "bucket_id"), asList("id"))));
+        tarantoolDeleteAccessor.setSpaceSchemaCache(spaceSchemaCache);
+
+        // act
+        tarantoolDeleteAccessor.initialize(context);
+
+        // assert
+        assertThrows(IllegalArgumentException.class, () -> tarantoolDeleteAccessor.openForWrite());
+    }
+
+    @Test
+    void shouldFailOnUnknownRoutingMode() {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.routing.mode", "unknown");
+
+        // act assert
+        assertThrows(IllegalArgumentException.class, () -> tarantoolDeleteAccessor.initialize(context));
+    }
+
+    @Test
+    void shouldFailOnUnknownRouterSelection() {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.router.selection", "unknown");
+
+        // act assert
+        assertThrows(IllegalArgumentException.class, () -> tarantoolDeleteAccessor.initialize(context));
+    }
+
+    @Test
+    void shouldFailOnInvalidAdaptiveBufferBounds() {
+        // arrange
+        context.getAdditionalConfigProps().put("tarantool.cartridge.buffer.size", "10");
+        context.getAdditionalConfigProps().put("tarantool.cartridge.buffer.adaptive", "true");
+        context.getAdditionalConfigProps().put("tarantool.cartridge.buffer.min", "20");
+
+        // act assert
+        assertThrows(IllegalArgumentException.class, () -> tarantoolDeleteAccessor.initialize(context));
+    }
+
     @Test
     void validateConfigOfDiscovery() throws Exception {
         // act